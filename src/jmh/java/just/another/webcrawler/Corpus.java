@@ -0,0 +1,28 @@
+package just.another.webcrawler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Loads the checked in HTML pages that the benchmarks run over
+ */
+final class Corpus {
+
+    private Corpus() {
+    }
+
+    static String read(String page) throws IOException {
+        InputStream in = Corpus.class.getResourceAsStream("/corpus/" + page);
+        if (in == null) {
+            throw new IOException("No such corpus page " + page);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return reader.lines().collect(joining("\n"));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package just.another.webcrawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.emptyMap;
+
+/**
+ * Crawls the pages in the corpus without a network, from reading the body through extraction to the CrawlResult, and
+ * resolves every link found on them
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrawlBenchmark {
+
+    private static final String BASE_URL = "http://www.someurl.com";
+
+    @Param({"news.html", "shop.html", "docs.html"})
+    public String page;
+
+    private String url;
+    private PageCrawler pageCrawler;
+    private UrlResolver resolver;
+    private final List<String> hrefs = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        url = BASE_URL + "/section/" + page;
+        byte[] body = Corpus.read(page).getBytes(StandardCharsets.UTF_8);
+        UrlReader urlReader = new UrlReader() {
+            @Override
+            protected FetchResponse open(String url, Map<String, String> requestHeaders) {
+                return new FetchResponse(200, emptyMap(), new ByteArrayInputStream(body));
+            }
+        };
+        pageCrawler = new PageCrawler(BASE_URL, new PageProcessor(BASE_URL), urlReader);
+        resolver = new UrlResolver(url);
+        new HtmlLinkExtractor().extract(Corpus.read(page), new LinkHandler() {
+            @Override
+            public void link(CharSequence href) {
+                hrefs.add(href.toString());
+            }
+
+            @Override
+            public void image(CharSequence src) {
+                hrefs.add(src.toString());
+            }
+
+            @Override
+            public void base(CharSequence href) {
+            }
+        });
+    }
+
+    @Benchmark
+    public CrawlResult crawlPage() throws IOException {
+        return pageCrawler.crawlPage(url);
+    }
+
+    @Benchmark
+    public void resolve(Blackhole blackhole) {
+        for (String href : hrefs) {
+            blackhole.consume(resolver.resolve(href));
+        }
+    }
+}
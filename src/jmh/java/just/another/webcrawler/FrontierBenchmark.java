@@ -0,0 +1,73 @@
+package just.another.webcrawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Collections.emptySet;
+
+/**
+ * Crawler threads contending on the PageProcessor, each takes a page and submits a result that links to one new page
+ * and to pages that have already been seen, as most links on a real site are, so the frontier never runs dry. Run
+ * against the polite frontier with no rate and the work stealing one
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class FrontierBenchmark {
+
+    private static final int SEEN_LINKS_PER_PAGE = 9;
+
+    @Param({"polite", "stealing"})
+    public String frontier;
+
+    private final AtomicLong nextPage = new AtomicLong();
+    private PageProcessor pageProcessor;
+    private Set<String> seenLinks;
+
+    // A fresh processor per iteration so the seen set and results don't grow without bound
+    @Setup(Level.Iteration)
+    public void setUp() {
+        pageProcessor = PageProcessor.newBuilder(SyntheticSite.BASE_URL)
+                .withFrontier(frontier.equals("stealing") ? new WorkStealingFrontier() : new PoliteFrontier(0, 1))
+                .build();
+        Set<String> links = new HashSet<>();
+        for (int page = 1; page <= 64; page++) {
+            links.add(SyntheticSite.url(page));
+        }
+        pageProcessor.submitResult(pageProcessor.getNextPage(), new CrawlResult(links, emptySet(), emptySet()));
+        seenLinks = new HashSet<>();
+        for (int page = 1; page <= SEEN_LINKS_PER_PAGE; page++) {
+            seenLinks.add(SyntheticSite.url(page));
+        }
+        nextPage.set(65);
+    }
+
+    @Benchmark
+    public String takeAndSubmit() {
+        String url = pageProcessor.getNextPage();
+        Set<String> links = new HashSet<>(seenLinks);
+        links.add(SyntheticSite.url((int) nextPage.getAndIncrement()));
+        pageProcessor.submitResult(url, new CrawlResult(links, emptySet(), emptySet()));
+        return url;
+    }
+}
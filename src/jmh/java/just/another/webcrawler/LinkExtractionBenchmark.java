@@ -0,0 +1,75 @@
+package just.another.webcrawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single pass HtmlLinkExtractor with the original regular expressions over the pages in the corpus
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkExtractionBenchmark {
+
+    @Param({"news.html", "shop.html", "docs.html"})
+    public String page;
+
+    private String content;
+    private final LinkExtractor regex = new RegexLinkExtractor();
+    private final LinkExtractor stateMachine = new HtmlLinkExtractor();
+
+    @Setup
+    public void setUp() throws IOException {
+        content = Corpus.read(page);
+    }
+
+    @Benchmark
+    public void regex(Blackhole blackhole) {
+        regex.extract(content, new BlackholeHandler(blackhole));
+    }
+
+    @Benchmark
+    public void stateMachine(Blackhole blackhole) {
+        stateMachine.extract(content, new BlackholeHandler(blackhole));
+    }
+
+    private static class BlackholeHandler implements LinkHandler {
+
+        private final Blackhole blackhole;
+
+        BlackholeHandler(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void link(CharSequence href) {
+            blackhole.consume(href.toString());
+        }
+
+        @Override
+        public void image(CharSequence src) {
+            blackhole.consume(src.toString());
+        }
+
+        @Override
+        public void base(CharSequence href) {
+            blackhole.consume(href.toString());
+        }
+    }
+}
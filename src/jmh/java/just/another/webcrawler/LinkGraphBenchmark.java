@@ -0,0 +1,75 @@
+package just.another.webcrawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the LinkGraph of synthetic sites, which replaced building a tree of pages, and writes it as the site map
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinkGraphBenchmark {
+
+    @Param({"1000", "100000"})
+    public int pages;
+
+    @Param({"10"})
+    public int linksPerPage;
+
+    private Map<String, CrawlResult> results;
+    private LinkGraph graph;
+
+    @Setup
+    public void setUp() {
+        results = SyntheticSite.generate(pages, linksPerPage);
+        graph = LinkGraph.build(SyntheticSite.BASE_URL, results::get);
+    }
+
+    @Benchmark
+    public LinkGraph build() {
+        return LinkGraph.build(SyntheticSite.BASE_URL, results::get);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        new SitemapWriter(new DiscardingChannel()).write(graph);
+    }
+
+    private static class DiscardingChannel implements WritableByteChannel {
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
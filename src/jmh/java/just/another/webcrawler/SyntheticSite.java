@@ -0,0 +1,43 @@
+package just.another.webcrawler;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+
+/**
+ * The crawl results of a generated site in which every page links to the next and to a handful of pages picked at
+ * random, so most pages are reached from many parents. The seed is fixed so every run measures the same site.
+ */
+final class SyntheticSite {
+
+    static final String BASE_URL = "http://www.someurl.com";
+
+    private SyntheticSite() {
+    }
+
+    static Map<String, CrawlResult> generate(int pages, int linksPerPage) {
+        Random random = new Random(42);
+        Map<String, CrawlResult> results = new HashMap<>();
+        for (int page = 0; page < pages; page++) {
+            Set<String> links = new HashSet<>();
+            if (page + 1 < pages) {
+                links.add(url(page + 1));
+            }
+            for (int i = 0; i < linksPerPage; i++) {
+                links.add(url(random.nextInt(pages)));
+            }
+            links.remove(url(page));
+            results.put(url(page), new CrawlResult(links, singleton("http://www.external.com/" + page), emptySet()));
+        }
+        return results;
+    }
+
+    static String url(int page) {
+        return page == 0 ? BASE_URL : BASE_URL + "/page/" + page;
+    }
+}
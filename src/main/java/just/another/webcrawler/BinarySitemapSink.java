@@ -0,0 +1,153 @@
+package just.another.webcrawler;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes every crawled page in a compact binary form, each url written out once and referred to by its id after that.
+ *
+ * The file starts with the magic bytes WCS1 and is then a sequence of records, all ints as unsigned LEB128 varints:
+ *
+ *   0 length bytes      a url in UTF-8, its id is the number of urls before it
+ *   1 page (n ids){3}   a page by id followed by the ids of its internal links, external links and images
+ *
+ * Every url is written before the first record that refers to it. The ids of every url written are kept in memory.
+ */
+public class BinarySitemapSink implements CrawlSink {
+
+    private static final byte[] MAGIC = {'W', 'C', 'S', '1'};
+    private static final byte URL = 0;
+    private static final byte PAGE = 1;
+
+    private final ChannelWriter out;
+    private final Lock lock = new ReentrantLock();
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    public BinarySitemapSink(Path path) throws IOException {
+        out = new ChannelWriter(FileChannel.open(path, CREATE, TRUNCATE_EXISTING, WRITE));
+        out.bytes(MAGIC);
+    }
+
+    /**
+     * Hands every page in the file to the consumer in the order they were written
+     */
+    public static void read(Path path, BiConsumer<String, CrawlResult> consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(path + " isn't a binary site map");
+            }
+            List<String> urls = new ArrayList<>();
+            int type;
+            while ((type = in.read()) >= 0) {
+                if (type == URL) {
+                    byte[] bytes = new byte[readVarInt(in)];
+                    in.readFully(bytes);
+                    urls.add(new String(bytes, StandardCharsets.UTF_8));
+                } else if (type == PAGE) {
+                    String url = urls.get(readVarInt(in));
+                    consumer.accept(url, new CrawlResult(readUrls(in, urls), readUrls(in, urls), readUrls(in, urls)));
+                } else {
+                    throw new IOException("Unknown record type " + type + " in " + path);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void page(String url, CrawlResult result) throws IOException {
+        lock.lock();
+        try {
+            int page = id(url);
+            defineAll(result.getInternalLinks());
+            defineAll(result.getExternalLinks());
+            defineAll(result.getImages());
+            out.put(PAGE).varInt(page);
+            writeIds(result.getInternalLinks());
+            writeIds(result.getExternalLinks());
+            writeIds(result.getImages());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            out.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void defineAll(Set<String> urls) throws IOException {
+        for (String url : urls) {
+            id(url);
+        }
+    }
+
+    // Writes the url the first time it is seen
+    private int id(String url) throws IOException {
+        Integer id = ids.get(url);
+        if (id == null) {
+            id = ids.size();
+            ids.put(url, id);
+            byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+            out.put(URL).varInt(bytes.length).bytes(bytes);
+        }
+        return id;
+    }
+
+    private void writeIds(Set<String> urls) throws IOException {
+        out.varInt(urls.size());
+        for (String url : urls) {
+            out.varInt(ids.get(url));
+        }
+    }
+
+    private static Set<String> readUrls(DataInputStream in, List<String> urls) throws IOException {
+        int n = readVarInt(in);
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            result.add(urls.get(readVarInt(in)));
+        }
+        return result;
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated varint");
+            }
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package just.another.webcrawler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes text and binary values to a channel through one large buffer that is only written to the channel when full.
+ *
+ * Not safe for concurrent use, the sinks that use one take a lock around each record.
+ */
+final class ChannelWriter implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private long drained;
+
+    ChannelWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    ChannelWriter(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Encodes the text as UTF-8
+     */
+    ChannelWriter text(CharSequence text) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            drain();
+        }
+        return this;
+    }
+
+    ChannelWriter bytes(byte[] bytes) throws IOException {
+        for (int written = 0; written < bytes.length; ) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int n = Math.min(bytes.length - written, buffer.remaining());
+            buffer.put(bytes, written, n);
+            written += n;
+        }
+        return this;
+    }
+
+    ChannelWriter put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put(b);
+        return this;
+    }
+
+    /**
+     * Writes the int seven bits to a byte, low bits first, so small values take a single byte
+     */
+    ChannelWriter varInt(int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            put((byte) (value & 0x7f | 0x80));
+            value >>>= 7;
+        }
+        return put((byte) value);
+    }
+
+    /**
+     * @return the number of bytes written so far, buffered or not
+     */
+    long position() {
+        return drained + buffer.position();
+    }
+
+    void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        drained += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
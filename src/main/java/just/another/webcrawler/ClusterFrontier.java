@@ -0,0 +1,668 @@
+package just.another.webcrawler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A Frontier shared by the crawlers of several processes, each a node of the cluster, so a crawl isn't limited to one
+ * ip and one heap.
+ *
+ * Every url belongs to one node, picked by a HashRing, and is only ever queued and crawled there. Links found for
+ * another node are forwarded to it over plain TCP in batches, sent once a batch is full or has waited long enough.
+ * Each node dedups the urls it is sent against its own UrlSeenSet before queueing them on its local PoliteFrontier.
+ *
+ * Node 0 coordinates. It detects that the whole cluster has finished by the four counter method: it repeatedly asks
+ * every node whether it is idle, with nothing pending and nothing waiting to be sent, and how many batches it has sent
+ * and received. Once two rounds in a row find every node idle and the same number of batches sent as received, none
+ * are in flight and none can ever be sent again, so it tells every node to finish. Node 0 also gathers the results of
+ * every node afterwards so that it alone writes the site map.
+ *
+ * A node only listens on its own address in the list of nodes and drops connections from any address not in it. There
+ * is no authentication beyond that so the nodes are meant to share a trusted network.
+ */
+public class ClusterFrontier implements Frontier, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterFrontier.class);
+
+    private static final int COORDINATOR = 0;
+    private static final byte URLS = 1;
+    private static final byte PROBE = 2;
+    private static final byte STATUS = 3;
+    private static final byte TERMINATE = 4;
+    private static final byte RESULT = 5;
+    private static final byte RESULTS_END = 6;
+    private static final int MAX_STRING_LENGTH = 1 << 20;
+    private static final int MAX_COUNT = 1 << 20;
+
+    private final int self;
+    private final HashRing ring;
+    private final PoliteFrontier local;
+    private final UrlSeenSet seenUrls;
+    private final int batchSize;
+    private final long gatherTimeoutMillis;
+    private final Peer[] peers;
+    private final Set<InetAddress> nodeAddresses = new HashSet<>();
+    private final ServerSocket server;
+    private final ScheduledExecutorService timer;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private final CountDownLatch resultsGathered;
+    private final ResultStore remoteResults = new ResultStore();
+    private final Lock probeLock = new ReentrantLock();
+    private final long probeMillis;
+    private Status[] statuses;
+    private int replies;
+    private int round;
+    private long previousCount = -1;
+    private volatile boolean closed;
+
+    private ClusterFrontier(Builder builder) throws IOException {
+        List<InetSocketAddress> nodes = builder.nodes;
+        if (builder.self < 0 || builder.self >= nodes.size()) {
+            throw new IllegalArgumentException("Node " + builder.self + " isn't one of the " + nodes.size() + " nodes");
+        }
+        self = builder.self;
+        ring = new HashRing(nodes.size());
+        local = builder.local;
+        seenUrls = builder.seenUrls;
+        batchSize = builder.batchSize;
+        probeMillis = builder.probeMillis;
+        gatherTimeoutMillis = builder.gatherTimeoutMillis;
+        peers = new Peer[nodes.size()];
+        resultsGathered = new CountDownLatch(self == COORDINATOR ? nodes.size() - 1 : 0);
+        server = new ServerSocket();
+        server.setReuseAddress(true);
+        for (InetSocketAddress node : nodes) {
+            nodeAddresses.add(resolve(node).getAddress());
+        }
+        server.bind(resolve(nodes.get(self)));
+        daemon("cluster-accept", this::accept).start();
+        try {
+            for (int node = 0; node < nodes.size(); node++) {
+                if (node != self) {
+                    peers[node] = new Peer(node, connect(nodes.get(node), builder.connectTimeoutMillis));
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> daemon("cluster-timer", runnable));
+        timer.scheduleWithFixedDelay(this::flushAll, builder.lingerMillis, builder.lingerMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static Builder newBuilder(List<InetSocketAddress> nodes, int self) {
+        return new Builder(nodes, self);
+    }
+
+    @Override
+    public void add(String url) {
+        int owner = ring.owner(url);
+        if (owner == self) {
+            local.add(url);
+        } else {
+            peers[owner].forward(url);
+        }
+    }
+
+    /**
+     * Splits the urls by owner so the local frontier and every peer's batch are each locked once
+     */
+    @Override
+    public void addAll(Collection<String> urls) {
+        List<List<String>> byOwner = new ArrayList<>(peers.length);
+        for (int node = 0; node < peers.length; node++) {
+            byOwner.add(new ArrayList<>());
+        }
+        for (String url : urls) {
+            byOwner.get(ring.owner(url)).add(url);
+        }
+        for (int node = 0; node < peers.length; node++) {
+            List<String> owned = byOwner.get(node);
+            if (owned.isEmpty()) {
+                continue;
+            }
+            if (node == self) {
+                local.addAll(owned);
+            } else {
+                peers[node].forward(owned);
+            }
+        }
+    }
+
+    @Override
+    public String take() throws InterruptedException {
+        // The coordinator only starts looking for the end once its own PageProcessor has added the seed
+        if (self == COORDINATOR && probing.compareAndSet(false, true)) {
+            timer.scheduleWithFixedDelay(this::probe, probeMillis, probeMillis, TimeUnit.MILLISECONDS);
+        }
+        return local.take();
+    }
+
+    @Override
+    public void done(String url) {
+        local.done(url);
+    }
+
+    @Override
+    public void failed(String url, boolean overloaded) {
+        local.failed(url, overloaded);
+    }
+
+    @Override
+    public int size() {
+        return local.size();
+    }
+
+    @Override
+    public int pending() {
+        return local.pending();
+    }
+
+    /**
+     * Every node but the coordinator sends its results to the coordinator, which waits for all of them
+     *
+     * @return true on the coordinator only
+     */
+    @Override
+    public boolean gather(ResultStore results) throws IOException {
+        if (self != COORDINATOR) {
+            peers[COORDINATOR].sendResults(results);
+            return false;
+        }
+        try {
+            if (!resultsGathered.await(gatherTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for the results of the other nodes");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for the results of the other nodes", e);
+        }
+        remoteResults.forEach(results::put);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        local.close();
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        closeQuietly(server);
+        for (Peer peer : peers) {
+            if (peer != null) {
+                closeQuietly(peer.socket);
+            }
+        }
+    }
+
+    // A failure is logged rather than thrown, which would stop the timer and with it every later flush and probe
+    private void flushAll() {
+        for (Peer peer : peers) {
+            if (peer != null) {
+                try {
+                    peer.flush();
+                } catch (RuntimeException e) {
+                    if (!closed) {
+                        logger.error("Unable to flush urls to another node", e);
+                    }
+                }
+            }
+        }
+    }
+
+    // Idle is checked before the counters are read, a batch can only be sent or received by a node that wasn't idle
+    private Status status() {
+        boolean idle = local.pending() == 0;
+        for (Peer peer : peers) {
+            idle &= peer == null || !peer.hasBatch();
+        }
+        return new Status(idle, sent.get(), received.get());
+    }
+
+    // Run by the coordinator, a new round is only started once every node has answered the last
+    private void probe() {
+        probeLock.lock();
+        try {
+            if (statuses != null && replies < statuses.length) {
+                return;
+            }
+            if (statuses != null && evaluate()) {
+                terminate();
+                for (Peer peer : peers) {
+                    if (peer != null) {
+                        peer.send(TERMINATE, -1, null);
+                    }
+                }
+                return;
+            }
+            round++;
+            statuses = new Status[peers.length];
+            statuses[self] = status();
+            replies = 1;
+        } finally {
+            probeLock.unlock();
+        }
+        for (Peer peer : peers) {
+            if (peer != null) {
+                peer.send(PROBE, round, null);
+            }
+        }
+    }
+
+    // Terminated if every node is idle and the batches balance, with the same count as the round before
+    private boolean evaluate() {
+        boolean idle = true;
+        long totalSent = 0;
+        long totalReceived = 0;
+        for (Status status : statuses) {
+            idle &= status.idle;
+            totalSent += status.sent;
+            totalReceived += status.received;
+        }
+        boolean balanced = idle && totalSent == totalReceived;
+        boolean terminated = balanced && totalSent == previousCount;
+        previousCount = balanced ? totalSent : -1;
+        return terminated;
+    }
+
+    private void terminate() {
+        logger.info("Crawl finished on every node");
+        local.close();
+    }
+
+    private void status(int node, int statusRound, Status status) {
+        probeLock.lock();
+        try {
+            if (statusRound == round && statuses != null && statuses[node] == null) {
+                statuses[node] = status;
+                replies++;
+            }
+        } finally {
+            probeLock.unlock();
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                if (!nodeAddresses.contains(socket.getInetAddress())) {
+                    logger.warn("Refused a connection from " + socket.getInetAddress() + ", which isn't a node of the cluster");
+                    closeQuietly(socket);
+                    continue;
+                }
+                daemon("cluster-reader", () -> read(socket)).start();
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.error("Unable to accept a connection from another node", e);
+                }
+            }
+        }
+    }
+
+    private void read(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            int node = in.readInt();
+            if (node < 0 || node >= peers.length || node == self) {
+                throw new IOException("Unknown node " + node);
+            }
+            while (true) {
+                byte type = in.readByte();
+                switch (type) {
+                    case URLS:
+                        int n = readCount(in);
+                        List<String> urls = new ArrayList<>(n);
+                        for (int i = 0; i < n; i++) {
+                            urls.add(readString(in));
+                        }
+                        local.addAll(seenUrls.addAll(urls));
+                        // Only counted once the urls are pending so a received batch is never idle work
+                        received.incrementAndGet();
+                        break;
+                    case PROBE:
+                        peers[node].send(STATUS, in.readInt(), status());
+                        break;
+                    case STATUS:
+                        status(node, in.readInt(), new Status(in.readBoolean(), in.readLong(), in.readLong()));
+                        break;
+                    case TERMINATE:
+                        terminate();
+                        break;
+                    case RESULT:
+                        String url = readString(in);
+                        remoteResults.put(url, new CrawlResult(readStrings(in), readStrings(in), readStrings(in)));
+                        break;
+                    case RESULTS_END:
+                        resultsGathered.countDown();
+                        break;
+                    default:
+                        throw new IOException("Unknown message " + type + " from node " + node);
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                logger.info("Connection from another node closed: " + e.getMessage());
+            }
+        }
+    }
+
+    // Resolved again in case the node was given by a name that couldn't be resolved when the options were parsed
+    private static InetSocketAddress resolve(InetSocketAddress node) throws IOException {
+        InetSocketAddress address = node.isUnresolved() ? new InetSocketAddress(node.getHostString(), node.getPort()) : node;
+        if (address.isUnresolved()) {
+            throw new IOException("Unable to resolve node " + node.getHostString());
+        }
+        return address;
+    }
+
+    // Nodes start one after another so a node keeps trying until the others are listening
+    private Socket connect(InetSocketAddress address, long timeoutMillis) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(address, (int) Math.max(1, timeoutMillis));
+                socket.setTcpNoDelay(true);
+                return socket;
+            } catch (IOException e) {
+                socket.close();
+                if (System.nanoTime() > deadline) {
+                    throw new IOException("Unable to connect to node at " + address, e);
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted connecting to node at " + address, interrupted);
+                }
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_LENGTH) {
+            throw new IOException("A string of " + length + " bytes is too long");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutputStream out, Set<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static Set<String> readStrings(DataInputStream in) throws IOException {
+        int n = readCount(in);
+        Set<String> values = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n < 0 || n > MAX_COUNT) {
+            throw new IOException("A count of " + n + " is out of range");
+        }
+        return n;
+    }
+
+    private static Thread daemon(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            logger.debug("Unable to close", e);
+        }
+    }
+
+    private static final class Status {
+
+        private final boolean idle;
+        private final long sent;
+        private final long received;
+
+        Status(boolean idle, long sent, long received) {
+            this.idle = idle;
+            this.sent = sent;
+            this.received = received;
+        }
+    }
+
+    /**
+     * The connection to another node, everything sent to it is written under one lock
+     */
+    private final class Peer {
+
+        private final int node;
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final Lock lock = new ReentrantLock();
+        private final List<String> batch = new ArrayList<>();
+
+        Peer(int node, Socket socket) throws IOException {
+            this.node = node;
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+            out.writeInt(self);
+            out.flush();
+        }
+
+        void forward(String url) {
+            lock.lock();
+            try {
+                batch.add(url);
+                if (batch.size() >= batchSize) {
+                    flush();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void forward(List<String> urls) {
+            lock.lock();
+            try {
+                for (String url : urls) {
+                    batch.add(url);
+                    if (batch.size() >= batchSize) {
+                        flush();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean hasBatch() {
+            lock.lock();
+            try {
+                return !batch.isEmpty();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void flush() {
+            lock.lock();
+            try {
+                if (batch.isEmpty()) {
+                    return;
+                }
+                sent.incrementAndGet();
+                out.writeByte(URLS);
+                out.writeInt(batch.size());
+                for (String url : batch) {
+                    writeString(out, url);
+                }
+                out.flush();
+                batch.clear();
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to forward urls to node " + node, e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void send(byte type, int messageRound, Status status) {
+            lock.lock();
+            try {
+                out.writeByte(type);
+                if (type != TERMINATE) {
+                    out.writeInt(messageRound);
+                }
+                if (status != null) {
+                    out.writeBoolean(status.idle);
+                    out.writeLong(status.sent);
+                    out.writeLong(status.received);
+                }
+                out.flush();
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.error("Unable to send to node " + node, e);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void sendResults(ResultStore results) throws IOException {
+            lock.lock();
+            try {
+                results.forEach((url, result) -> {
+                    try {
+                        out.writeByte(RESULT);
+                        writeString(out, url);
+                        writeStrings(out, result.getInternalLinks());
+                        writeStrings(out, result.getExternalLinks());
+                        writeStrings(out, result.getImages());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                out.writeByte(RESULTS_END);
+                out.flush();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public static final class Builder {
+        private List<InetSocketAddress> nodes;
+        private int self;
+        private PoliteFrontier local = new PoliteFrontier(0, 1, false, null, 0);
+        private UrlSeenSet seenUrls = FingerprintSeenSet.newBuilder().build();
+        private int batchSize = 256;
+        private long lingerMillis = 20;
+        private long probeMillis = 50;
+        private long connectTimeoutMillis = 30_000;
+        private long gatherTimeoutMillis = 60_000;
+
+        private Builder(List<InetSocketAddress> nodes, int self) {
+            this.nodes = nodes;
+            this.self = self;
+        }
+
+        /**
+         * @param val the frontier of the urls this node owns, it must not finish when idle
+         */
+        public Builder withLocal(PoliteFrontier val) {
+            local = val;
+            return this;
+        }
+
+        /**
+         * @param val the seen set of the PageProcessor, urls sent by other nodes are checked against it
+         */
+        public Builder withSeenUrls(UrlSeenSet val) {
+            seenUrls = val;
+            return this;
+        }
+
+        public Builder withBatchSize(int val) {
+            batchSize = val;
+            return this;
+        }
+
+        /**
+         * @param val the longest a url waits for its batch to fill before being sent anyway
+         */
+        public Builder withLingerMillis(long val) {
+            lingerMillis = val;
+            return this;
+        }
+
+        public Builder withProbeMillis(long val) {
+            probeMillis = val;
+            return this;
+        }
+
+        public Builder withConnectTimeoutMillis(long val) {
+            connectTimeoutMillis = val;
+            return this;
+        }
+
+        public Builder withGatherTimeoutMillis(long val) {
+            gatherTimeoutMillis = val;
+            return this;
+        }
+
+        /**
+         * Listens for the other nodes and connects to every one of them
+         *
+         * @throws IOException if this node can't listen or another node can't be reached in time
+         */
+        public ClusterFrontier build() throws IOException {
+            return new ClusterFrontier(this);
+        }
+    }
+}
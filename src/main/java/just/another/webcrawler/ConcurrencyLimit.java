@@ -0,0 +1,88 @@
+package just.another.webcrawler;
+
+/**
+ * The number of requests that may be in flight to one host at once, adapted as its responses come back so that the
+ * host is crawled about as fast as it can serve pages without being overloaded.
+ *
+ * While the host's recent latency is no worse than its long term latency it isn't queuing requests, and as long as the
+ * limit is being used it grows by one per round trip. Once recent responses slow down the limit shrinks in proportion
+ * to the gradient between the two latencies. A host that says it is overloaded, with a 429 or 503 or by timing out, or
+ * that fails most requests has its limit halved, at most once per round trip as every request in flight at the time
+ * is likely to fail alike.
+ *
+ * Not thread safe, the PoliteFrontier only uses it under its lock.
+ */
+public class ConcurrencyLimit {
+
+    private static final int INITIAL_LIMIT = 4;
+    // Recent latency follows the last few responses, long term latency the last few dozen
+    private static final double SHORT_ALPHA = 0.5;
+    private static final double LONG_ALPHA = 0.05;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF = 0.5;
+    private static final double ERROR_ALPHA = 0.1;
+    private static final double MAX_ERROR_RATE = 0.5;
+
+    private final int max;
+    private double limit;
+    private double shortLatency;
+    private double longLatency;
+    private double errorRate;
+    private long lastBackoffNanos;
+    private boolean backedOff;
+
+    /**
+     * @param max the most the limit grows to
+     */
+    public ConcurrencyLimit(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("The limit must be at least 1");
+        }
+        this.max = max;
+        this.limit = Math.min(INITIAL_LIMIT, max);
+    }
+
+    public int get() {
+        return (int) limit;
+    }
+
+    /**
+     * @param latencyNanos how long the request took
+     * @param inFlight the number of other requests to the host still in flight, the limit only grows while at least
+     *                 half of it is used
+     */
+    public void succeeded(long latencyNanos, int inFlight) {
+        errorRate *= 1 - ERROR_ALPHA;
+        if (longLatency == 0) {
+            shortLatency = latencyNanos;
+            longLatency = latencyNanos;
+        } else {
+            shortLatency += (latencyNanos - shortLatency) * SHORT_ALPHA;
+            longLatency += (latencyNanos - longLatency) * LONG_ALPHA;
+            // Otherwise a slow spell would hold the limit down long after the host has recovered
+            if (longLatency > 2 * shortLatency) {
+                longLatency *= 0.95;
+            }
+        }
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1, longLatency / Math.max(1, shortLatency)));
+        double next = limit * (1 - SMOOTHING * (1 - gradient));
+        if (inFlight + 1 >= limit / 2) {
+            // Every one of limit responses adds its share, one per round trip in all
+            next += 1 / limit;
+        }
+        limit = Math.max(1, Math.min(max, next));
+    }
+
+    /**
+     * @param overloaded whether the host said it has too much to do rather than failing the request for another reason
+     */
+    public void failed(boolean overloaded, long nowNanos) {
+        errorRate += (1 - errorRate) * ERROR_ALPHA;
+        if ((overloaded || errorRate > MAX_ERROR_RATE) && (!backedOff || nowNanos - lastBackoffNanos >= shortLatency)) {
+            limit = Math.max(1, limit * BACKOFF);
+            backedOff = true;
+            lastBackoffNanos = nowNanos;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package just.another.webcrawler;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Decides which urls are worth fetching and which responses are worth reading, so the crawler doesn't spend bandwidth
+ * and crawler time on documents, media and archives it can find no links in.
+ *
+ * Before a link is queued it must be http or https and its path mustn't end in the extension of a known binary format.
+ * Once a response's headers are in, its body is only read if its Content-Type is HTML. A response that gives no
+ * Content-Type is read unless its Content-Length is larger than the most that would be read of it anyway. For a
+ * compressed body the Content-Length is its compressed size, which is rarely above its decompressed size, so the check
+ * still only rejects bodies that would be cut short, it just lets some through that will be too.
+ */
+public final class ContentTypes {
+
+    private static final Set<String> BINARY_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "7z", "apk", "avi", "bin", "bmp", "bz2", "css", "csv", "deb", "dmg", "doc", "docx", "eot", "epub", "exe",
+            "flac", "gif", "gz", "ico", "iso", "jar", "jpeg", "jpg", "js", "m4a", "m4v", "mkv", "mov", "mp3", "mp4",
+            "mpeg", "mpg", "msi", "odp", "ods", "odt", "ogg", "otf", "pdf", "png", "ppt", "pptx", "rar", "rpm", "rtf",
+            "svg", "tar", "tgz", "tif", "tiff", "ttf", "wav", "webm", "webp", "wmv", "woff", "woff2", "xls", "xlsx",
+            "xz", "zip"));
+    private static final Set<String> HTML_TYPES = new HashSet<>(Arrays.asList("text/html", "application/xhtml+xml"));
+
+    private ContentTypes() {
+    }
+
+    /**
+     * @param url a normalized absolute url, without a query or fragment
+     */
+    public static boolean isCrawlable(String url) {
+        if (!url.startsWith("http://") && !url.startsWith("https://")) {
+            return false;
+        }
+        int segment = url.lastIndexOf('/');
+        int dot = url.lastIndexOf('.');
+        // A dot in the host, as in http://example.com, isn't an extension
+        if (dot < segment || segment < url.indexOf("://") + 3) {
+            return true;
+        }
+        return !BINARY_EXTENSIONS.contains(url.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param contentType the Content-Type header, or null if there wasn't one
+     * @param contentLength the Content-Length header, or null if there wasn't one. The compressed size if the body
+     * has a Content-Encoding
+     * @param maxBodySize the most bytes that are read of a body
+     * @return null if the body is worth reading or else why it isn't
+     */
+    static String rejection(String contentType, String contentLength, int maxBodySize) {
+        if (contentType != null) {
+            int end = contentType.indexOf(';');
+            String mediaType = (end < 0 ? contentType : contentType.substring(0, end)).trim().toLowerCase(Locale.ROOT);
+            return HTML_TYPES.contains(mediaType) ? null : "Content-Type " + mediaType;
+        }
+        if (contentLength != null) {
+            try {
+                long length = Long.parseLong(contentLength.trim());
+                if (length > maxBodySize) {
+                    return "Content-Length " + length + " without a Content-Type";
+                }
+            } catch (NumberFormatException e) {
+                // Ignored as a missing Content-Length would be, the body is still only read up to the maximum
+            }
+        }
+        return null;
+    }
+}
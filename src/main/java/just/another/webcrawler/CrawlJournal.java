@@ -0,0 +1,317 @@
+package just.another.webcrawler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * An append only log of every page that has been crawled, failed, or found to be an alias of another page, so that a
+ * crawl can be resumed after a crash.
+ *
+ * The log is memory mapped a region at a time and records are copied straight into the mapping. The mapping is forced
+ * to disk once a batch of bytes has been written or a sync interval has passed, and when the journal is closed, each
+ * force is a checkpoint that survives a crash of the machine. Everything written before the process dies is kept even
+ * without a checkpoint as the mapping belongs to the OS.
+ *
+ * Every record is framed by its length and a CRC32C so a record torn by a crash is recognised on replay, it and
+ * anything after it is ignored and overwritten by the next append.
+ *
+ * There is no separate log of the frontier, the pages left to crawl are exactly the internal links of the completed
+ * pages, and the pages aliases are of, that are neither completed, failed nor aliases themselves and are rebuilt from
+ * them on replay.
+ */
+public class CrawlJournal implements Closeable {
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int REGION_SIZE = 64 * 1024 * 1024;
+    private static final int DEFAULT_SYNC_BYTES = 1024 * 1024;
+    private static final long DEFAULT_SYNC_MILLIS = 1000;
+    private static final byte COMPLETED = 1;
+    private static final byte FAILED = 2;
+    private static final byte ALIAS = 3;
+
+    private final FileChannel channel;
+    private final int syncBytes;
+    private final long syncNanos;
+    private final Lock lock = new ReentrantLock();
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer record = ByteBuffer.allocate(4096);
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position = -1;
+    private long unsyncedBytes;
+    private long lastSyncNanos = System.nanoTime();
+
+    public CrawlJournal(Path path) throws IOException {
+        this(path, DEFAULT_SYNC_BYTES, DEFAULT_SYNC_MILLIS);
+    }
+
+    CrawlJournal(Path path, int syncBytes, long syncMillis) throws IOException {
+        this.channel = FileChannel.open(path, CREATE, READ, WRITE);
+        this.syncBytes = syncBytes;
+        this.syncNanos = TimeUnit.MILLISECONDS.toNanos(syncMillis);
+    }
+
+    /**
+     * Hands every intact record to the consumer in the order they were written, failed pages and aliases are given a
+     * null result. Must be called once, before anything is appended, as it finds where the next record goes.
+     */
+    public void replay(BiConsumer<String, CrawlResult> consumer) throws IOException {
+        replay(consumer, (url, original) -> consumer.accept(url, null));
+    }
+
+    /**
+     * As replay, but aliases are handed to their own consumer along with the url of the page they are an alias of
+     */
+    public void replay(BiConsumer<String, CrawlResult> consumer, BiConsumer<String, String> aliasConsumer) throws IOException {
+        lock.lock();
+        try {
+            // Drop anything after the last intact record so it can't be mistaken for a record once appends overwrite it
+            position = replay(channel, consumer, aliasConsumer);
+            channel.truncate(position);
+            mapRegion(position, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replays the journal at the path without opening it for writing, as for the journal of a previous crawl
+     */
+    public static void read(Path path, BiConsumer<String, CrawlResult> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            replay(channel, consumer, (url, original) -> consumer.accept(url, null));
+        }
+    }
+
+    public void completed(String url, CrawlResult result) throws IOException {
+        lock.lock();
+        try {
+            record.clear();
+            record.put(COMPLETED);
+            putString(url);
+            putStrings(result.getInternalLinks());
+            putStrings(result.getExternalLinks());
+            putStrings(result.getImages());
+            PageVersion version = result.getVersion();
+            ensureCapacity(1);
+            record.put((byte) (version != null ? 1 : 0));
+            if (version != null) {
+                putString(version.getEtag());
+                putString(version.getLastModified());
+                ensureCapacity(Long.BYTES);
+                record.putLong(version.getContentHash());
+            }
+            append();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void failed(String url) throws IOException {
+        lock.lock();
+        try {
+            record.clear();
+            record.put(FAILED);
+            putString(url);
+            append();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param original the url of the page this one is an alias of
+     */
+    public void aliased(String url, String original) throws IOException {
+        lock.lock();
+        try {
+            record.clear();
+            record.put(ALIAS);
+            putString(url);
+            putString(original);
+            append();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces everything appended so far to disk
+     */
+    public void sync() {
+        lock.lock();
+        try {
+            if (region != null) {
+                region.force();
+            }
+            unsyncedBytes = 0;
+            lastSyncNanos = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Syncs and trims the unused end of the last region from the file
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            sync();
+            region = null;
+            if (position >= 0) {
+                channel.truncate(position);
+            }
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void append() throws IOException {
+        if (position < 0) {
+            throw new IllegalStateException("The journal must be replayed before it is appended to");
+        }
+        record.flip();
+        int length = record.remaining();
+        crc.reset();
+        crc.update(record.duplicate());
+        if (position + HEADER_SIZE + length > regionStart + region.capacity()) {
+            region.force();
+            mapRegion(position, HEADER_SIZE + length);
+        }
+        int offset = (int) (position - regionStart);
+        // The length is written last so a record is never seen whole before its body is
+        region.putInt(offset + Integer.BYTES, (int) crc.getValue());
+        region.put(offset + HEADER_SIZE, record, 0, length);
+        region.putInt(offset, length);
+        position += HEADER_SIZE + length;
+        unsyncedBytes += HEADER_SIZE + length;
+        if (unsyncedBytes >= syncBytes || System.nanoTime() - lastSyncNanos >= syncNanos) {
+            sync();
+        }
+    }
+
+    // Returns the offset just after the last intact record
+    private static long replay(FileChannel channel, BiConsumer<String, CrawlResult> consumer,
+                               BiConsumer<String, String> aliasConsumer) throws IOException {
+        CRC32C crc = new CRC32C();
+        long size = channel.size();
+        long offset = 0;
+        MappedByteBuffer window = null;
+        long windowStart = 0;
+        while (offset + HEADER_SIZE <= size) {
+            if (window == null || offset + HEADER_SIZE > windowStart + window.limit()) {
+                windowStart = offset;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(REGION_SIZE, size - windowStart));
+            }
+            int length = window.getInt((int) (offset - windowStart));
+            int checksum = window.getInt((int) (offset - windowStart) + Integer.BYTES);
+            if (length <= 0 || offset + HEADER_SIZE + length > size) {
+                break;
+            }
+            if (offset + HEADER_SIZE + length > windowStart + window.limit()) {
+                windowStart = offset;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(Math.max(REGION_SIZE, HEADER_SIZE + length), size - windowStart));
+            }
+            ByteBuffer payload = window.duplicate();
+            payload.position((int) (offset - windowStart) + HEADER_SIZE).limit((int) (offset - windowStart) + HEADER_SIZE + length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            byte type = payload.get();
+            String url = readString(payload);
+            if (type == ALIAS) {
+                aliasConsumer.accept(url, readString(payload));
+            } else {
+                consumer.accept(url, type == COMPLETED ? readResult(payload) : null);
+            }
+            offset += HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    private static CrawlResult readResult(ByteBuffer payload) {
+        Set<String> internalLinks = readStrings(payload);
+        Set<String> externalLinks = readStrings(payload);
+        Set<String> images = readStrings(payload);
+        PageVersion version = null;
+        if (payload.get() == 1) {
+            version = new PageVersion(readString(payload), readString(payload), payload.getLong());
+        }
+        return new CrawlResult(internalLinks, externalLinks, images, version);
+    }
+
+    private void mapRegion(long start, int atLeast) throws IOException {
+        regionStart = start;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(REGION_SIZE, atLeast));
+    }
+
+    private void putStrings(Set<String> values) {
+        ensureCapacity(Integer.BYTES);
+        record.putInt(values.size());
+        for (String value : values) {
+            putString(value);
+        }
+    }
+
+    // A null string is written with a length of -1
+    private void putString(String value) {
+        ensureCapacity(Integer.BYTES);
+        if (value == null) {
+            record.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(Integer.BYTES + bytes.length);
+        record.putInt(bytes.length);
+        record.put(bytes);
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (record.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(record.capacity() * 2, record.position() + bytes));
+            record.flip();
+            larger.put(record);
+            record = larger;
+        }
+    }
+
+    private static Set<String> readStrings(ByteBuffer payload) {
+        int n = payload.getInt();
+        Set<String> values = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            values.add(readString(payload));
+        }
+        return values;
+    }
+
+    private static String readString(ByteBuffer payload) {
+        int length = payload.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
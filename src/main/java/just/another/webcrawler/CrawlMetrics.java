@@ -0,0 +1,320 @@
+package just.another.webcrawler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts the pages, bytes, errors, pages skipped as not HTML or as duplicates and links disallowed by robots.txt of a
+ * crawl and times each stage a page goes through.
+ *
+ * Everything is recorded into LongAdders, which stripe their count across cells under contention, so crawler threads
+ * never wait on each other to record. Stage times are kept as histograms of log linear buckets, 4 per power of two, so
+ * percentiles are within 25% of the true value at any scale.
+ *
+ * The frontier depth and unprocessed pages aren't recorded, they are read from the PageProcessor when asked for.
+ */
+public class CrawlMetrics implements CrawlMetricsMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrawlMetrics.class);
+
+    public static final String OBJECT_NAME = "just.another.webcrawler:type=CrawlMetrics";
+
+    public enum Stage {
+        FETCH, PARSE, ENQUEUE, SUBMIT
+    }
+
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder disallowed = new LongAdder();
+    private final Histogram[] stages = new Histogram[Stage.values().length];
+    private volatile IntSupplier frontierDepth = () -> 0;
+    private volatile IntSupplier unprocessedPages = () -> 0;
+
+    public CrawlMetrics() {
+        this(System::nanoTime);
+    }
+
+    CrawlMetrics(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, a failure is logged rather than failing the crawl
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            logger.warn("Unable to publish crawl metrics over JMX", e);
+        }
+    }
+
+    void gauges(IntSupplier frontierDepth, IntSupplier unprocessedPages) {
+        this.frontierDepth = frontierDepth;
+        this.unprocessedPages = unprocessedPages;
+    }
+
+    public void pageCrawled() {
+        pages.increment();
+    }
+
+    public void bytesRead(long n) {
+        bytes.add(n);
+    }
+
+    public void error() {
+        errors.increment();
+    }
+
+    public void skipped() {
+        skipped.increment();
+    }
+
+    public void duplicate() {
+        duplicates.increment();
+    }
+
+    public void disallowed() {
+        disallowed.increment();
+    }
+
+    public void record(Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * @return a single line of every metric, for logging
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder(String.format(Locale.ROOT,
+                "pages=%d (%.1f/s) bytes=%d (%.0f/s) errors=%d skipped=%d duplicates=%d disallowed=%d frontier=%d unprocessed=%d",
+                getPagesCrawled(), getPagesPerSecond(), getBytesRead(), getBytesPerSecond(), getErrors(), getSkippedPages(),
+                getDuplicatePages(), getDisallowedLinks(),
+                getFrontierDepth(), getUnprocessedPages()));
+        for (Stage stage : Stage.values()) {
+            StageTimes times = times(stage);
+            summary.append(String.format(Locale.ROOT, " %s=%.0f/%.0f/%.0fus",
+                    stage.name().toLowerCase(Locale.ROOT), times.getMedianMicros(), times.getPercentile99Micros(), times.getMaxMicros()));
+        }
+        return summary.toString();
+    }
+
+    @Override
+    public long getPagesCrawled() {
+        return pages.sum();
+    }
+
+    @Override
+    public double getPagesPerSecond() {
+        return perSecond(pages.sum());
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytes.sum();
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return perSecond(bytes.sum());
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getSkippedPages() {
+        return skipped.sum();
+    }
+
+    @Override
+    public long getDuplicatePages() {
+        return duplicates.sum();
+    }
+
+    @Override
+    public long getDisallowedLinks() {
+        return disallowed.sum();
+    }
+
+    @Override
+    public int getFrontierDepth() {
+        return frontierDepth.getAsInt();
+    }
+
+    @Override
+    public int getUnprocessedPages() {
+        return unprocessedPages.getAsInt();
+    }
+
+    @Override
+    public StageTimes getFetchTimes() {
+        return times(Stage.FETCH);
+    }
+
+    @Override
+    public StageTimes getParseTimes() {
+        return times(Stage.PARSE);
+    }
+
+    @Override
+    public StageTimes getEnqueueTimes() {
+        return times(Stage.ENQUEUE);
+    }
+
+    @Override
+    public StageTimes getSubmitTimes() {
+        return times(Stage.SUBMIT);
+    }
+
+    StageTimes times(Stage stage) {
+        return stages[stage.ordinal()].snapshot();
+    }
+
+    private double perSecond(long count) {
+        long elapsed = nanoClock.getAsLong() - startNanos;
+        return elapsed > 0 ? count * (double) TimeUnit.SECONDS.toNanos(1) / elapsed : 0;
+    }
+
+    /**
+     * A histogram of durations in nanoseconds. Values under 4 have a bucket each, above that every power of two is
+     * split into 4 buckets by the two bits after the leading one.
+     */
+    private static final class Histogram {
+
+        private static final int SUB_BUCKET_BITS = 2;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            buckets[bucket(value)].increment();
+            total.add(value);
+            max.accumulate(value);
+        }
+
+        StageTimes snapshot() {
+            long[] counts = new long[buckets.length];
+            long count = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                count += counts[i];
+            }
+            return new StageTimes(count, count > 0 ? total.sum() / (double) count : 0,
+                    percentile(counts, count, 0.5), percentile(counts, count, 0.99), max.get());
+        }
+
+        private static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+        }
+
+        // The highest value that falls into the bucket, so percentiles are never understated
+        private static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+            long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+            return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+        }
+
+        private long percentile(long[] counts, long count, double quantile) {
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * How long one stage has taken over the crawl so far, published over JMX as composite data
+     */
+    public static final class StageTimes {
+
+        private final long count;
+        private final double meanNanos;
+        private final long medianNanos;
+        private final long percentile99Nanos;
+        private final long maxNanos;
+
+        StageTimes(long count, double meanNanos, long medianNanos, long percentile99Nanos, long maxNanos) {
+            this.count = count;
+            this.meanNanos = meanNanos;
+            this.medianNanos = medianNanos;
+            this.percentile99Nanos = percentile99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMicros() {
+            return meanNanos / 1000;
+        }
+
+        public double getMedianMicros() {
+            return medianNanos / 1000.0;
+        }
+
+        public double getPercentile99Micros() {
+            return percentile99Nanos / 1000.0;
+        }
+
+        public double getMaxMicros() {
+            return maxNanos / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return "StageTimes{" +
+                    "count=" + count +
+                    ", meanNanos=" + meanNanos +
+                    ", medianNanos=" + medianNanos +
+                    ", percentile99Nanos=" + percentile99Nanos +
+                    ", maxNanos=" + maxNanos +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package just.another.webcrawler;
+
+/**
+ * The metrics of a running crawl as published over JMX, rates are averaged over the whole crawl so far
+ */
+public interface CrawlMetricsMXBean {
+
+    long getPagesCrawled();
+
+    double getPagesPerSecond();
+
+    long getBytesRead();
+
+    double getBytesPerSecond();
+
+    long getErrors();
+
+    /**
+     * @return the pages not read because their headers showed they weren't HTML
+     */
+    long getSkippedPages();
+
+    /**
+     * @return the pages read but left out as aliases of a canonical or duplicated page
+     */
+    long getDuplicatePages();
+
+    /**
+     * @return the links not queued because robots.txt disallows them, counted every time one is found
+     */
+    long getDisallowedLinks();
+
+    int getFrontierDepth();
+
+    int getUnprocessedPages();
+
+    CrawlMetrics.StageTimes getFetchTimes();
+
+    CrawlMetrics.StageTimes getParseTimes();
+
+    CrawlMetrics.StageTimes getEnqueueTimes();
+
+    CrawlMetrics.StageTimes getSubmitTimes();
+}
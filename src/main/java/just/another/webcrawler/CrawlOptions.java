@@ -0,0 +1,624 @@
+package just.another.webcrawler;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * An immutable bean that holds the options of a crawl as given on the command line.
+ *
+ * The site and number of threads are positional, everything else is given as --name=value.
+ */
+public class CrawlOptions {
+
+    public static final String USAGE = "Usage: web-crawler <site> [threads] [options]\n" +
+            "   site                        The absolute URL of the site to crawl\n" +
+            "   threads                     The number of concurrent threads (or pages in flight). Defaults to 1. Some sites may refuse to serve content if too many requests are made from the same ip.\n" +
+            "   --max-body-size=bytes       Pages larger than this are truncated. Defaults to " + UrlReader.DEFAULT_MAX_BODY_SIZE + "\n" +
+            "   --timeout=seconds           How long to wait to connect to a host or for the next bytes of a response. Defaults to " + UrlReader.DEFAULT_TIMEOUT_SECONDS + "\n" +
+            "   --execution=pool|virtual    Run threads long lived crawlers on a pool (the default) or crawl each page on its own virtual thread, with at most threads pages in flight\n" +
+            "   --fetch=blocking|nio        Read pages through a URLConnection per request (the default) or the non blocking engine\n" +
+            "   --selectors=n               The number of selector threads used by the nio engine. Defaults to 2\n" +
+            "   --connections-per-host=n    The most keep-alive connections the nio engine opens to one host. Defaults to 4\n" +
+            "   --dns-ttl=seconds           How long resolved host names are cached. Defaults to 60, 0 to look hosts up every time\n" +
+            "   --frontier=type             polite queues urls per host to keep to --rate (the default), stealing on a deque per crawler that idle crawlers steal from, not with virtual execution, priority nearest the base url first\n" +
+            "   --concurrency=fixed|adaptive Let the crawlers take any host's urls as fast as --rate allows (fixed, the default), or adapt how many of a host's pages are in flight to its latency and errors, up to threads. Both per node of a cluster\n" +
+            "   --rate=requests             The most requests per second made to any one host, by each node of a cluster. Defaults to 0, no limit\n" +
+            "   --burst=n                   The most requests made to one host at once after it has been left idle. Defaults to 1\n" +
+            "   --max-depth=n               The most links followed from the base url. Defaults to no limit\n" +
+            "   --max-pages=n               The most pages crawled. Defaults to no limit\n" +
+            "   --max-time=seconds          Stop handing out pages after this long. Defaults to 0, no limit\n" +
+            "   --output=format,...         Any of text (the default) for sitemap.txt, xml for sitemap.xml, jsonl for an edge list in sitemap.jsonl and binary for sitemap.bin\n" +
+            "   --robots=obey|seed|ignore   Don't queue links robots.txt disallows (the default), also queue the urls of the sitemaps it lists, or ignore it\n" +
+            "   --dedup=none|exact|near     Treat pages naming another as canonical or with the same content as another as its aliases (exact), also pages with nearly the same text (near), or neither (none, the default)\n" +
+            "   --max-result-memory=mb      Spill the results of the oldest pages to a temporary file once they take this much memory. Defaults to 0, never\n" +
+            "   --seen-set=heap|offheap     Keep the fingerprints of discovered urls on the heap (the default) or off heap behind a Bloom filter\n" +
+            "   --expected-urls=n           The number of urls the seen set is first sized for. Defaults to 65536\n" +
+            "   --journal=file              Log every crawled page to the file and resume the crawl from it if it exists\n" +
+            "   --recrawl=file              The journal of a previous crawl, pages that haven't changed since are not parsed again\n" +
+            "   --metrics-interval=seconds  Log a summary of the crawl metrics this often. Defaults to 0, never. They are always published over JMX\n" +
+            "   --cluster=host:port,...     Share the crawl between processes, every one given the same list of nodes and its own --node. Urls are split by url not host, so a host gets --rate from every node\n" +
+            "   --node=n                    The index of this process in --cluster, node 0 writes the site map. Defaults to 0\n";
+
+    public enum Execution {
+        POOL, VIRTUAL
+    }
+
+    public enum Fetch {
+        BLOCKING, NIO
+    }
+
+    public enum SeenSet {
+        HEAP, OFFHEAP
+    }
+
+    public enum Output {
+        TEXT, XML, JSONL, BINARY
+    }
+
+    public enum Robots {
+        OBEY, SEED, IGNORE
+    }
+
+    public enum Dedup {
+        NONE, EXACT, NEAR
+    }
+
+    public enum Frontier {
+        POLITE, STEALING, PRIORITY
+    }
+
+    public enum Concurrency {
+        FIXED, ADAPTIVE
+    }
+
+    private final String baseUrl;
+    private final int nThreads;
+    private final int maxBodySize;
+    private final int timeout;
+    private final Execution execution;
+    private final Fetch fetch;
+    private final int selectors;
+    private final int connectionsPerHost;
+    private final int dnsTtl;
+    private final Frontier frontier;
+    private final Concurrency concurrency;
+    private final double rate;
+    private final int maxDepth;
+    private final long maxPages;
+    private final int maxResultMemory;
+    private final Robots robots;
+    private final Dedup dedup;
+    private final int maxTime;
+    private final int burst;
+    private final Set<Output> outputs;
+    private final SeenSet seenSet;
+    private final int expectedUrls;
+    private final String journal;
+    private final String recrawl;
+    private final int metricsInterval;
+    private final List<InetSocketAddress> cluster;
+    private final int node;
+
+    private CrawlOptions(Builder builder) {
+        baseUrl = builder.baseUrl;
+        nThreads = builder.nThreads;
+        maxBodySize = builder.maxBodySize;
+        timeout = builder.timeout;
+        execution = builder.execution;
+        fetch = builder.fetch;
+        selectors = builder.selectors;
+        connectionsPerHost = builder.connectionsPerHost;
+        dnsTtl = builder.dnsTtl;
+        frontier = builder.frontier;
+        concurrency = builder.concurrency;
+        rate = builder.rate;
+        maxDepth = builder.maxDepth;
+        maxPages = builder.maxPages;
+        maxResultMemory = builder.maxResultMemory;
+        robots = builder.robots;
+        dedup = builder.dedup;
+        maxTime = builder.maxTime;
+        burst = builder.burst;
+        outputs = builder.outputs;
+        seenSet = builder.seenSet;
+        expectedUrls = builder.expectedUrls;
+        journal = builder.journal;
+        recrawl = builder.recrawl;
+        metricsInterval = builder.metricsInterval;
+        cluster = builder.cluster;
+        node = builder.node;
+    }
+
+    public static Builder newBuilder(String baseUrl) {
+        return new Builder(baseUrl);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the arguments are missing or not understood
+     */
+    public static CrawlOptions parse(String... args) {
+        Builder builder = null;
+        int position = 0;
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int equals = arg.indexOf('=');
+                String name = equals < 0 ? arg.substring(2) : arg.substring(2, equals);
+                String value = equals < 0 ? null : arg.substring(equals + 1);
+                if (builder == null) {
+                    throw new IllegalArgumentException("The site must be given before any options");
+                }
+                builder.withOption(name, value);
+            } else if (position == 0) {
+                builder = newBuilder(arg);
+                position++;
+            } else if (position == 1) {
+                builder.withThreads(Integer.parseInt(arg));
+                position++;
+            } else {
+                throw new IllegalArgumentException("Unexpected argument " + arg);
+            }
+        }
+        if (builder == null) {
+            throw new IllegalArgumentException("No site given");
+        }
+        return builder.build();
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public int getThreads() {
+        return nThreads;
+    }
+
+    public int getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * @return the seconds to wait to connect to a host or for the next bytes of a response
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public Execution getExecution() {
+        return execution;
+    }
+
+    public Fetch getFetch() {
+        return fetch;
+    }
+
+    public int getSelectors() {
+        return selectors;
+    }
+
+    public int getConnectionsPerHost() {
+        return connectionsPerHost;
+    }
+
+    public Frontier getFrontier() {
+        return frontier;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getMaxPages() {
+        return maxPages;
+    }
+
+    /**
+     * @return the seconds pages are handed out for, 0 if there is no limit
+     */
+    public int getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * @return the seconds resolved host names are cached for
+     */
+    public int getDnsTtl() {
+        return dnsTtl;
+    }
+
+    /**
+     * @return the megabytes of results kept in memory before the oldest are spilled to disk, 0 to keep them all
+     */
+    public int getMaxResultMemory() {
+        return maxResultMemory;
+    }
+
+    public Robots getRobots() {
+        return robots;
+    }
+
+    public Dedup getDedup() {
+        return dedup;
+    }
+
+    public Concurrency getConcurrency() {
+        return concurrency;
+    }
+
+    public Set<Output> getOutputs() {
+        return outputs;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public SeenSet getSeenSet() {
+        return seenSet;
+    }
+
+    public int getExpectedUrls() {
+        return expectedUrls;
+    }
+
+    /**
+     * @return the path of the crawl journal or null if the crawl isn't journaled
+     */
+    public String getJournal() {
+        return journal;
+    }
+
+    /**
+     * @return the path of the journal of the previous crawl or null if every page is read afresh
+     */
+    public String getRecrawl() {
+        return recrawl;
+    }
+
+    /**
+     * @return the seconds between metrics summaries, 0 if they aren't logged
+     */
+    public int getMetricsInterval() {
+        return metricsInterval;
+    }
+
+    /**
+     * @return the address of every node of a distributed crawl or null if the crawl runs in this process alone
+     */
+    public List<InetSocketAddress> getCluster() {
+        return cluster;
+    }
+
+    public int getNode() {
+        return node;
+    }
+
+    public static final class Builder {
+        private String baseUrl;
+        private int nThreads = 1;
+        private int maxBodySize = UrlReader.DEFAULT_MAX_BODY_SIZE;
+        private int timeout = UrlReader.DEFAULT_TIMEOUT_SECONDS;
+        private Execution execution = Execution.POOL;
+        private Fetch fetch = Fetch.BLOCKING;
+        private int selectors = 2;
+        private int connectionsPerHost = 4;
+        private int dnsTtl = 60;
+        private Frontier frontier = Frontier.POLITE;
+        private Concurrency concurrency = Concurrency.FIXED;
+        private double rate = 0;
+        private int maxDepth = Integer.MAX_VALUE;
+        private long maxPages = Long.MAX_VALUE;
+        private int maxTime;
+        private int maxResultMemory;
+        private Robots robots = Robots.OBEY;
+        private Dedup dedup = Dedup.NONE;
+        private int burst = 1;
+        private Set<Output> outputs = Collections.unmodifiableSet(EnumSet.of(Output.TEXT));
+        private SeenSet seenSet = SeenSet.HEAP;
+        private int expectedUrls = 1 << 16;
+        private String journal;
+        private String recrawl;
+        private int metricsInterval;
+        private List<InetSocketAddress> cluster;
+        private int node;
+
+        private Builder(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public Builder withThreads(int val) {
+            nThreads = val;
+            return this;
+        }
+
+        public Builder withMaxBodySize(int val) {
+            maxBodySize = val;
+            return this;
+        }
+
+        public Builder withTimeout(int val) {
+            timeout = val;
+            return this;
+        }
+
+        public Builder withExecution(Execution val) {
+            execution = val;
+            return this;
+        }
+
+        public Builder withFetch(Fetch val) {
+            fetch = val;
+            return this;
+        }
+
+        public Builder withSelectors(int val) {
+            selectors = val;
+            return this;
+        }
+
+        public Builder withConnectionsPerHost(int val) {
+            connectionsPerHost = val;
+            return this;
+        }
+
+        public Builder withFrontier(Frontier val) {
+            frontier = val;
+            return this;
+        }
+
+        public Builder withRate(double val) {
+            rate = val;
+            return this;
+        }
+
+        public Builder withMaxDepth(int val) {
+            maxDepth = val;
+            return this;
+        }
+
+        public Builder withMaxPages(long val) {
+            maxPages = val;
+            return this;
+        }
+
+        public Builder withMaxTime(int val) {
+            maxTime = val;
+            return this;
+        }
+
+        public Builder withDnsTtl(int val) {
+            dnsTtl = val;
+            return this;
+        }
+
+        public Builder withMaxResultMemory(int val) {
+            maxResultMemory = val;
+            return this;
+        }
+
+        public Builder withRobots(Robots val) {
+            robots = val;
+            return this;
+        }
+
+        public Builder withDedup(Dedup val) {
+            dedup = val;
+            return this;
+        }
+
+        public Builder withConcurrency(Concurrency val) {
+            concurrency = val;
+            return this;
+        }
+
+        public Builder withBurst(int val) {
+            burst = val;
+            return this;
+        }
+
+        public Builder withOutputs(Set<Output> val) {
+            outputs = val;
+            return this;
+        }
+
+        public Builder withSeenSet(SeenSet val) {
+            seenSet = val;
+            return this;
+        }
+
+        public Builder withExpectedUrls(int val) {
+            expectedUrls = val;
+            return this;
+        }
+
+        public Builder withJournal(String val) {
+            journal = val;
+            return this;
+        }
+
+        public Builder withRecrawl(String val) {
+            recrawl = val;
+            return this;
+        }
+
+        public Builder withMetricsInterval(int val) {
+            metricsInterval = val;
+            return this;
+        }
+
+        public Builder withCluster(List<InetSocketAddress> val) {
+            cluster = val;
+            return this;
+        }
+
+        public Builder withNode(int val) {
+            node = val;
+            return this;
+        }
+
+        public CrawlOptions build() {
+            if (nThreads < 1 || selectors < 1 || connectionsPerHost < 1) {
+                throw new IllegalArgumentException("There must be at least one thread, selector and connection per host");
+            }
+            if (maxBodySize < 1) {
+                throw new IllegalArgumentException("The max body size must be at least a byte");
+            }
+            if (rate < 0 || burst < 1) {
+                throw new IllegalArgumentException("The rate can't be negative and the burst must be at least 1");
+            }
+            if (metricsInterval < 0) {
+                throw new IllegalArgumentException("The metrics interval can't be negative");
+            }
+            if (outputs.isEmpty()) {
+                throw new IllegalArgumentException("There must be at least one output");
+            }
+            if (maxDepth < 0 || maxPages < 1 || maxTime < 0) {
+                throw new IllegalArgumentException("The max depth and time can't be negative and at least one page must be crawled");
+            }
+            if (maxResultMemory < 0) {
+                throw new IllegalArgumentException("The max result memory can't be negative");
+            }
+            if (timeout < 1) {
+                throw new IllegalArgumentException("The timeout must be at least a second");
+            }
+            if (dnsTtl < 0) {
+                throw new IllegalArgumentException("The dns ttl can't be negative");
+            }
+            if (cluster != null && (maxDepth != Integer.MAX_VALUE || maxPages != Long.MAX_VALUE || maxTime > 0)) {
+                throw new IllegalArgumentException("Budgets can't be given to a distributed crawl");
+            }
+            // Aliases and the content of pages are only known to the node that crawled them
+            if (cluster != null && dedup != Dedup.NONE) {
+                throw new IllegalArgumentException("A distributed crawl can't dedup pages");
+            }
+            if (frontier != Frontier.POLITE && (rate > 0 || cluster != null || concurrency == Concurrency.ADAPTIVE)) {
+                throw new IllegalArgumentException("Only the polite frontier keeps to a rate, adapts its concurrency or takes part in a cluster");
+            }
+            // Only the dispatcher takes urls with virtual threads, so every link would go to the one shared deque
+            if (frontier == Frontier.STEALING && execution == Execution.VIRTUAL) {
+                throw new IllegalArgumentException("The stealing frontier needs the pool of crawlers to steal between");
+            }
+            if (node < 0 || node >= (cluster != null ? cluster.size() : 1)) {
+                throw new IllegalArgumentException("The node must be one of the nodes of the cluster");
+            }
+            return new CrawlOptions(this);
+        }
+
+        private void withOption(String name, String value) {
+            switch (name) {
+                case "max-body-size":
+                    withMaxBodySize(Integer.parseInt(required(name, value)));
+                    break;
+                case "timeout":
+                    withTimeout(Integer.parseInt(required(name, value)));
+                    break;
+                case "execution":
+                    withExecution(Execution.valueOf(required(name, value).toUpperCase(Locale.ROOT)));
+                    break;
+                case "fetch":
+                    withFetch(Fetch.valueOf(required(name, value).toUpperCase(Locale.ROOT)));
+                    break;
+                case "selectors":
+                    withSelectors(Integer.parseInt(required(name, value)));
+                    break;
+                case "connections-per-host":
+                    withConnectionsPerHost(Integer.parseInt(required(name, value)));
+                    break;
+                case "frontier":
+                    withFrontier(Frontier.valueOf(required(name, value).toUpperCase(Locale.ROOT)));
+                    break;
+                case "concurrency":
+                    withConcurrency(Concurrency.valueOf(required(name, value).toUpperCase(Locale.ROOT)));
+                    break;
+                case "rate":
+                    withRate(Double.parseDouble(required(name, value)));
+                    break;
+                case "burst":
+                    withBurst(Integer.parseInt(required(name, value)));
+                    break;
+                case "output":
+                    withOutputs(parseOutputs(required(name, value)));
+                    break;
+                case "seen-set":
+                    withSeenSet(SeenSet.valueOf(required(name, value).toUpperCase(Locale.ROOT)));
+                    break;
+                case "expected-urls":
+                    withExpectedUrls(Integer.parseInt(required(name, value)));
+                    break;
+                case "journal":
+                    withJournal(required(name, value));
+                    break;
+                case "recrawl":
+                    withRecrawl(required(name, value));
+                    break;
+                case "max-depth":
+                    withMaxDepth(Integer.parseInt(required(name, value)));
+                    break;
+                case "max-pages":
+                    withMaxPages(Long.parseLong(required(name, value)));
+                    break;
+                case "max-time":
+                    withMaxTime(Integer.parseInt(required(name, value)));
+                    break;
+                case "robots":
+                    withRobots(Robots.valueOf(required(name, value).toUpperCase(Locale.ROOT)));
+                    break;
+                case "dedup":
+                    withDedup(Dedup.valueOf(required(name, value).toUpperCase(Locale.ROOT)));
+                    break;
+                case "dns-ttl":
+                    withDnsTtl(Integer.parseInt(required(name, value)));
+                    break;
+                case "max-result-memory":
+                    withMaxResultMemory(Integer.parseInt(required(name, value)));
+                    break;
+                case "metrics-interval":
+                    withMetricsInterval(Integer.parseInt(required(name, value)));
+                    break;
+                case "cluster":
+                    withCluster(parseNodes(required(name, value)));
+                    break;
+                case "node":
+                    withNode(Integer.parseInt(required(name, value)));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+
+        private static Set<Output> parseOutputs(String value) {
+            Set<Output> outputs = EnumSet.noneOf(Output.class);
+            for (String output : value.split(",")) {
+                outputs.add(Output.valueOf(output.trim().toUpperCase(Locale.ROOT)));
+            }
+            return Collections.unmodifiableSet(outputs);
+        }
+
+        private static List<InetSocketAddress> parseNodes(String value) {
+            List<InetSocketAddress> nodes = new ArrayList<>();
+            for (String address : value.split(",")) {
+                int colon = address.lastIndexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("No port given for node " + address);
+                }
+                nodes.add(new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+            }
+            return Collections.unmodifiableList(nodes);
+        }
+
+        private static String required(String name, String value) {
+            if (value == null) {
+                throw new IllegalArgumentException("No value given for --" + name);
+            }
+            return value;
+        }
+    }
+}
@@ -10,16 +10,25 @@ import static java.util.Collections.emptySet;
 public class CrawlResult {
 
     public static final CrawlResult EMPTY = new CrawlResult(emptySet(), emptySet(), emptySet());
-    public static final CrawlResult PENDING = new CrawlResult(emptySet(), emptySet(), emptySet());
 
     private final Set<String> internalLinks;
     private final Set<String> externalLinks;
     private final Set<String> images;
+    private final PageVersion version;
 
     public CrawlResult(Set<String> internalLinks, Set<String> externalLinks, Set<String> images) {
+        this(internalLinks, externalLinks, images, null);
+    }
+
+    public CrawlResult(Set<String> internalLinks, Set<String> externalLinks, Set<String> images, PageVersion version) {
         this.internalLinks = internalLinks;
         this.externalLinks = externalLinks;
         this.images = images;
+        this.version = version;
+    }
+
+    public CrawlResult withVersion(PageVersion version) {
+        return new CrawlResult(internalLinks, externalLinks, images, version);
     }
 
     public Set<String> getInternalLinks() {
@@ -34,6 +43,13 @@ public class CrawlResult {
         return images;
     }
 
+    /**
+     * @return the version of the page the links were read from, or null if it isn't known
+     */
+    public PageVersion getVersion() {
+        return version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -43,7 +59,8 @@ public class CrawlResult {
 
         if (internalLinks != null ? !internalLinks.equals(that.internalLinks) : that.internalLinks != null) return false;
         if (externalLinks != null ? !externalLinks.equals(that.externalLinks) : that.externalLinks != null) return false;
-        return images != null ? images.equals(that.images) : that.images == null;
+        if (images != null ? !images.equals(that.images) : that.images != null) return false;
+        return version != null ? version.equals(that.version) : that.version == null;
 
     }
 
@@ -52,6 +69,7 @@ public class CrawlResult {
         int result = internalLinks != null ? internalLinks.hashCode() : 0;
         result = 31 * result + (externalLinks != null ? externalLinks.hashCode() : 0);
         result = 31 * result + (images != null ? images.hashCode() : 0);
+        result = 31 * result + (version != null ? version.hashCode() : 0);
         return result;
     }
 
@@ -61,6 +79,7 @@ public class CrawlResult {
                 "internalLinks=" + internalLinks +
                 ", externalLinks=" + externalLinks +
                 ", images=" + images +
+                ", version=" + version +
                 '}';
     }
 }
@@ -0,0 +1,13 @@
+package just.another.webcrawler;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes out every page as soon as it has been crawled rather than once the whole site has been, so output of any size
+ * never needs the site in memory. Called by many crawlers at once, closing it finishes the output.
+ */
+public interface CrawlSink extends Closeable {
+
+    void page(String url, CrawlResult result) throws IOException;
+}
@@ -0,0 +1,140 @@
+package just.another.webcrawler;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Resolves host names for the crawler and keeps the addresses for ttl, so a host is looked up once per ttl rather than
+ * whenever the JVM's own cache has let it go. A host that can't be resolved is remembered for a shorter while, so links
+ * to a dead host fail fast instead of each waiting on a lookup of their own.
+ *
+ * A host is only looked up once however many crawlers want it at the same time, the others wait for the same lookup.
+ * Hosts can also be prefetched, looked up on a few background threads before anyone needs them, so that a crawler
+ * switching to a host it hasn't fetched from yet finds its address already there.
+ */
+public class DnsCache {
+
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    private static final long NEGATIVE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final int PREFETCH_THREADS = 4;
+
+    private final Resolver resolver;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final LongSupplier clock;
+    private final Executor prefetcher;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public DnsCache() {
+        this(DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * @param ttlMillis how long addresses are kept, zero to look hosts up every time
+     */
+    public DnsCache(long ttlMillis) {
+        this(InetAddress::getByName, ttlMillis, System::nanoTime, prefetcher());
+    }
+
+    DnsCache(Resolver resolver, long ttlMillis, LongSupplier clock, Executor prefetcher) {
+        this.resolver = resolver;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(Math.min(ttlMillis, NEGATIVE_TTL_MILLIS));
+        this.clock = clock;
+        this.prefetcher = prefetcher;
+    }
+
+    /**
+     * Looks the host up on the calling thread unless its address is cached or already being looked up
+     */
+    public InetAddress resolve(String host) throws UnknownHostException {
+        Entry entry = entry(host, false);
+        try {
+            return entry.address.join();
+        } catch (CompletionException e) {
+            // A new exception each time, so the stack trace is that of the caller
+            UnknownHostException failure = new UnknownHostException(host);
+            failure.initCause(e.getCause());
+            throw failure;
+        }
+    }
+
+    /**
+     * Starts looking the host up in the background unless its address is cached or already being looked up
+     *
+     * @return the address once it has been resolved, failed if the host can't be
+     */
+    public CompletableFuture<InetAddress> prefetch(String host) {
+        return entry(host, true).address;
+    }
+
+    private Entry entry(String host, boolean background) {
+        String key = host.toLowerCase(Locale.ROOT);
+        long now = clock.getAsLong();
+        Entry entry = entries.get(key);
+        while (entry == null || entry.isExpired(now)) {
+            Entry lookup = new Entry();
+            if (entry == null ? entries.putIfAbsent(key, lookup) == null : entries.replace(key, entry, lookup)) {
+                if (background) {
+                    prefetcher.execute(() -> lookup.resolve(key));
+                } else {
+                    lookup.resolve(key);
+                }
+                return lookup;
+            }
+            entry = entries.get(key);
+        }
+        return entry;
+    }
+
+    private static Executor prefetcher() {
+        AtomicInteger threads = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "dns-prefetch-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Idle threads go away, so the cache needs no closing
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    interface Resolver {
+
+        InetAddress resolve(String host) throws UnknownHostException;
+    }
+
+    private final class Entry {
+
+        private final CompletableFuture<InetAddress> address = new CompletableFuture<>();
+        // Set before the address is completed, it is only read once it has been
+        private volatile long expiresNanos;
+
+        void resolve(String host) {
+            try {
+                InetAddress resolved = resolver.resolve(host);
+                expiresNanos = clock.getAsLong() + ttlNanos;
+                address.complete(resolved);
+            } catch (UnknownHostException | RuntimeException e) {
+                expiresNanos = clock.getAsLong() + negativeTtlNanos;
+                address.completeExceptionally(e);
+            }
+        }
+
+        boolean isExpired(long now) {
+            return address.isDone() && now - expiresNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package just.another.webcrawler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers the content of every page crawled so that a page served again under another url is known to be a
+ * duplicate of the first url it was crawled under.
+ *
+ * Pages are exact duplicates if the hashes of their bodies are equal. Optionally pages are also near duplicates if
+ * their SimHashes differ in at most 3 of their 64 bits. Such SimHashes must be equal in at least one of their four 16 bit
+ * blocks, so every SimHash is indexed under each of its blocks and only those that share a block with a page are
+ * compared with it.
+ *
+ * Safe for many crawlers to check pages at once, the first of two duplicates to be checked is the original.
+ */
+public class DuplicateIndex {
+
+    private static final int MAX_DISTANCE = 3;
+    private static final int BLOCKS = MAX_DISTANCE + 1;
+    private static final int BLOCK_BITS = Long.SIZE / BLOCKS;
+
+    private final boolean nearDuplicates;
+    private final Map<Long, String> contentHashes = new HashMap<>();
+    private final Map<Long, List<Page>> blocks = new HashMap<>();
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * @param nearDuplicates whether pages with nearly the same SimHash are duplicates too
+     */
+    public DuplicateIndex(boolean nearDuplicates) {
+        this.nearDuplicates = nearDuplicates;
+    }
+
+    /**
+     * Adds the page unless it is a duplicate
+     *
+     * @param contentHash the hash of the body of the page
+     * @param simHash the SimHash of the page, or SimHash.NONE
+     * @return the url of the page this one duplicates, or null if it is the first of its content
+     */
+    public String originalOf(String url, long contentHash, long simHash) {
+        boolean near = nearDuplicates && simHash != SimHash.NONE;
+        lock.lock();
+        try {
+            String original = contentHashes.putIfAbsent(contentHash, url);
+            if (original != null) {
+                return original;
+            }
+            if (!near) {
+                return null;
+            }
+            for (int block = 0; block < BLOCKS; block++) {
+                List<Page> pages = blocks.get(key(block, simHash));
+                if (pages != null) {
+                    for (Page page : pages) {
+                        if (SimHash.distance(page.simHash, simHash) <= MAX_DISTANCE) {
+                            return page.url;
+                        }
+                    }
+                }
+            }
+            Page page = new Page(url, simHash);
+            for (int block = 0; block < BLOCKS; block++) {
+                blocks.computeIfAbsent(key(block, simHash), k -> new ArrayList<>(1)).add(page);
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The block number goes above the 16 bits of the block so each block has its own keys
+    private static long key(int block, long simHash) {
+        return (long) block << BLOCK_BITS | (simHash >>> (block * BLOCK_BITS)) & ((1L << BLOCK_BITS) - 1);
+    }
+
+    private static final class Page {
+
+        private final String url;
+        private final long simHash;
+
+        Page(String url, long simHash) {
+            this.url = url;
+            this.simHash = simHash;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package just.another.webcrawler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The status, headers and streamed body of a response, as received by the NioFetchEngine or a URLConnection.
+ *
+ * The body must always be closed, that is what hands the connection back to the pool, unless the response is aborted.
+ */
+public class FetchResponse {
+
+    private final int status;
+    private final Map<String, String> headers;
+    private final InputStream body;
+    private final Closeable abort;
+    private final String url;
+
+    /**
+     * For a body whose close drops the connection if the body hasn't been read
+     */
+    FetchResponse(int status, Map<String, String> headers, InputStream body) {
+        this(status, headers, body, body);
+    }
+
+    /**
+     * @param abort drops the connection without reading the rest of the body
+     */
+    FetchResponse(int status, Map<String, String> headers, InputStream body, Closeable abort) {
+        this(status, headers, body, abort, null);
+    }
+
+    /**
+     * @param url the url the response came from after any redirects, or null if it is the url that was asked for
+     */
+    FetchResponse(int status, Map<String, String> headers, InputStream body, Closeable abort, String url) {
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+        this.abort = abort;
+        this.url = url;
+    }
+
+    FetchResponse withUrl(String url) {
+        return new FetchResponse(status, headers, body, abort, url);
+    }
+
+    /**
+     * @return the url the response came from after any redirects, or null if it is the url that was asked for
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the value of the header, or null if it wasn't sent. Repeated headers are joined with commas
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * Drops the connection instead of the body being closed, for a body not worth reading. A body that is closed may
+     * first be read to its end so that the connection can be reused.
+     */
+    public void abort() throws IOException {
+        abort.close();
+    }
+}
@@ -0,0 +1,283 @@
+package just.another.webcrawler;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A UrlSeenSet that only keeps a 64 bit fingerprint of each url, 8 bytes per url rather than a String and a map node.
+ *
+ * Fingerprints are kept in open addressed tables of longs with linear probing, split into segments that are each
+ * guarded by their own lock so concurrent crawlers rarely contend. Tables can be allocated off heap so that a large
+ * crawl doesn't grow the heap at all, and fronted by a Bloom filter so that most urls that are new are inserted without
+ * first probing the table.
+ *
+ * Two urls with the same fingerprint are treated as the same url, with 64 bits this is vanishingly unlikely even for
+ * hundreds of millions of urls.
+ */
+public class FingerprintSeenSet implements UrlSeenSet {
+
+    private static final int SEGMENT_BITS = 4;
+    private static final int MIN_SEGMENT_CAPACITY = 64;
+    private static final int MAX_SEGMENT_CAPACITY = 1 << 27;
+    private static final int BLOOM_BITS_PER_URL = 10;
+    private static final int BLOOM_HASHES = 7;
+    private static final long EMPTY = 0;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    private FingerprintSeenSet(Builder builder) {
+        int segmentCapacity = tableSize(builder.expectedUrls / segments.length);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(segmentCapacity, builder.offHeap, builder.bloomFilter);
+        }
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    @Override
+    public boolean add(String url) {
+        long fingerprint = fingerprint(url);
+        return segments[segment(fingerprint)].add(fingerprint);
+    }
+
+    private static int segment(long fingerprint) {
+        return (int) (fingerprint >>> (64 - SEGMENT_BITS));
+    }
+
+    /**
+     * Takes the lock of each segment once for all of the urls that fall in it
+     */
+    @Override
+    public List<String> addAll(Collection<String> urls) {
+        String[] values = urls.toArray(new String[0]);
+        long[] fingerprints = new long[values.length];
+        // A counting sort of the urls by segment
+        int[] segmentEnds = new int[segments.length + 1];
+        for (int i = 0; i < values.length; i++) {
+            fingerprints[i] = fingerprint(values[i]);
+            segmentEnds[segment(fingerprints[i]) + 1]++;
+        }
+        for (int s = 0; s < segments.length; s++) {
+            segmentEnds[s + 1] += segmentEnds[s];
+        }
+        int[] next = segmentEnds.clone();
+        int[] bySegment = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bySegment[next[segment(fingerprints[i])]++] = i;
+        }
+        boolean[] added = new boolean[values.length];
+        for (int s = 0; s < segments.length; s++) {
+            if (segmentEnds[s] < segmentEnds[s + 1]) {
+                segments[s].addAll(fingerprints, bySegment, segmentEnds[s], segmentEnds[s + 1], added);
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            if (added[i]) {
+                result.add(values[i]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * FNV-1a over the chars of the url followed by the MurmurHash3 finalizer to spread the bits, never 0 as that marks
+     * an empty slot
+     */
+    static long fingerprint(CharSequence url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    // A power of two with room for the given number of urls below the load factor
+    private static int tableSize(int urls) {
+        int size = MIN_SEGMENT_CAPACITY;
+        while (size < urls * 2L && size < MAX_SEGMENT_CAPACITY) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static final class Segment {
+
+        private final Lock lock = new ReentrantLock();
+        private final boolean offHeap;
+        private final boolean bloomFilter;
+        private LongBuffer table;
+        private long[] bloom;
+        private int mask;
+        private int size;
+
+        Segment(int capacity, boolean offHeap, boolean bloomFilter) {
+            this.offHeap = offHeap;
+            this.bloomFilter = bloomFilter;
+            allocate(capacity);
+        }
+
+        boolean add(long fingerprint) {
+            lock.lock();
+            try {
+                return addLocked(fingerprint);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Adds the fingerprints at indexes[from, to) under a single hold of the lock
+        void addAll(long[] fingerprints, int[] indexes, int from, int to, boolean[] added) {
+            lock.lock();
+            try {
+                for (int i = from; i < to; i++) {
+                    added[indexes[i]] = addLocked(fingerprints[indexes[i]]);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean addLocked(long fingerprint) {
+            if (bloom != null && !mightContain(fingerprint)) {
+                insert(fingerprint);
+                return true;
+            }
+            int slot = (int) fingerprint & mask;
+            while (true) {
+                long existing = table.get(slot);
+                if (existing == fingerprint) {
+                    return false;
+                }
+                if (existing == EMPTY) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            insert(fingerprint);
+            return true;
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void insert(long fingerprint) {
+            if ((size + 1) * 2L > table.capacity()) {
+                if (table.capacity() < MAX_SEGMENT_CAPACITY) {
+                    grow();
+                } else if (size + 1 == table.capacity()) {
+                    throw new IllegalStateException("The seen set is full");
+                }
+            }
+            put(fingerprint);
+            size++;
+        }
+
+        private void put(long fingerprint) {
+            int slot = (int) fingerprint & mask;
+            while (table.get(slot) != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table.put(slot, fingerprint);
+            if (bloom != null) {
+                for (int i = 0; i < BLOOM_HASHES; i++) {
+                    long bit = bloomBit(fingerprint, i);
+                    bloom[(int) (bit >>> 6)] |= 1L << bit;
+                }
+            }
+        }
+
+        private boolean mightContain(long fingerprint) {
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = bloomBit(fingerprint, i);
+                if ((bloom[(int) (bit >>> 6)] & 1L << bit) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Double hashing, the high half of the fingerprint is the step so it is independent of the table slot
+        private long bloomBit(long fingerprint, int i) {
+            return (fingerprint + i * (fingerprint >>> 32 | 1)) & (bloom.length * 64L - 1);
+        }
+
+        // Doubles the table, the Bloom filter is rebuilt with it so its false positive rate doesn't climb as it fills
+        private void grow() {
+            LongBuffer old = table;
+            allocate(old.capacity() * 2);
+            for (int i = 0; i < old.capacity(); i++) {
+                long fingerprint = old.get(i);
+                if (fingerprint != EMPTY) {
+                    put(fingerprint);
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            table = offHeap ? ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer() : LongBuffer.allocate(capacity);
+            mask = capacity - 1;
+            if (bloomFilter) {
+                // capacity / 2 urls at the load factor, rounded to a power of two number of words
+                bloom = new long[Math.max(1, Integer.highestOneBit((int) ((long) capacity / 2 * BLOOM_BITS_PER_URL / 64)) * 2)];
+            }
+        }
+    }
+
+    public static final class Builder {
+        private int expectedUrls = 1 << 16;
+        private boolean offHeap;
+        private boolean bloomFilter;
+
+        private Builder() {
+        }
+
+        public Builder withExpectedUrls(int val) {
+            expectedUrls = val;
+            return this;
+        }
+
+        public Builder withOffHeap(boolean val) {
+            offHeap = val;
+            return this;
+        }
+
+        public Builder withBloomFilter(boolean val) {
+            bloomFilter = val;
+            return this;
+        }
+
+        public FingerprintSeenSet build() {
+            return new FingerprintSeenSet(this);
+        }
+    }
+}
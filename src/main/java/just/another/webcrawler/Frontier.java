@@ -0,0 +1,90 @@
+package just.another.webcrawler;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * The urls waiting to be crawled. Urls are added as they are discovered and taken by the crawlers, a frontier never
+ * checks whether a url has been seen before, that is left to the PageProcessor.
+ *
+ * A frontier also knows when the crawl is over. A url is pending from when it is added until the crawler that took it
+ * says it is done, having added the links it found, and once nothing is pending nothing more can be discovered.
+ */
+public interface Frontier {
+
+    void add(String url);
+
+    /**
+     * Adds every url in one go, which implementations can do with far less locking than adding them one at a time
+     */
+    default void addAll(Collection<String> urls) {
+        urls.forEach(this::add);
+    }
+
+    /**
+     * Adds a url found the given number of links from the base url, only a frontier that orders urls by it needs to
+     * know the depth
+     */
+    default void add(String url, int depth) {
+        add(url);
+    }
+
+    default void addAll(Collection<String> urls, int depth) {
+        addAll(urls);
+    }
+
+    /**
+     * @return whether the frontier orders urls by their depth, without a depth budget only then are depths kept
+     */
+    default boolean usesDepth() {
+        return false;
+    }
+
+    /**
+     * Blocks until a url may be crawled
+     *
+     * @return the next url or null once the crawl is over, or the frontier has been closed, and there is nothing left
+     * to take
+     */
+    String take() throws InterruptedException;
+
+    /**
+     * Marks a url that was taken as crawled, every link found on it must have been added first
+     */
+    void done(String url);
+
+    /**
+     * Marks a url that was taken as done although it couldn't be crawled, a frontier that adapts to how hosts respond
+     * backs off from an overloaded host
+     *
+     * @param overloaded whether the host said it has too much to do, rather than failing for another reason
+     */
+    default void failed(String url, boolean overloaded) {
+        done(url);
+    }
+
+    /**
+     * Wakes every waiting taker, once closed take never blocks
+     */
+    void close();
+
+    /**
+     * @return the number of urls waiting to be taken
+     */
+    int size();
+
+    /**
+     * @return the number of urls waiting to be taken or taken but not done
+     */
+    int pending();
+
+    /**
+     * Called once the crawl is over with the results crawled by this process. A frontier shared with other processes
+     * gathers the results of all of them into one.
+     *
+     * @return true if the results are now those of the whole crawl, false if another process has them
+     */
+    default boolean gather(ResultStore results) throws IOException {
+        return true;
+    }
+}
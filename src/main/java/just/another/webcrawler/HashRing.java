@@ -0,0 +1,54 @@
+package just.another.webcrawler;
+
+import java.util.Arrays;
+
+/**
+ * Assigns keys to nodes by consistent hashing.
+ *
+ * Every node is placed on a ring of 64 bit hashes at a number of virtual points and a key belongs to the node of the
+ * first point at or after its own hash, wrapping round. Adding or removing a node only moves the keys of its own
+ * points, and the virtual points spread the keys evenly however few nodes there are.
+ */
+public class HashRing {
+
+    private static final int DEFAULT_POINTS_PER_NODE = 128;
+    private static final int MAX_NODES = 1 << 16;
+
+    private final long[] points;
+    private final int[] owners;
+
+    public HashRing(int nodes) {
+        this(nodes, DEFAULT_POINTS_PER_NODE);
+    }
+
+    HashRing(int nodes, int pointsPerNode) {
+        if (nodes < 1 || nodes > MAX_NODES) {
+            throw new IllegalArgumentException("There must be between 1 and " + MAX_NODES + " nodes");
+        }
+        long[] hashes = new long[nodes * pointsPerNode];
+        for (int node = 0; node < nodes; node++) {
+            for (int point = 0; point < pointsPerNode; point++) {
+                // The node is kept in the low bits of each of its points so it survives the sort, and every process
+                // builds the same ring from nothing but the number of nodes
+                hashes[node * pointsPerNode + point] = FingerprintSeenSet.fingerprint("node-" + node + "#" + point) & ~0xffffL | node;
+            }
+        }
+        Arrays.sort(hashes);
+        points = hashes;
+        owners = new int[hashes.length];
+        for (int i = 0; i < hashes.length; i++) {
+            owners[i] = (int) (hashes[i] & 0xffff);
+        }
+    }
+
+    /**
+     * @return the index of the node the key belongs to
+     */
+    public int owner(CharSequence key) {
+        int i = Arrays.binarySearch(points, FingerprintSeenSet.fingerprint(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+}
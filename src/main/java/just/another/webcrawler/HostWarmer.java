@@ -0,0 +1,63 @@
+package just.another.webcrawler;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Gets hosts ready before crawlers get to them, so that switching to a new host doesn't stall the first request on a
+ * lookup and a handshake.
+ *
+ * A host's address is prefetched as soon as its first url is queued. Once the host is next in line its address is
+ * certainly wanted soon, so the NioFetchEngine, if there is one, also opens a connection to it. Without the engine
+ * urls are read through a URLConnection, which resolves hosts itself, but through the JVM's address cache which a
+ * prefetch fills as well.
+ *
+ * Both are only ever started, neither waits on the network, so they may be called from under a frontier's lock.
+ */
+public class HostWarmer {
+
+    private final DnsCache dnsCache;
+    private final NioFetchEngine engine;
+
+    /**
+     * @param engine the engine to open connections on, or null to only prefetch addresses
+     */
+    public HostWarmer(DnsCache dnsCache, NioFetchEngine engine) {
+        this.dnsCache = dnsCache;
+        this.engine = engine;
+    }
+
+    /**
+     * Called when the first url of a host is queued, which may be long before the host is crawled
+     */
+    public void queued(String url) {
+        URI uri = toUri(url);
+        if (uri != null && uri.getHost() != null) {
+            dnsCache.prefetch(uri.getHost());
+        }
+    }
+
+    /**
+     * Called when the host of the url is the next to be crawled
+     */
+    public void next(String url) {
+        URI uri = toUri(url);
+        if (uri == null || uri.getHost() == null) {
+            return;
+        }
+        if (engine != null) {
+            engine.prewarm(uri);
+        } else {
+            dnsCache.prefetch(uri.getHost());
+        }
+    }
+
+    private static URI toUri(String url) {
+        try {
+            return new URI(url);
+        } catch (URISyntaxException e) {
+            // Such a url can't be fetched either, there is nothing to get ready
+            return null;
+        }
+    }
+}
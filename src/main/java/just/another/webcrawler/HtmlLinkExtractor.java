@@ -0,0 +1,363 @@
+package just.another.webcrawler;
+
+/**
+ * A LinkExtractor that finds anchors, images, the base href and the canonical link in a single pass.
+ *
+ * Instead of regular expressions this runs a small tag/attribute state machine that looks at each character exactly
+ * once, so it never backtracks. Tag and attribute names are matched in place against fixed size buffers and only the
+ * values of the attributes we are interested in are copied, into a buffer that is reused from one tag to the next.
+ *
+ * All of the parsing state lives in fields so content can be fed in arbitrary chunks, a tag or attribute value may span
+ * several of them. Comments and the contents of script and style elements are skipped. Instances are not thread safe.
+ */
+public class HtmlLinkExtractor implements LinkExtractor {
+
+    // Longer urls are almost certainly inlined data rather than something worth crawling
+    private static final int MAX_VALUE_LENGTH = 4096;
+    private static final int MAX_NAME_LENGTH = 8;
+
+    private static final int TEXT = 0;
+    private static final int TAG_OPEN = 1;
+    private static final int TAG_NAME = 2;
+    private static final int BEFORE_ATTRIBUTE_NAME = 3;
+    private static final int ATTRIBUTE_NAME = 4;
+    private static final int AFTER_ATTRIBUTE_NAME = 5;
+    private static final int BEFORE_ATTRIBUTE_VALUE = 6;
+    private static final int ATTRIBUTE_VALUE_QUOTED = 7;
+    private static final int ATTRIBUTE_VALUE_UNQUOTED = 8;
+    private static final int MARKUP_DECLARATION = 9;
+    private static final int COMMENT_START = 10;
+    private static final int COMMENT = 11;
+    private static final int BOGUS = 12;
+    private static final int RAW_TEXT = 13;
+    private static final int RAW_TEXT_LESS_THAN = 14;
+    private static final int RAW_TEXT_END_TAG_NAME = 15;
+
+    private static final int OTHER_TAG = 0;
+    private static final int A_TAG = 1;
+    private static final int IMG_TAG = 2;
+    private static final int BASE_TAG = 3;
+    private static final int SCRIPT_TAG = 4;
+    private static final int STYLE_TAG = 5;
+    private static final int LINK_TAG = 6;
+
+    private final char[] name = new char[MAX_NAME_LENGTH];
+    private final StringBuilder value = new StringBuilder();
+    // The rel and href of a link element can come in either order, so the href is kept until the tag ends
+    private final StringBuilder linkHref = new StringBuilder();
+
+    private LinkHandler handler;
+    private int state;
+    private int nameLength;
+    private int tag;
+    private char quote;
+    private boolean capturing;
+    private int dashes;
+    private String rawTextTag;
+    private int rawTextMatched;
+    private boolean hasLinkHref;
+    private boolean canonical;
+
+    @Override
+    public void begin(LinkHandler handler) {
+        this.handler = handler;
+        state = TEXT;
+        capturing = false;
+    }
+
+    @Override
+    public void feed(CharSequence chunk) {
+        for (int i = 0, length = chunk.length(); i < length; i++) {
+            char c = chunk.charAt(i);
+            switch (state) {
+                case TEXT:
+                    if (c == '<') {
+                        state = TAG_OPEN;
+                    }
+                    break;
+                case TAG_OPEN:
+                    if (isLetter(c)) {
+                        nameLength = 0;
+                        appendName(c);
+                        state = TAG_NAME;
+                    } else if (c == '!') {
+                        state = MARKUP_DECLARATION;
+                    } else if (c == '/' || c == '?') {
+                        // End tags and processing instructions carry nothing we are interested in
+                        state = BOGUS;
+                    } else if (c != '<') {
+                        state = TEXT;
+                    }
+                    break;
+                case TAG_NAME:
+                    if (isWhitespace(c) || c == '/') {
+                        startTag();
+                        state = BEFORE_ATTRIBUTE_NAME;
+                    } else if (c == '>') {
+                        startTag();
+                        endTag();
+                    } else {
+                        appendName(c);
+                    }
+                    break;
+                case BEFORE_ATTRIBUTE_NAME:
+                    if (c == '>') {
+                        endTag();
+                    } else if (!isWhitespace(c) && c != '/') {
+                        nameLength = 0;
+                        appendName(c);
+                        state = ATTRIBUTE_NAME;
+                    }
+                    break;
+                case ATTRIBUTE_NAME:
+                    if (c == '=') {
+                        state = BEFORE_ATTRIBUTE_VALUE;
+                    } else if (isWhitespace(c)) {
+                        state = AFTER_ATTRIBUTE_NAME;
+                    } else if (c == '/') {
+                        state = BEFORE_ATTRIBUTE_NAME;
+                    } else if (c == '>') {
+                        endTag();
+                    } else {
+                        appendName(c);
+                    }
+                    break;
+                case AFTER_ATTRIBUTE_NAME:
+                    if (c == '=') {
+                        state = BEFORE_ATTRIBUTE_VALUE;
+                    } else if (c == '>') {
+                        endTag();
+                    } else if (c == '/') {
+                        state = BEFORE_ATTRIBUTE_NAME;
+                    } else if (!isWhitespace(c)) {
+                        nameLength = 0;
+                        appendName(c);
+                        state = ATTRIBUTE_NAME;
+                    }
+                    break;
+                case BEFORE_ATTRIBUTE_VALUE:
+                    if (c == '"' || c == '\'') {
+                        quote = c;
+                        startValue();
+                        state = ATTRIBUTE_VALUE_QUOTED;
+                    } else if (c == '>') {
+                        endTag();
+                    } else if (!isWhitespace(c)) {
+                        startValue();
+                        appendValue(c);
+                        state = ATTRIBUTE_VALUE_UNQUOTED;
+                    }
+                    break;
+                case ATTRIBUTE_VALUE_QUOTED:
+                    if (c == quote) {
+                        endValue();
+                        state = BEFORE_ATTRIBUTE_NAME;
+                    } else {
+                        appendValue(c);
+                    }
+                    break;
+                case ATTRIBUTE_VALUE_UNQUOTED:
+                    if (isWhitespace(c)) {
+                        endValue();
+                        state = BEFORE_ATTRIBUTE_NAME;
+                    } else if (c == '>') {
+                        endValue();
+                        endTag();
+                    } else {
+                        appendValue(c);
+                    }
+                    break;
+                case MARKUP_DECLARATION:
+                    state = c == '-' ? COMMENT_START : c == '>' ? TEXT : BOGUS;
+                    break;
+                case COMMENT_START:
+                    dashes = 0;
+                    state = c == '-' ? COMMENT : c == '>' ? TEXT : BOGUS;
+                    break;
+                case COMMENT:
+                    if (c == '-') {
+                        dashes++;
+                    } else {
+                        if (c == '>' && dashes >= 2) {
+                            state = TEXT;
+                        }
+                        dashes = 0;
+                    }
+                    break;
+                case BOGUS:
+                    if (c == '>') {
+                        state = TEXT;
+                    }
+                    break;
+                case RAW_TEXT:
+                    if (c == '<') {
+                        state = RAW_TEXT_LESS_THAN;
+                    }
+                    break;
+                case RAW_TEXT_LESS_THAN:
+                    if (c == '/') {
+                        rawTextMatched = 0;
+                        state = RAW_TEXT_END_TAG_NAME;
+                    } else if (c != '<') {
+                        state = RAW_TEXT;
+                    }
+                    break;
+                case RAW_TEXT_END_TAG_NAME:
+                    if (rawTextMatched == rawTextTag.length()) {
+                        if (c == '>') {
+                            state = TEXT;
+                        } else if (isWhitespace(c) || c == '/') {
+                            state = BOGUS;
+                        } else {
+                            state = RAW_TEXT;
+                        }
+                    } else if (toLowerCase(c) == rawTextTag.charAt(rawTextMatched)) {
+                        rawTextMatched++;
+                    } else {
+                        state = c == '<' ? RAW_TEXT_LESS_THAN : RAW_TEXT;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown state " + state);
+            }
+        }
+    }
+
+    @Override
+    public void end() {
+        // An unterminated unquoted value at the very end of the page is still a value
+        if (state == ATTRIBUTE_VALUE_UNQUOTED) {
+            endValue();
+        }
+        state = TEXT;
+        handler = null;
+    }
+
+    private void startTag() {
+        tag = tagType();
+        hasLinkHref = false;
+        canonical = false;
+    }
+
+    private void endTag() {
+        if (tag == LINK_TAG && canonical && hasLinkHref) {
+            handler.canonical(linkHref);
+        }
+        if (tag == SCRIPT_TAG) {
+            rawTextTag = "script";
+            state = RAW_TEXT;
+        } else if (tag == STYLE_TAG) {
+            rawTextTag = "style";
+            state = RAW_TEXT;
+        } else {
+            state = TEXT;
+        }
+    }
+
+    private void startValue() {
+        capturing = (tag == A_TAG && nameIs("href"))
+                || (tag == IMG_TAG && nameIs("src"))
+                || (tag == BASE_TAG && nameIs("href"))
+                || (tag == LINK_TAG && (nameIs("href") || nameIs("rel")));
+        value.setLength(0);
+    }
+
+    private void appendValue(char c) {
+        if (capturing) {
+            if (value.length() < MAX_VALUE_LENGTH) {
+                value.append(c);
+            } else {
+                capturing = false;
+            }
+        }
+    }
+
+    private void endValue() {
+        if (capturing) {
+            capturing = false;
+            if (tag == A_TAG) {
+                handler.link(value);
+            } else if (tag == IMG_TAG) {
+                handler.image(value);
+            } else if (tag == BASE_TAG) {
+                handler.base(value);
+            } else if (nameIs("href")) {
+                linkHref.setLength(0);
+                linkHref.append(value);
+                hasLinkHref = true;
+            } else {
+                canonical = isCanonical(value);
+            }
+        }
+    }
+
+    private void appendName(char c) {
+        // Names that overflow the buffer can't match any we are looking for, mark them by keeping the length growing
+        if (nameLength < MAX_NAME_LENGTH) {
+            name[nameLength] = toLowerCase(c);
+        }
+        nameLength++;
+    }
+
+    private int tagType() {
+        if (nameIs("a")) {
+            return A_TAG;
+        } else if (nameIs("img")) {
+            return IMG_TAG;
+        } else if (nameIs("base")) {
+            return BASE_TAG;
+        } else if (nameIs("script")) {
+            return SCRIPT_TAG;
+        } else if (nameIs("style")) {
+            return STYLE_TAG;
+        } else if (nameIs("link")) {
+            return LINK_TAG;
+        }
+        return OTHER_TAG;
+    }
+
+    private boolean nameIs(String expected) {
+        if (nameLength != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < nameLength; i++) {
+            if (name[i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A rel is a space separated list of link types, matched case insensitively
+    private static boolean isCanonical(CharSequence rel) {
+        String expected = "canonical";
+        int start = 0;
+        for (int i = 0; i <= rel.length(); i++) {
+            if (i == rel.length() || isWhitespace(rel.charAt(i))) {
+                if (i - start == expected.length()) {
+                    boolean matches = true;
+                    for (int j = 0; j < expected.length() && matches; j++) {
+                        matches = toLowerCase(rel.charAt(start + j)) == expected.charAt(j);
+                    }
+                    if (matches) {
+                        return true;
+                    }
+                }
+                start = i + 1;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+    }
+
+    private static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
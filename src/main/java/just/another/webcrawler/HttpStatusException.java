@@ -0,0 +1,23 @@
+package just.another.webcrawler;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the UrlReader when the server responds with an error status, so that callers can tell a host that is
+ * overloaded from a page that is missing.
+ */
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    public HttpStatusException(int status, String url) {
+        super("Server returned HTTP response code: " + status + " for URL: " + url);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,80 @@
+package just.another.webcrawler;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes every crawled page as a JSON lines edge list, one object per link:
+ *
+ *   {"from":"http://site/page","to":"http://site/other","type":"link"}
+ *
+ * The type is link for an internal link, external for an external one and image for an image. A page's edges are
+ * written together, in one piece, but pages are written in the order they finish.
+ */
+public class JsonlSink implements CrawlSink {
+
+    private final ChannelWriter out;
+    private final Lock lock = new ReentrantLock();
+    private final StringBuilder line = new StringBuilder();
+
+    public JsonlSink(Path path) throws IOException {
+        out = new ChannelWriter(FileChannel.open(path, CREATE, TRUNCATE_EXISTING, WRITE));
+    }
+
+    @Override
+    public void page(String url, CrawlResult result) throws IOException {
+        lock.lock();
+        try {
+            edges(url, result.getInternalLinks(), "link");
+            edges(url, result.getExternalLinks(), "external");
+            edges(url, result.getImages(), "image");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            out.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void edges(String from, Set<String> to, String type) throws IOException {
+        for (String target : to) {
+            line.setLength(0);
+            line.append("{\"from\":");
+            quote(from, line);
+            line.append(",\"to\":");
+            quote(target, line);
+            line.append(",\"type\":\"").append(type).append("\"}\n");
+            out.text(line);
+        }
+    }
+
+    static void quote(String value, StringBuilder to) {
+        to.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                to.append('\\').append(c);
+            } else if (c < 0x20) {
+                to.append(String.format("\\u%04x", (int) c));
+            } else {
+                to.append(c);
+            }
+        }
+        to.append('"');
+    }
+}
@@ -0,0 +1,25 @@
+package just.another.webcrawler;
+
+/**
+ * Finds the anchors, images and base href of an HTML page.
+ *
+ * Content can either be passed in one go to extract or pushed incrementally, as it is read, between calls to begin and
+ * end. Implementations keep state between calls so a single instance should not be shared between threads.
+ */
+public interface LinkExtractor {
+
+    void begin(LinkHandler handler);
+
+    /**
+     * Pushes the next chunk of the page, the chunk is only valid for the duration of the call
+     */
+    void feed(CharSequence chunk);
+
+    void end();
+
+    default void extract(CharSequence content, LinkHandler handler) {
+        begin(handler);
+        feed(content);
+        end();
+    }
+}
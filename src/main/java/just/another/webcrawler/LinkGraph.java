@@ -0,0 +1,137 @@
+package just.another.webcrawler;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The site map as a graph in which every crawled page is one node, however many pages link to it.
+ *
+ * Nodes are numbered from 0, the root, in the order they are first reached. The internal links of every node are kept
+ * together in one int array of node ids with an offset per node, so building the graph is linear in the number of
+ * pages and links and nothing is ever hashed beyond the urls themselves. Cycles are kept, it is up to whoever walks the
+ * graph to only visit a node once.
+ */
+public class LinkGraph {
+
+    private final String[] urls;
+    private final CrawlResult[] results;
+    private final int[] linkOffsets;
+    private final int[] links;
+    private final Map<String, Integer> ids;
+
+    private LinkGraph(String[] urls, CrawlResult[] results, int[] linkOffsets, int[] links, Map<String, Integer> ids) {
+        this.urls = urls;
+        this.results = results;
+        this.linkOffsets = linkOffsets;
+        this.links = links;
+        this.ids = ids;
+    }
+
+    /**
+     * Builds the graph of every page reachable from the root through internal links. Pages without a result, because
+     * they failed or were never crawled, are left out along with the links to them.
+     */
+    public static LinkGraph build(String rootUrl, Function<String, CrawlResult> crawlResults) {
+        return build(rootUrl, crawlResults, Function.identity());
+    }
+
+    /**
+     * Builds the graph as above with every url, the root's included, first replaced by that of the page it is an alias
+     * of. A page linking to an alias of itself doesn't link to itself.
+     */
+    public static LinkGraph build(String rootUrl, Function<String, CrawlResult> crawlResults, Function<String, String> canonical) {
+        rootUrl = canonical.apply(rootUrl);
+        Map<String, Integer> ids = new HashMap<>();
+        String[] urls = new String[16];
+        CrawlResult[] results = new CrawlResult[16];
+        int[] linkOffsets = new int[17];
+        int[] links = new int[16];
+        int nodes = 0;
+        int nLinks = 0;
+
+        CrawlResult root = crawlResults.apply(rootUrl);
+        if (root != null) {
+            ids.put(rootUrl, 0);
+            urls[0] = rootUrl;
+            results[0] = root;
+            nodes = 1;
+        }
+        // Nodes are numbered in the order they are reached, so taking them in order is a breadth first walk
+        for (int node = 0; node < nodes; node++) {
+            linkOffsets[node] = nLinks;
+            for (String alias : results[node].getInternalLinks()) {
+                String link = canonical.apply(alias);
+                // Compared by reference, only a url that was replaced by another can have become the page's own
+                if (link != alias && link.equals(urls[node])) {
+                    continue;
+                }
+                Integer id = ids.get(link);
+                if (id == null) {
+                    CrawlResult result = crawlResults.apply(link);
+                    if (result == null) {
+                        continue;
+                    }
+                    if (nodes == urls.length) {
+                        urls = Arrays.copyOf(urls, nodes * 2);
+                        results = Arrays.copyOf(results, nodes * 2);
+                        linkOffsets = Arrays.copyOf(linkOffsets, nodes * 2 + 1);
+                    }
+                    id = nodes++;
+                    ids.put(link, id);
+                    urls[id] = link;
+                    results[id] = result;
+                }
+                if (nLinks == links.length) {
+                    links = Arrays.copyOf(links, nLinks * 2);
+                }
+                links[nLinks++] = id;
+            }
+        }
+        linkOffsets[nodes] = nLinks;
+        return new LinkGraph(Arrays.copyOf(urls, nodes), Arrays.copyOf(results, nodes), Arrays.copyOf(linkOffsets, nodes + 1),
+                Arrays.copyOf(links, nLinks), ids);
+    }
+
+    /**
+     * @return the number of pages in the graph, 0 if the root itself couldn't be crawled
+     */
+    public int size() {
+        return urls.length;
+    }
+
+    /**
+     * @return the id of the page or -1 if it isn't in the graph
+     */
+    public int id(String url) {
+        Integer id = ids.get(url);
+        return id != null ? id : -1;
+    }
+
+    public String url(int node) {
+        return urls[node];
+    }
+
+    public int linkCount(int node) {
+        return linkOffsets[node + 1] - linkOffsets[node];
+    }
+
+    /**
+     * @return the id of the index'th page the node links to
+     */
+    public int link(int node, int index) {
+        return links[linkOffsets[node] + index];
+    }
+
+    public Set<String> externalLinks(int node) {
+        return results[node].getExternalLinks();
+    }
+
+    public Set<String> images(int node) {
+        return results[node].getImages();
+    }
+}
@@ -0,0 +1,22 @@
+package just.another.webcrawler;
+
+/**
+ * Receives the raw (unresolved) urls found by a LinkExtractor in document order.
+ *
+ * The CharSequence passed to each method is only valid for the duration of the call, implementations must copy it if
+ * they want to keep it.
+ */
+public interface LinkHandler {
+
+    void link(CharSequence href);
+
+    void image(CharSequence src);
+
+    void base(CharSequence href);
+
+    /**
+     * The href of a link element with a rel of canonical, which only some extractors look for
+     */
+    default void canonical(CharSequence href) {
+    }
+}
@@ -0,0 +1,992 @@
+package just.another.webcrawler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Collections.emptyMap;
+
+/**
+ * A non blocking HTTP/1.1 client that multiplexes any number of in flight requests over a few selector threads.
+ *
+ * Every host is assigned to one selector thread so its pool of keep-alive connections is only ever touched by that
+ * thread and needs no locking. At most maxConnectionsPerHost connections are opened to a host, further requests to it
+ * wait for one of those to be released. Idle connections are closed after a while.
+ *
+ * The future returned by fetch completes as soon as the response headers have arrived. The body is then streamed to
+ * the caller through a bounded buffer and reading from the socket is paused while that buffer is full, so the memory
+ * used per request is fixed however large the response. Closing the body hands the connection back to the pool, or
+ * closes it if the body hadn't been received in full.
+ *
+ * A host can be warmed up ahead of its first request, its address is looked up in the background and a connection
+ * opened to it, so that the first request finds a connection waiting rather than paying for the lookup and the
+ * handshake.
+ *
+ * Only plain http is supported, host names are resolved through the DnsCache on the calling thread so that selector
+ * threads never block.
+ */
+public class NioFetchEngine implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(NioFetchEngine.class);
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int BODY_BUFFER_SIZE = 64 * 1024;
+    private static final long TICK_MILLIS = 500;
+    private static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final EventLoop[] loops;
+    private final int maxConnectionsPerHost;
+    private final long timeoutMillis;
+    private final long keepAliveMillis;
+    private final DnsCache dnsCache;
+    private final AtomicLong connectionsOpened = new AtomicLong();
+
+    public NioFetchEngine(int nSelectors, int maxConnectionsPerHost) throws IOException {
+        this(nSelectors, maxConnectionsPerHost, new DnsCache());
+    }
+
+    public NioFetchEngine(int nSelectors, int maxConnectionsPerHost, DnsCache dnsCache) throws IOException {
+        this(nSelectors, maxConnectionsPerHost, DEFAULT_TIMEOUT_MILLIS, dnsCache);
+    }
+
+    /**
+     * @param timeoutMillis how long to wait to connect to a host or for the next bytes of a response
+     */
+    public NioFetchEngine(int nSelectors, int maxConnectionsPerHost, long timeoutMillis, DnsCache dnsCache) throws IOException {
+        this(nSelectors, maxConnectionsPerHost, timeoutMillis, DEFAULT_KEEP_ALIVE_MILLIS, dnsCache);
+    }
+
+    NioFetchEngine(int nSelectors, int maxConnectionsPerHost, long timeoutMillis, long keepAliveMillis, DnsCache dnsCache) throws IOException {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.timeoutMillis = timeoutMillis;
+        this.keepAliveMillis = keepAliveMillis;
+        this.dnsCache = dnsCache;
+        loops = new EventLoop[nSelectors];
+        for (int i = 0; i < nSelectors; i++) {
+            loops[i] = new EventLoop(i);
+        }
+    }
+
+    /**
+     * Sends a GET for the (http) uri
+     *
+     * @return a future that completes with the response once its headers have been received
+     */
+    public CompletableFuture<FetchResponse> fetch(URI uri) {
+        return fetch(uri, emptyMap());
+    }
+
+    /**
+     * Sends a GET for the (http) uri with extra request headers, such as those of a conditional GET
+     */
+    public CompletableFuture<FetchResponse> fetch(URI uri, Map<String, String> requestHeaders) {
+        CompletableFuture<FetchResponse> future = new CompletableFuture<>();
+        try {
+            String host = uri.getHost();
+            if (host == null || !"http".equalsIgnoreCase(uri.getScheme())) {
+                throw new IOException("Unsupported url " + uri);
+            }
+            int port = uri.getPort() < 0 ? 80 : uri.getPort();
+            InetSocketAddress address = new InetSocketAddress(dnsCache.resolve(host), port);
+            Exchange exchange = new Exchange(hostKey(host, port), address, request(uri, host, port, requestHeaders), future);
+            EventLoop loop = loop(exchange.hostKey);
+            if (!loop.running) {
+                throw new IOException("Fetch engine closed");
+            }
+            loop.execute(() -> loop.pool(exchange.hostKey).submit(exchange));
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Looks the host of the (http) uri up in the background and then opens a connection to it, unless one is already
+     * open, for the next request to the host to use. Does nothing for other uris or if the host can't be resolved.
+     */
+    public void prewarm(URI uri) {
+        String host = uri.getHost();
+        if (host == null || !"http".equalsIgnoreCase(uri.getScheme())) {
+            return;
+        }
+        int port = uri.getPort() < 0 ? 80 : uri.getPort();
+        String hostKey = hostKey(host, port);
+        EventLoop loop = loop(hostKey);
+        dnsCache.prefetch(host).thenAccept(address ->
+                loop.execute(() -> loop.pool(hostKey).prewarm(new InetSocketAddress(address, port))));
+    }
+
+    /**
+     * @return the number of connections opened so far, which shows how well connections are being reused
+     */
+    public long connectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    @Override
+    public void close() {
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+    }
+
+    private EventLoop loop(String hostKey) {
+        return loops[(hostKey.hashCode() & Integer.MAX_VALUE) % loops.length];
+    }
+
+    private static String hostKey(String host, int port) {
+        return host.toLowerCase(Locale.ROOT) + ":" + port;
+    }
+
+    private static ByteBuffer request(URI uri, String host, int port, Map<String, String> requestHeaders) {
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        StringBuilder request = new StringBuilder()
+                .append("GET ").append(path).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(port == 80 ? host : host + ":" + port).append("\r\n")
+                .append("Accept: text/html,application/xhtml+xml,*/*;q=0.8\r\n")
+                .append("Connection: keep-alive\r\n");
+        if (!requestHeaders.containsKey("User-Agent")) {
+            request.append("User-Agent: ").append(RobotsCache.USER_AGENT).append("\r\n");
+        }
+        requestHeaders.forEach((name, value) -> request.append(name).append(": ").append(value).append("\r\n"));
+        request.append("\r\n");
+        return ByteBuffer.wrap(request.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * A single request and, once the headers are in, its response body
+     */
+    private static final class Exchange {
+
+        private final String hostKey;
+        private final InetSocketAddress address;
+        private final ByteBuffer request;
+        private final CompletableFuture<FetchResponse> future;
+        private Body body;
+        private boolean retried;
+
+        Exchange(String hostKey, InetSocketAddress address, ByteBuffer request, CompletableFuture<FetchResponse> future) {
+            this.hostKey = hostKey;
+            this.address = address;
+            this.request = request;
+            this.future = future;
+        }
+
+        void fail(IOException e) {
+            if (body == null) {
+                future.completeExceptionally(e);
+            } else {
+                body.fail(e);
+            }
+        }
+    }
+
+    /**
+     * A selector thread together with the connection pools of the hosts assigned to it. Everything other than execute
+     * must only be called from the loop's own thread.
+     */
+    private final class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final Map<String, HostPool> pools = new HashMap<>();
+        private final Set<Connection> connections = new HashSet<>();
+        private volatile boolean running = true;
+
+        EventLoop(int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "nio-fetch-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        HostPool pool(String hostKey) {
+            HostPool pool = pools.get(hostKey);
+            if (pool == null) {
+                pool = new HostPool(this);
+                pools.put(hostKey, pool);
+            }
+            return pool;
+        }
+
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long lastTick = System.currentTimeMillis();
+            try {
+                while (running) {
+                    selector.select(TICK_MILLIS);
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        ((Connection) key.attachment()).ready(key);
+                    }
+                    long now = System.currentTimeMillis();
+                    if (now - lastTick >= TICK_MILLIS) {
+                        lastTick = now;
+                        expire(now);
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                logger.error("Fetch selector failed", e);
+            } finally {
+                for (Connection connection : new ArrayList<>(connections)) {
+                    connection.fail(new IOException("Fetch engine closed"));
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                for (HostPool pool : pools.values()) {
+                    pool.failWaiting(new IOException("Fetch engine closed"));
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    logger.debug("Unable to close selector", e);
+                }
+            }
+        }
+
+        private void expire(long now) {
+            for (Connection connection : new ArrayList<>(connections)) {
+                connection.expire(now);
+            }
+        }
+    }
+
+    /**
+     * The connections open to a single host
+     */
+    private final class HostPool {
+
+        private final EventLoop loop;
+        private final ArrayDeque<Connection> idle = new ArrayDeque<>();
+        private final ArrayDeque<Exchange> waiting = new ArrayDeque<>();
+        private Connection warming;
+        private int open;
+
+        HostPool(EventLoop loop) {
+            this.loop = loop;
+        }
+
+        void submit(Exchange exchange) {
+            if (!loop.running) {
+                exchange.fail(new IOException("Fetch engine closed"));
+            } else if (!idle.isEmpty()) {
+                // Most recently used first, it is the least likely to have been closed by the server
+                idle.pollLast().start(exchange);
+            } else if (warming != null) {
+                // Sent as soon as the connection opened ahead of it is up
+                warming.begin(exchange);
+                warming = null;
+            } else if (open < maxConnectionsPerHost) {
+                connect(exchange);
+            } else {
+                waiting.add(exchange);
+            }
+        }
+
+        void release(Connection connection) {
+            Exchange next = waiting.poll();
+            if (next != null) {
+                connection.start(next);
+            } else {
+                idle.addLast(connection);
+            }
+        }
+
+        void prewarm(InetSocketAddress address) {
+            if (!loop.running || open > 0) {
+                return;
+            }
+            try {
+                Connection connection = connect(address);
+                if (connection.key.interestOps() == SelectionKey.OP_CONNECT) {
+                    warming = connection;
+                } else {
+                    idle.addLast(connection);
+                }
+            } catch (IOException e) {
+                logger.debug("Unable to open a connection to " + address + " ahead of time", e);
+            }
+        }
+
+        /**
+         * Called once a connection opened ahead of time is up without a request having been given to it
+         */
+        void warmed(Connection connection) {
+            warming = null;
+            release(connection);
+        }
+
+        void closed(Connection connection) {
+            if (warming == connection) {
+                warming = null;
+            }
+            open--;
+            idle.remove(connection);
+            Exchange next = waiting.poll();
+            if (next != null) {
+                submit(next);
+            }
+        }
+
+        void failWaiting(IOException e) {
+            Exchange exchange;
+            while ((exchange = waiting.poll()) != null) {
+                exchange.fail(e);
+            }
+        }
+
+        private void connect(Exchange exchange) {
+            try {
+                Connection connection = connect(exchange.address);
+                if (connection.key.interestOps() != SelectionKey.OP_CONNECT) {
+                    connection.key.interestOps(SelectionKey.OP_WRITE);
+                }
+                connection.begin(exchange);
+            } catch (IOException e) {
+                exchange.fail(e);
+            }
+        }
+
+        /**
+         * @return a connection that is either still connecting, waiting on OP_CONNECT, or already connected and
+         *         waiting on nothing
+         */
+        private Connection connect(InetSocketAddress address) throws IOException {
+            open++;
+            SocketChannel channel = null;
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                Connection connection = new Connection(loop, this, channel);
+                boolean connected = channel.connect(address);
+                connection.register(connected ? 0 : SelectionKey.OP_CONNECT);
+                connectionsOpened.incrementAndGet();
+                return connection;
+            } catch (IOException e) {
+                open--;
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * A single keep-alive connection and the parsing state of the response currently being read from it
+     */
+    private final class Connection {
+
+        private static final int WRITING = 0;
+        private static final int READING_HEADERS = 1;
+        private static final int READING_BODY = 2;
+        private static final int IDLE = 3;
+
+        private static final int FIXED_LENGTH = 0;
+        private static final int CHUNKED = 1;
+        private static final int UNTIL_CLOSE = 2;
+
+        private static final int CHUNK_SIZE = 0;
+        private static final int CHUNK_EXTENSION = 1;
+        private static final int CHUNK_DATA = 2;
+        private static final int CHUNK_DATA_END = 3;
+        private static final int TRAILER = 4;
+
+        private final EventLoop loop;
+        private final HostPool pool;
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private SelectionKey key;
+
+        private Exchange exchange;
+        private ByteBuffer out;
+        private int state = IDLE;
+        private boolean used;
+        private long lastActivity = System.currentTimeMillis();
+
+        private int framing;
+        private long remaining;
+        private int chunkState;
+        private int trailerLineLength;
+        private boolean keepAlive;
+        private boolean bodyReceived;
+        private boolean bodyClosed;
+        private boolean paused;
+        private boolean inputEnded;
+        private boolean closed;
+
+        Connection(EventLoop loop, HostPool pool, SocketChannel channel) {
+            this.loop = loop;
+            this.pool = pool;
+            this.channel = channel;
+        }
+
+        void register(int ops) throws IOException {
+            key = channel.register(loop.selector, ops, this);
+            loop.connections.add(this);
+        }
+
+        /**
+         * Sets up a new exchange on a connection that is still connecting
+         */
+        void begin(Exchange exchange) {
+            this.exchange = exchange;
+            out = exchange.request.duplicate();
+            in.clear();
+            state = WRITING;
+            bodyReceived = false;
+            bodyClosed = false;
+            paused = false;
+            inputEnded = false;
+            lastActivity = System.currentTimeMillis();
+        }
+
+        void start(Exchange exchange) {
+            begin(exchange);
+            used = true;
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+
+        void ready(SelectionKey key) {
+            try {
+                if (key.isConnectable()) {
+                    channel.finishConnect();
+                    if (exchange != null) {
+                        key.interestOps(SelectionKey.OP_WRITE);
+                    } else {
+                        key.interestOps(0);
+                        lastActivity = System.currentTimeMillis();
+                        pool.warmed(this);
+                    }
+                } else if (key.isWritable()) {
+                    write();
+                } else if (key.isReadable()) {
+                    read();
+                }
+            } catch (IOException e) {
+                if (canRetry()) {
+                    retry();
+                } else {
+                    fail(e);
+                }
+            } catch (RuntimeException e) {
+                fail(new IOException("Unable to process response", e));
+            }
+        }
+
+        /**
+         * A pooled connection may have been closed by the server while idle, in which case the request fails before
+         * anything comes back and can safely be sent again on a fresh connection
+         */
+        private boolean canRetry() {
+            return used && exchange != null && !exchange.retried && exchange.body == null && in.position() == 0;
+        }
+
+        private void retry() {
+            Exchange retry = exchange;
+            retry.retried = true;
+            exchange = null;
+            close();
+            pool.submit(retry);
+        }
+
+        private void write() throws IOException {
+            channel.write(out);
+            lastActivity = System.currentTimeMillis();
+            if (!out.hasRemaining()) {
+                state = READING_HEADERS;
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        private void read() throws IOException {
+            int n = channel.read(in);
+            if (n < 0) {
+                endOfStream();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            process();
+            settle();
+        }
+
+        private void endOfStream() throws IOException {
+            if (canRetry()) {
+                retry();
+            } else if (state == READING_BODY && framing == UNTIL_CLOSE) {
+                inputEnded = true;
+                keepAlive = false;
+                process();
+                if (!paused) {
+                    receivedBody();
+                }
+                settle();
+            } else {
+                throw new EOFException("Connection closed before the response was complete");
+            }
+        }
+
+        /**
+         * Decides what to wait for next once the bytes read so far have been processed
+         */
+        private void settle() {
+            if (bodyReceived) {
+                if (bodyClosed) {
+                    recycle();
+                } else {
+                    key.interestOps(0);
+                }
+            } else if (state == READING_BODY) {
+                key.interestOps(paused || inputEnded ? 0 : SelectionKey.OP_READ);
+            }
+        }
+
+        private void process() throws IOException {
+            if (state == READING_HEADERS) {
+                readHeaders();
+            }
+            if (state == READING_BODY && !paused) {
+                readBody();
+            }
+        }
+
+        private void readHeaders() throws IOException {
+            int end = headersEnd();
+            while (end >= 0) {
+                String head = new String(in.array(), 0, end, StandardCharsets.ISO_8859_1);
+                in.flip();
+                in.position(end + 4);
+                in.compact();
+                if (parseHeaders(head)) {
+                    return;
+                }
+                end = headersEnd();
+            }
+            if (!in.hasRemaining()) {
+                throw new IOException("Response headers too large");
+            }
+        }
+
+        private int headersEnd() {
+            byte[] bytes = in.array();
+            for (int i = 3; i < in.position(); i++) {
+                if (bytes[i] == '\n' && bytes[i - 1] == '\r' && bytes[i - 2] == '\n' && bytes[i - 3] == '\r') {
+                    return i - 3;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return true if these were the final headers, false if they were an interim (1xx) response
+         */
+        private boolean parseHeaders(String head) throws IOException {
+            String[] lines = head.split("\r\n");
+            String[] statusLine = lines[0].split(" ", 3);
+            if (statusLine.length < 2 || !statusLine[0].startsWith("HTTP/")) {
+                throw new IOException("Malformed status line " + lines[0]);
+            }
+            int status = Integer.parseInt(statusLine[1]);
+            if (status >= 100 && status < 200) {
+                return false;
+            }
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) {
+                    String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                    String value = lines[i].substring(colon + 1).trim();
+                    headers.merge(name, value, (a, b) -> a + ", " + b);
+                }
+            }
+
+            String connection = headers.getOrDefault("connection", "").toLowerCase(Locale.ROOT);
+            keepAlive = statusLine[0].equals("HTTP/1.0") ? connection.contains("keep-alive") : !connection.contains("close");
+            String transferEncoding = headers.get("transfer-encoding");
+            String contentLength = headers.get("content-length");
+            if (status == 204 || status == 304) {
+                framing = FIXED_LENGTH;
+                remaining = 0;
+            } else if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).contains("chunked")) {
+                framing = CHUNKED;
+                chunkState = CHUNK_SIZE;
+                remaining = 0;
+            } else if (contentLength != null) {
+                framing = FIXED_LENGTH;
+                remaining = Long.parseLong(contentLength);
+            } else {
+                framing = UNTIL_CLOSE;
+                keepAlive = false;
+            }
+
+            state = READING_BODY;
+            exchange.body = new Body(this);
+            exchange.future.complete(new FetchResponse(status, headers, exchange.body));
+            if (framing == FIXED_LENGTH && remaining == 0) {
+                receivedBody();
+            }
+            return true;
+        }
+
+        private void readBody() throws IOException {
+            in.flip();
+            try {
+                while (state == READING_BODY && !paused && in.hasRemaining()) {
+                    if (framing == CHUNKED) {
+                        readChunked();
+                    } else {
+                        int length = framing == FIXED_LENGTH ? (int) Math.min(remaining, in.remaining()) : in.remaining();
+                        int taken = transfer(length);
+                        remaining -= taken;
+                        if (framing == FIXED_LENGTH && remaining == 0) {
+                            receivedBody();
+                        }
+                    }
+                }
+            } finally {
+                in.compact();
+            }
+        }
+
+        private void readChunked() throws IOException {
+            if (chunkState == CHUNK_DATA) {
+                int taken = transfer((int) Math.min(remaining, in.remaining()));
+                remaining -= taken;
+                if (remaining == 0) {
+                    chunkState = CHUNK_DATA_END;
+                }
+                return;
+            }
+            byte b = in.get();
+            switch (chunkState) {
+                case CHUNK_SIZE:
+                    if (b == '\n') {
+                        chunkState = remaining == 0 ? TRAILER : CHUNK_DATA;
+                        trailerLineLength = 0;
+                    } else if (b == ';') {
+                        chunkState = CHUNK_EXTENSION;
+                    } else if (b != '\r' && b != ' ') {
+                        remaining = remaining * 16 + hexValue(b);
+                    }
+                    break;
+                case CHUNK_EXTENSION:
+                    if (b == '\n') {
+                        chunkState = remaining == 0 ? TRAILER : CHUNK_DATA;
+                        trailerLineLength = 0;
+                    }
+                    break;
+                case CHUNK_DATA_END:
+                    if (b == '\n') {
+                        chunkState = CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILER:
+                    if (b == '\n') {
+                        if (trailerLineLength == 0) {
+                            receivedBody();
+                        }
+                        trailerLineLength = 0;
+                    } else if (b != '\r') {
+                        trailerLineLength++;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown chunk state " + chunkState);
+            }
+        }
+
+        private int hexValue(byte b) throws IOException {
+            int value = Character.digit(b, 16);
+            if (value < 0) {
+                throw new IOException("Malformed chunk size");
+            }
+            return value;
+        }
+
+        /**
+         * Moves up to length bytes from the read buffer into the body, pausing reads if the body buffer is full
+         */
+        private int transfer(int length) {
+            int taken = exchange.body.offer(in, length);
+            if (taken < length) {
+                paused = true;
+            }
+            return taken;
+        }
+
+        /**
+         * Called by the body, on this loop, once the consumer has made room
+         */
+        void resume() {
+            if (paused && !closed) {
+                paused = false;
+                lastActivity = System.currentTimeMillis();
+                try {
+                    readBody();
+                    if (!paused && inputEnded && state == READING_BODY) {
+                        receivedBody();
+                    }
+                    settle();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        private void receivedBody() {
+            state = IDLE;
+            bodyReceived = true;
+            exchange.body.finish();
+        }
+
+        /**
+         * Called by the body, on this loop, once the consumer has closed it
+         */
+        void bodyClosed() {
+            if (closed) {
+                return;
+            }
+            bodyClosed = true;
+            if (bodyReceived) {
+                recycle();
+            } else {
+                // We'd have to read the rest of the body to reuse the connection, it is cheaper to open a new one
+                exchange = null;
+                close();
+            }
+        }
+
+        private void recycle() {
+            exchange = null;
+            if (keepAlive && in.position() == 0 && !closed) {
+                lastActivity = System.currentTimeMillis();
+                pool.release(this);
+            } else {
+                close();
+            }
+        }
+
+        void expire(long now) {
+            if (exchange == null && state == IDLE && now - lastActivity > keepAliveMillis) {
+                close();
+            } else if (exchange != null && !paused && !bodyReceived && now - lastActivity > timeoutMillis) {
+                fail(new SocketTimeoutException("Timed out fetching from " + exchange.address));
+            }
+        }
+
+        void fail(IOException e) {
+            if (exchange != null) {
+                Exchange failed = exchange;
+                exchange = null;
+                failed.fail(e);
+            }
+            close();
+        }
+
+        private void close() {
+            if (!closed) {
+                closed = true;
+                state = IDLE;
+                loop.connections.remove(this);
+                if (key != null) {
+                    key.cancel();
+                }
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.debug("Unable to close connection", e);
+                }
+                pool.closed(this);
+            }
+        }
+    }
+
+    /**
+     * The streamed body of a response. Bytes are written into a fixed size ring buffer by the selector thread and read
+     * out of it by the caller, when the buffer fills up the connection stops reading until the caller catches up.
+     *
+     * Readers wait on a Lock rather than a monitor so that a virtual thread blocked on a body doesn't pin its carrier.
+     */
+    private static final class Body extends InputStream {
+
+        private final Connection connection;
+        private final byte[] ring = new byte[BODY_BUFFER_SIZE];
+        private final Lock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private int head;
+        private int size;
+        private boolean finished;
+        private boolean closed;
+        private boolean producerWaiting;
+        private IOException failure;
+
+        Body(Connection connection) {
+            this.connection = connection;
+        }
+
+        int offer(ByteBuffer source, int length) {
+            lock.lock();
+            try {
+                int taken = 0;
+                while (taken < length && size < ring.length) {
+                    int tail = (head + size) % ring.length;
+                    int n = Math.min(length - taken, Math.min(ring.length - size, ring.length - tail));
+                    source.get(ring, tail, n);
+                    size += n;
+                    taken += n;
+                }
+                producerWaiting = taken < length;
+                changed.signalAll();
+                return taken;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void finish() {
+            lock.lock();
+            try {
+                finished = true;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void fail(IOException e) {
+            lock.lock();
+            try {
+                failure = e;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int n;
+            boolean resume = false;
+            lock.lock();
+            try {
+                while (size == 0 && !finished && failure == null && !closed) {
+                    changed.await();
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+                if (size == 0) {
+                    return -1;
+                }
+                n = Math.min(length, Math.min(size, ring.length - head));
+                System.arraycopy(ring, head, buffer, offset, n);
+                head = (head + n) % ring.length;
+                size -= n;
+                if (producerWaiting && size <= ring.length / 2) {
+                    producerWaiting = false;
+                    resume = true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted reading response body");
+            } finally {
+                lock.unlock();
+            }
+            if (resume) {
+                connection.loop.execute(connection::resume);
+            }
+            return n;
+        }
+
+        @Override
+        public int available() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            connection.loop.execute(connection::bodyClosed);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package just.another.webcrawler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A UrlReader that fetches over the NioFetchEngine rather than a URLConnection so that waiting on the network doesn't
+ * tie up a thread per request and connections to each host are explicitly kept alive and reused.
+ *
+ * The engine only speaks plain http, https urls are still read through a URLConnection.
+ */
+public class NioUrlReader extends UrlReader {
+
+    private static final int MAX_REDIRECTS = 5;
+
+    private final NioFetchEngine engine;
+
+    public NioUrlReader(int maxBodySize, NioFetchEngine engine) {
+        this(maxBodySize, engine, new CrawlMetrics());
+    }
+
+    public NioUrlReader(int maxBodySize, NioFetchEngine engine, CrawlMetrics metrics) {
+        super(maxBodySize, metrics);
+        this.engine = engine;
+    }
+
+    /**
+     * @param timeoutMillis the timeout of https urls, which are read through a URLConnection, the engine has its own
+     */
+    public NioUrlReader(int maxBodySize, long timeoutMillis, NioFetchEngine engine, CrawlMetrics metrics) {
+        super(maxBodySize, timeoutMillis, metrics);
+        this.engine = engine;
+    }
+
+    @Override
+    protected FetchResponse open(String url, Map<String, String> requestHeaders) throws IOException {
+        URI uri = toUri(url);
+        for (int redirects = 0; redirects <= MAX_REDIRECTS; redirects++) {
+            if (!"http".equalsIgnoreCase(uri.getScheme())) {
+                return super.open(uri.toString(), requestHeaders);
+            }
+            FetchResponse response = await(engine.fetch(uri, requestHeaders));
+            int status = response.getStatus();
+            String location = response.getHeader("Location");
+            if (status >= 300 && status < 400 && location != null) {
+                response.getBody().close();
+                uri = uri.resolve(toUri(location));
+            } else if (status >= 400) {
+                response.getBody().close();
+                throw new HttpStatusException(status, url);
+            } else {
+                return response.withUrl(uri.toString());
+            }
+        }
+        throw new IOException("Too many redirects for URL: " + url);
+    }
+
+    private static URI toUri(String url) throws IOException {
+        try {
+            return new URI(url);
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid url " + url, e);
+        }
+    }
+
+    private static FetchResponse await(Future<FetchResponse> response) throws IOException {
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for response");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to fetch", e.getCause());
+        }
+    }
+}
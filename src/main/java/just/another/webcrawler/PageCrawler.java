@@ -4,54 +4,140 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class PageCrawler implements Runnable {
 
     private static final Logger logger = LoggerFactory.getLogger(PageCrawler.class);
 
-    private static final Pattern LINK_PATTERN = Pattern.compile("(?i)<a\\s+[^>]*?href\\s*=\\s*((\"[^\"]*\")|('[^']*'))");
-    private static final Pattern IMG_PATTERN = Pattern.compile("(?i)<img\\s+[^>]*?src\\s*=\\s*((\"[^\"]*\")|('[^']*'))");
-
-    private final String baseUrl;
+    private final String internalPrefix;
     private final PageProcessor pageProcessor;
     private final UrlReader urlReader;
+    private final TimedLinkExtractor linkExtractor;
+    private final CrawlMetrics metrics;
+    private final SimHash simHash = new SimHash();
+    // What crawlPage found of the page it read last, besides its links
+    private String canonicalUrl;
+    private long pageSimHash;
 
     public PageCrawler(String baseUrl, PageProcessor pageProcessor, UrlReader urlReader) {
-        this.baseUrl = baseUrl;
+        this(baseUrl, pageProcessor, urlReader, new CrawlMetrics());
+    }
+
+    public PageCrawler(String baseUrl, PageProcessor pageProcessor, UrlReader urlReader, CrawlMetrics metrics) {
+        this(baseUrl, pageProcessor, urlReader, new HtmlLinkExtractor(), metrics);
+    }
+
+    public PageCrawler(String baseUrl, PageProcessor pageProcessor, UrlReader urlReader, LinkExtractor linkExtractor) {
+        this(baseUrl, pageProcessor, urlReader, linkExtractor, new CrawlMetrics());
+    }
+
+    public PageCrawler(String baseUrl, PageProcessor pageProcessor, UrlReader urlReader, LinkExtractor linkExtractor, CrawlMetrics metrics) {
+        this.internalPrefix = UrlResolver.normalize(baseUrl);
         this.pageProcessor = pageProcessor;
         this.urlReader = urlReader;
+        this.linkExtractor = new TimedLinkExtractor(linkExtractor, simHash);
+        this.metrics = metrics;
     }
 
     public void run() {
-        String url = null;
         while (true) {
-            try {
-                url = pageProcessor.getNextPage();
-                if (url.equals(PageProcessor.COMPLETE)) {
-                    break;
-                } else {
-                    pageProcessor.submitResult(url, crawlPage(url));
-                }
-            } catch (Exception e) {
-                logger.info("Unable to process url " + url);
-                pageProcessor.submitError();
+            String url = pageProcessor.getNextPage();
+            if (url == null) {
+                break;
             }
+            crawl(url);
         }
     }
 
-    private CrawlResult crawlPage(String url) throws IOException {
+    /**
+     * Crawls a single page and submits the result, or error, to the PageProcessor
+     */
+    public void crawl(String url) {
+        try {
+            CrawlResult result = crawlPage(url);
+            pageProcessor.submitResult(url, result, canonicalUrl, pageSimHash);
+        } catch (UnsupportedContentException e) {
+            logger.info(e.getMessage());
+            pageProcessor.submitSkipped(url);
+        } catch (Exception e) {
+            logger.info("Unable to process url " + url);
+            pageProcessor.submitError(url, isOverload(e));
+        }
+    }
+
+    // Too Many Requests, Service Unavailable and timeouts are how a host says it can't keep up
+    private static boolean isOverload(Exception e) {
+        if (e instanceof HttpStatusException) {
+            int status = ((HttpStatusException) e).getStatus();
+            return status == 429 || status == HttpURLConnection.HTTP_UNAVAILABLE;
+        }
+        return e instanceof SocketTimeoutException;
+    }
+
+    // Package private for benchmarking
+    CrawlResult crawlPage(String url) throws IOException {
         logger.info("Crawling " + url);
-        String content = urlReader.read(url);
-        Set<String> internalLinks = new HashSet<>();
-        Set<String> externalLinks = new HashSet<>();
-        Matcher linkMatcher = LINK_PATTERN.matcher(content);
-        while (linkMatcher.find()) {
-            String link = sanitizeUrl(url, linkMatcher.group(1));
-            if (link != null && link.length() > 0 && !link.equals(url)) {
+        CrawlResult previous = pageProcessor.takePreviousResult(url);
+        PageVersion previousVersion = previous != null ? previous.getVersion() : null;
+        PageLinks pageLinks = new PageLinks(url);
+        long start = System.nanoTime();
+        linkExtractor.begin(pageLinks);
+        PageVersion version = urlReader.read(url, previousVersion, linkExtractor, pageLinks::responseUrl);
+        linkExtractor.end();
+        canonicalUrl = pageLinks.canonicalUrl;
+        pageSimHash = simHash.value();
+        // Pages are parsed as they are read, whatever time wasn't spent in the extractor was spent fetching
+        long parseNanos = linkExtractor.nanos;
+        metrics.record(CrawlMetrics.Stage.FETCH, System.nanoTime() - start - parseNanos);
+        metrics.record(CrawlMetrics.Stage.PARSE, parseNanos);
+        if (previousVersion != null && version.getContentHash() == previousVersion.getContentHash()) {
+            logger.info("Unchanged " + url);
+            return previous.withVersion(version);
+        }
+        return pageLinks.toCrawlResult(version);
+    }
+
+    // Resolved links are always absolute, a link is internal if it is the base url or below it
+    private boolean isInternal(String link) {
+        return link.startsWith(internalPrefix)
+                && (link.length() == internalPrefix.length() || link.charAt(internalPrefix.length()) == '/');
+    }
+
+    /**
+     * Gathers the links of a single page as the extractor finds them
+     */
+    private class PageLinks implements LinkHandler {
+
+        private final String url;
+        private final Set<String> internalLinks = new HashSet<>();
+        private final Set<String> externalLinks = new HashSet<>();
+        private final Set<String> images = new HashSet<>();
+        private UrlResolver resolver;
+        private boolean baseFound;
+        private String canonicalUrl;
+
+        PageLinks(String url) {
+            this.url = url;
+            this.resolver = new UrlResolver(url);
+        }
+
+        // The url the page was crawled under is normalized, without the trailing slash of a directory, and from before
+        // any redirects, links are resolved against the url the page actually came from
+        void responseUrl(String responseUrl) {
+            if (!responseUrl.equals(url)) {
+                resolver = new UrlResolver(responseUrl);
+            }
+        }
+
+        @Override
+        public void link(CharSequence href) {
+            String link = resolver.resolve(href);
+            // mailto:, javascript: and the like aren't links to pages
+            if (link != null && link.length() > 0 && !link.equals(url) && (link.startsWith("http://") || link.startsWith("https://"))) {
                 if (isInternal(link)) {
                     internalLinks.add(link);
                 } else {
@@ -60,55 +146,71 @@ public class PageCrawler implements Runnable {
             }
         }
 
-        Set<String> images = getImages(url, content);
+        @Override
+        public void image(CharSequence src) {
+            images.add(resolver.resolve(src));
+        }
 
-        return new CrawlResult(internalLinks, externalLinks, images);
-    }
+        @Override
+        public void base(CharSequence href) {
+            // Only the first base element counts
+            if (!baseFound) {
+                baseFound = true;
+                resolver = resolver.resolveBase(href);
+            }
+        }
 
-    private Set<String> getImages(String url, String content) {
-        Set<String> images = new HashSet<>();
-        Matcher imageMatcher = IMG_PATTERN.matcher(content);
-        while (imageMatcher.find()) {
-            images.add(sanitizeUrl(url, imageMatcher.group(1)));
+        @Override
+        public void canonical(CharSequence href) {
+            // Only the first canonical link counts, and only if it is internal
+            if (canonicalUrl == null) {
+                String link = resolver.resolve(href);
+                if (link != null && isInternal(link)) {
+                    canonicalUrl = link;
+                }
+            }
         }
-        return images;
-    }
 
-    private String sanitizeUrl(String parentUrl, String link) {
-        String sanitized = link.trim().replaceAll("\"|\'", "");
-        sanitized = removeQueryStringOrAnchor(sanitized);
-        sanitized = removeTrailingSlash(sanitized);
-        if (isRelativeUrl(sanitized)) {
-            sanitized = getAbsoluteUrl(parentUrl, sanitized);
+        CrawlResult toCrawlResult(PageVersion version) {
+            return new CrawlResult(internalLinks, externalLinks, images, version);
         }
-        return sanitized;
     }
 
-    private String removeTrailingSlash(String sanitized) {
-        return sanitized.endsWith("/") ? sanitized.substring(0, sanitized.length() - 1) : sanitized;
-    }
+    /**
+     * Adds up the time spent in the extractor over a page, which includes handling the links it finds, and feeds the
+     * same chunks to the SimHash of the page
+     */
+    private static class TimedLinkExtractor implements LinkExtractor {
+
+        private final LinkExtractor delegate;
+        private final SimHash simHash;
+        private long nanos;
 
-    private String getAbsoluteUrl(String parentUrl, String url) {
-        if (url.startsWith("/")) {
-            url = baseUrl + url;
-        } else if (parentUrl.equals(baseUrl)) {
-            url = baseUrl + "/" + url;
-        } else {
-            String parentBase = parentUrl.substring(0, parentUrl.lastIndexOf('/') + 1);
-            url = parentBase + url;
+        TimedLinkExtractor(LinkExtractor delegate, SimHash simHash) {
+            this.delegate = delegate;
+            this.simHash = simHash;
         }
-        return url;
-    }
 
-    private String removeQueryStringOrAnchor(String url) {
-        return url.replaceAll("(\\?|#).*", "");
-    }
+        @Override
+        public void begin(LinkHandler handler) {
+            nanos = 0;
+            simHash.reset();
+            delegate.begin(handler);
+        }
 
-    private boolean isRelativeUrl(String link) {
-        return !link.toLowerCase().startsWith("http://") && !link.toLowerCase().startsWith("https://");
-    }
+        @Override
+        public void feed(CharSequence chunk) {
+            long start = System.nanoTime();
+            delegate.feed(chunk);
+            simHash.feed(chunk);
+            nanos += System.nanoTime() - start;
+        }
 
-    private boolean isInternal(String link) {
-        return isRelativeUrl(link) || link.indexOf(baseUrl) == 0;
+        @Override
+        public void end() {
+            long start = System.nanoTime();
+            delegate.end();
+            nanos += System.nanoTime() - start;
+        }
     }
 }
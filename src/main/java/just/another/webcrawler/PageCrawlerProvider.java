@@ -5,7 +5,20 @@ package just.another.webcrawler;
  */
 public class PageCrawlerProvider {
 
+    private final CrawlMetrics metrics;
+
+    public PageCrawlerProvider() {
+        this(new CrawlMetrics());
+    }
+
+    /**
+     * @param metrics shared by every PageCrawler provided
+     */
+    public PageCrawlerProvider(CrawlMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public PageCrawler newPageCrawler(String baseUrl, PageProcessor pageProcessor, UrlReader urlReader) {
-        return new PageCrawler(baseUrl, pageProcessor, urlReader);
+        return new PageCrawler(baseUrl, pageProcessor, urlReader, metrics);
     }
 }
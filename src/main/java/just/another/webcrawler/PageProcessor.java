@@ -1,93 +1,567 @@
 package just.another.webcrawler;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import static java.util.stream.Collectors.toSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Uses a BlockingQueue to act as a producer of pages that can be crawled concurrently.
+ * Uses a Frontier to act as a producer of pages that can be crawled concurrently, a UrlSeenSet makes sure each page is
+ * only queued once. The links of each result are checked against the seen set and queued as one batch.
+ *
+ * All CrawlResults are gathered in a ResultStore from which the site map can be constructed. Given a CrawlJournal every
+ * result and error is also logged, and a crawl that was cut short is picked up from the journal rather than the base
+ * url.
+ *
+ * Every result is also handed to the CrawlSinks, if any, as soon as it is submitted.
+ *
+ * Links to urls that ContentTypes says aren't pages, such as pdfs and images, are never queued. Given a RobotsCache a
+ * link is only queued if the robots.txt of its host allows it, the base url is always crawled as it was asked for. The
+ * urls listed by the sitemaps of the site's robots.txt can also be queued up front, one link deep.
  *
- * All CrawlResults are gathered in a Map from which the site map can be constructed.
+ * Given a DuplicateIndex, a page that names another as canonical, or has the same content as a page already crawled,
+ * becomes an alias of that page rather than a page of its own.
+ *
+ * The results of a previous crawl can be given so that pages are only read again if they have changed.
+ *
+ * Given a maximum depth, or a frontier that orders urls by depth, the depth of every queued url, the number of links
+ * followed from the base url to find it, is kept until it is crawled. Otherwise none are, a queued url costs no more
+ * than its fingerprint in the seen set and every link is queued at depth 1. A crawl can be given budgets: links deeper than the maximum depth aren't followed, and once the maximum
+ * number of pages have been taken or the time is up no more are handed out and the frontier is closed.
+ *
+ * Results, errors and the time taken to submit and enqueue them are recorded in the CrawlMetrics, which also reads the
+ * frontier depth and number of unprocessed pages from here.
  */
 public class PageProcessor {
 
-    // Used as a poisoned pill to instruct consumers of the queue that they can shut down
-    public static final String COMPLETE = "::COMPLETE::";
-
     private final String baseUrl;
-    private final Map<String, CrawlResult> results = new ConcurrentHashMap<>();
-    private final BlockingQueue<String> pageQueue = new LinkedBlockingQueue<>();
-    private final AtomicInteger unprocessedPages = new AtomicInteger();
-    private final int nConsumers;
+    private final ResultStore results;
+    private final Frontier frontier;
+    private final UrlSeenSet seenUrls;
+    private final CrawlJournal journal;
+    private final Map<String, CrawlResult> previousResults;
+    private final CrawlMetrics metrics;
+    private final List<CrawlSink> sinks;
+    private final RobotsCache robots;
+    private final DuplicateIndex duplicates;
+    private final Map<String, String> aliases = new ConcurrentHashMap<>();
+    // The results of aliases, by the url they are an alias of, for as long as that url has no result of its own
+    private final Map<String, Map<String, CrawlResult>> aliasResults = new ConcurrentHashMap<>();
+    private final Map<String, Integer> depths = new ConcurrentHashMap<>();
+    private final int maxDepth;
+    private final boolean trackDepths;
+    private final long maxPages;
+    private final long deadlineNanos;
+    private final AtomicLong pagesTaken = new AtomicLong();
+    private volatile boolean stopped;
 
-    public PageProcessor(String baseUrl, int nConsumers) {
-        this.baseUrl = baseUrl;
-        this.nConsumers = nConsumers;
-        addLinkToQueue(baseUrl);
+    public PageProcessor(String baseUrl) {
+        this(newBuilder(baseUrl));
     }
 
+    private PageProcessor(Builder builder) {
+        baseUrl = builder.baseUrl;
+        results = builder.results;
+        frontier = builder.frontier;
+        seenUrls = builder.seenUrls;
+        journal = builder.journal;
+        previousResults = builder.previousResults;
+        metrics = builder.metrics;
+        sinks = builder.sinks;
+        robots = builder.robots;
+        duplicates = builder.duplicates;
+        maxDepth = builder.maxDepth;
+        trackDepths = maxDepth != Integer.MAX_VALUE || frontier.usesDepth();
+        maxPages = builder.maxPages;
+        deadlineNanos = builder.maxMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(builder.maxMillis) : 0;
+        metrics.gauges(frontier::size, frontier::pending);
+        // Read again on resume too, the seen set leaves out those that were already queued
+        Set<String> sitemapUrls = builder.seedFromSitemaps && robots != null ? sitemapUrls() : Collections.emptySet();
+        if (journal != null) {
+            resume(sitemapUrls);
+        }
+        if (seenUrls.add(baseUrl)) {
+            if (trackDepths) {
+                depths.put(baseUrl, 0);
+            }
+            frontier.add(baseUrl, 0);
+        }
+        addLinksToQueue(sitemapUrls, 1);
+    }
+
+    /**
+     * Blocks until there is a page to crawl
+     *
+     * @return the url of the page or null once the crawl is over, or a budget is spent, at which point consumers can
+     * shut down
+     */
     public String getNextPage() {
+        if (stopped) {
+            return null;
+        }
+        String url;
         try {
-            return pageQueue.take();
+            url = frontier.take();
         } catch (InterruptedException e) {
             throw new RuntimeException("Unable to get next page from process queue", e);
         }
+        return url != null && withinBudget() ? url : null;
+    }
+
+    /**
+     * Hands out the result of the url from the previous crawl, each is only handed out once so that the previous crawl
+     * is let go of as this one progresses
+     *
+     * @return the previous result or null if there is none
+     */
+    public CrawlResult takePreviousResult(String url) {
+        return previousResults.remove(url);
     }
 
     public void submitResult(String url, CrawlResult result) {
+        long start = System.nanoTime();
+        if (journal != null) {
+            try {
+                journal.completed(url, result);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to journal the result of " + url, e);
+            }
+        }
         results.put(url, result);
-        result.getInternalLinks().forEach(this::addLinkToQueue);
-        pageComplete();
+        aliasResults.remove(url);
+        write(url, result);
+        long enqueueStart = System.nanoTime();
+        Integer depth = depths.remove(url);
+        if (!stopped) {
+            addLinksToQueue(result.getInternalLinks(), depth != null ? depth + 1 : 1);
+        }
+        long end = System.nanoTime();
+        metrics.record(CrawlMetrics.Stage.ENQUEUE, end - enqueueStart);
+        metrics.record(CrawlMetrics.Stage.SUBMIT, end - start);
+        metrics.pageCrawled();
+        frontier.done(url);
+    }
+
+    /**
+     * Submits the result of a page unless it is an alias of another page, because it names another as canonical or is a
+     * duplicate of a page already crawled. The links of an alias aren't followed, its canonical url is queued instead,
+     * and links to it become links to the canonical page in the site map. Until the canonical page has a result the
+     * alias's own is kept, so that the alias stays in the site map as a page if the canonical page fails or is never
+     * crawled, and if it fails, or can't be crawled, the alias's links are followed in its place. Only with a
+     * DuplicateIndex.
+     *
+     * @param canonicalUrl the canonical url the page names, or null
+     * @param simHash the SimHash of the page, or SimHash.NONE
+     */
+    public void submitResult(String url, CrawlResult result, String canonicalUrl, long simHash) {
+        String original = duplicates != null ? originalOf(url, result, canonicalUrl, simHash) : null;
+        if (original == null) {
+            submitResult(url, result);
+            return;
+        }
+        aliases.put(url, original);
+        if (!results.contains(original)) {
+            aliasResults.computeIfAbsent(original, key -> new ConcurrentHashMap<>()).put(url, result);
+            // Either this sees the result of the original or the original, submitted after, drops what was kept here
+            if (results.contains(original)) {
+                aliasResults.remove(original);
+            }
+        }
+        metrics.duplicate();
+        Integer depth = depths.get(url);
+        if (!stopped && original.equals(canonicalUrl)) {
+            if (crawlable(Collections.singleton(original)).isEmpty()) {
+                addLinksToQueue(result.getInternalLinks(), depth != null ? depth + 1 : 1);
+            } else {
+                addLinksToQueue(Collections.singleton(original), depth != null ? depth : 1);
+            }
+        }
+        if (journal != null) {
+            try {
+                journal.aliased(url, original);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to journal the alias " + url, e);
+            }
+        }
+        depths.remove(url);
+        frontier.done(url);
     }
 
-    public void submitError() {
-        pageComplete();
+    // A canonical url that names this page back as its own canonical is ignored, the first of the two stays a page
+    private String originalOf(String url, CrawlResult result, String canonicalUrl, long simHash) {
+        if (canonicalUrl != null && !canonicalUrl.equals(url) && !url.equals(aliases.get(canonicalUrl))) {
+            return canonicalUrl;
+        }
+        PageVersion version = result.getVersion();
+        return version != null ? duplicates.originalOf(url, version.getContentHash(), simHash) : null;
     }
 
-    public Page getSiteMap() {
-        return getPageTree(baseUrl, new HashSet<>());
+    public void submitError(String url) {
+        submitError(url, false);
     }
 
-    private void addLinkToQueue(String url) {
-        if (results.putIfAbsent(url, CrawlResult.PENDING) == null) {
-            unprocessedPages.incrementAndGet();
+    /**
+     * @param overloaded whether the host refused the page for having too much to do, so the frontier can back off
+     */
+    public void submitError(String url, boolean overloaded) {
+        journalFailure(url);
+        followAliasesOf(url, depths.remove(url));
+        frontier.failed(url, overloaded);
+        metrics.error();
+    }
+
+    /**
+     * For a page that was left unread because it isn't HTML, it is left out of the site map as a failed page is
+     */
+    public void submitSkipped(String url) {
+        finish(url);
+        metrics.skipped();
+    }
+
+    private void finish(String url) {
+        journalFailure(url);
+        followAliasesOf(url, depths.remove(url));
+        frontier.done(url);
+    }
+
+    // The aliases of a page that failed follow their own links instead, before the page is done so the crawl can't end
+    private void followAliasesOf(String url, Integer depth) {
+        Map<String, CrawlResult> kept = aliasResults.get(url);
+        if (kept != null && !stopped) {
+            for (CrawlResult result : kept.values()) {
+                addLinksToQueue(result.getInternalLinks(), depth != null ? depth + 1 : 1);
+            }
+        }
+    }
+
+    private void journalFailure(String url) {
+        if (journal != null) {
             try {
-                pageQueue.put(url);
-            } catch (InterruptedException e) {
-                throw new RuntimeException("Unable to append to page process queue", e);
+                journal.failed(url);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to journal the failure of " + url, e);
+            }
+        }
+    }
+
+    /**
+     * @return the site map or null if another process of a distributed crawl has the results to build it
+     */
+    public LinkGraph getSiteMap() {
+        try {
+            if (!frontier.gather(results)) {
+                return null;
             }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to gather the results of the crawl", e);
         }
+        return LinkGraph.build(baseUrl, this::resultOf, this::canonicalOf);
     }
 
-    private void pageComplete() {
-        if (unprocessedPages.decrementAndGet() == 0) {
-            for (int i = 0; i < nConsumers; i++) {
-                try {
-                    pageQueue.put(COMPLETE);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException("Unable to append to page process queue", e);
+    private CrawlResult resultOf(String url) {
+        CrawlResult result = results.get(url);
+        return result != null ? result : aliasResultOf(url);
+    }
+
+    private CrawlResult aliasResultOf(String url) {
+        String original = aliases.get(url);
+        Map<String, CrawlResult> kept = original != null ? aliasResults.get(original) : null;
+        return kept != null ? kept.get(url) : null;
+    }
+
+    // Follows the url's aliases towards the page they end at, but only as far as the last url along the way that has a
+    // result, so an alias whose canonical page failed is a page itself. A loop of aliases ends anywhere along it
+    private String canonicalOf(String url) {
+        String canonical = url;
+        for (int hops = 0; hops < aliases.size(); hops++) {
+            String original = aliases.get(url);
+            if (original == null) {
+                break;
+            }
+            url = original;
+            if (results.contains(url) || aliasResultOf(url) != null) {
+                canonical = url;
+            }
+        }
+        return canonical;
+    }
+
+    /**
+     * Every finished page is marked as seen before any links are followed so that only unfinished pages are queued. The
+     * finished pages are then walked breadth first from the base url, and the sitemap urls at depth 1, so each link is
+     * queued at its least depth, the page an alias is of at the depth of the alias. The links of finished pages the walk
+     * doesn't reach, as when a crawl that was seeded from sitemaps is resumed without, are queued too, as if those pages
+     * were linked from the base url.
+     *
+     * The DuplicateIndex is rebuilt from the content hashes of the finished pages, SimHashes aren't journalled so a page
+     * crawled after the resume is only found to be a near duplicate of pages crawled after it too.
+     */
+    private void resume(Set<String> sitemapUrls) {
+        List<String> finishedUrls = new ArrayList<>();
+        try {
+            journal.replay((url, result) -> {
+                seenUrls.add(url);
+                if (result != null) {
+                    finishedUrls.add(url);
+                    results.put(url, result);
+                    write(url, result);
+                    if (duplicates != null && result.getVersion() != null) {
+                        duplicates.originalOf(url, result.getVersion().getContentHash(), SimHash.NONE);
+                    }
                 }
+            }, (url, original) -> {
+                seenUrls.add(url);
+                finishedUrls.add(url);
+                aliases.put(url, original);
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to replay the crawl journal", e);
+        }
+        Map<String, Integer> finishedDepths = new HashMap<>();
+        Queue<String> walk = new ArrayDeque<>();
+        finishedDepths.put(baseUrl, 0);
+        walk.add(baseUrl);
+        for (String sitemapUrl : sitemapUrls) {
+            if (finishedDepths.putIfAbsent(sitemapUrl, 1) == null) {
+                walk.add(sitemapUrl);
+            }
+        }
+        requeueLinks(walk, finishedDepths);
+        for (String finished : finishedUrls) {
+            if (finishedDepths.putIfAbsent(finished, 1) == null) {
+                walk.add(finished);
+                requeueLinks(walk, finishedDepths);
             }
         }
+        pagesTaken.set(results.size());
     }
 
-    private Page getPageTree(String url, Set<String> parentLinks) {
-        CrawlResult crawlResult = results.get(url);
-        if(crawlResult == CrawlResult.PENDING) {
-            return null;
+    private void requeueLinks(Queue<String> walk, Map<String, Integer> finishedDepths) {
+        String url;
+        while ((url = walk.poll()) != null) {
+            String original = aliases.get(url);
+            if (original != null) {
+                int depth = finishedDepths.get(url);
+                addLinksToQueue(Collections.singleton(original), depth);
+                if (finishedDepths.putIfAbsent(original, depth) == null) {
+                    walk.add(original);
+                }
+                continue;
+            }
+            CrawlResult result = results.get(url);
+            if (result == null) {
+                continue;
+            }
+            int depth = finishedDepths.get(url) + 1;
+            addLinksToQueue(result.getInternalLinks(), depth);
+            for (String link : result.getInternalLinks()) {
+                if (finishedDepths.putIfAbsent(link, depth) == null) {
+                    walk.add(link);
+                }
+            }
+        }
+    }
+
+    // Only urls below the base url are queued, as for the internal links of a page
+    private Set<String> sitemapUrls() {
+        Set<String> urls = new HashSet<>();
+        for (String url : robots.sitemapUrls(baseUrl)) {
+            String link = UrlResolver.normalize(url);
+            if (link.startsWith(baseUrl) && (link.length() == baseUrl.length() || link.charAt(baseUrl.length()) == '/')) {
+                urls.add(link);
+            }
+        }
+        urls.remove(baseUrl);
+        return urls;
+    }
+
+    private void write(String url, CrawlResult result) {
+        for (CrawlSink sink : sinks) {
+            try {
+                sink.page(url, result);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to write the result of " + url, e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of queued urls whose depth is kept
+     */
+    int depthsKept() {
+        return depths.size();
+    }
+
+    // The links of a page are deduped and queued as a batch rather than one at a time
+    private void addLinksToQueue(Set<String> urls, int depth) {
+        if (urls.isEmpty() || depth > maxDepth) {
+            return;
+        }
+        List<String> unseen = seenUrls.addAll(crawlable(urls));
+        if (trackDepths) {
+            for (String url : unseen) {
+                depths.put(url, depth);
+            }
+        }
+        frontier.addAll(unseen, depth);
+    }
+
+    // Urls left out aren't marked as seen, checking one again is cheaper than remembering it
+    private List<String> crawlable(Set<String> urls) {
+        List<String> crawlable = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            if (!ContentTypes.isCrawlable(url)) {
+                continue;
+            }
+            if (robots == null || robots.isAllowed(url)) {
+                crawlable.add(url);
+            } else {
+                metrics.disallowed();
+            }
+        }
+        return crawlable;
+    }
+
+    // Counts a page taken against the budgets, the first to find one spent closes the frontier so every taker wakes
+    private boolean withinBudget() {
+        if (!stopped && pagesTaken.incrementAndGet() <= maxPages && (deadlineNanos == 0 || System.nanoTime() - deadlineNanos < 0)) {
+            return true;
+        }
+        if (!stopped) {
+            stopped = true;
+            frontier.close();
+        }
+        return false;
+    }
+
+    public static Builder newBuilder(String baseUrl) {
+        return new Builder(baseUrl);
+    }
+
+    public static final class Builder {
+        private String baseUrl;
+        private Frontier frontier = new PoliteFrontier();
+        private UrlSeenSet seenUrls = FingerprintSeenSet.newBuilder().build();
+        private CrawlJournal journal;
+        private Map<String, CrawlResult> previousResults = Collections.emptyMap();
+        private CrawlMetrics metrics = new CrawlMetrics();
+        private List<CrawlSink> sinks = Collections.emptyList();
+        private ResultStore results = new ResultStore();
+        private RobotsCache robots;
+        private DuplicateIndex duplicates;
+        private boolean seedFromSitemaps;
+        private int maxDepth = Integer.MAX_VALUE;
+        private long maxPages = Long.MAX_VALUE;
+        private long maxMillis;
+
+        private Builder(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public Builder withFrontier(Frontier val) {
+            frontier = val;
+            return this;
+        }
+
+        public Builder withSeenUrls(UrlSeenSet val) {
+            seenUrls = val;
+            return this;
+        }
+
+        public Builder withJournal(CrawlJournal val) {
+            journal = val;
+            return this;
+        }
+
+        /**
+         * @param val the results of the previous crawl, which are removed as they are taken
+         */
+        public Builder withPreviousResults(Map<String, CrawlResult> val) {
+            previousResults = val;
+            return this;
+        }
+
+        public Builder withMetrics(CrawlMetrics val) {
+            metrics = val;
+            return this;
+        }
+
+        /**
+         * @param val the sinks every result is written to, the caller closes them once the crawl is over
+         */
+        public Builder withSinks(List<CrawlSink> val) {
+            sinks = val;
+            return this;
+        }
+
+        /**
+         * @param val where the results are kept, the caller closes it once the site map is built
+         */
+        public Builder withResultStore(ResultStore val) {
+            results = val;
+            return this;
+        }
+
+        /**
+         * @param val the robots.txt rules links are checked against, or null to follow every link
+         */
+        public Builder withRobots(RobotsCache val) {
+            robots = val;
+            return this;
+        }
+
+        /**
+         * @param val the index pages are checked against before their links are followed, or null to follow the links
+         *            of every page and ignore canonical links
+         */
+        public Builder withDuplicateIndex(DuplicateIndex val) {
+            duplicates = val;
+            return this;
+        }
+
+        /**
+         * @param val whether to queue the urls of the sitemaps listed by the site's robots.txt, given a RobotsCache
+         */
+        public Builder withSeedFromSitemaps(boolean val) {
+            seedFromSitemaps = val;
+            return this;
+        }
+
+        /**
+         * @param val the most links followed from the base url, 0 to crawl the base url alone
+         */
+        public Builder withMaxDepth(int val) {
+            maxDepth = val;
+            return this;
+        }
+
+        /**
+         * @param val the most pages handed out to be crawled, failed pages included
+         */
+        public Builder withMaxPages(long val) {
+            maxPages = val;
+            return this;
+        }
+
+        /**
+         * @param val how long pages are handed out for from when the processor is built, 0 for no limit
+         */
+        public Builder withMaxMillis(long val) {
+            maxMillis = val;
+            return this;
+        }
+
+        public PageProcessor build() {
+            return new PageProcessor(this);
         }
-        parentLinks.add(url);
-        Set<Page> pages = crawlResult.getInternalLinks().stream()
-                .filter(link -> !parentLinks.contains(link)) // Filter out circular references
-                .map(link -> getPageTree(link, parentLinks))
-                .filter(page -> page != null)
-                .collect(toSet());
-        return new Page(url, pages, crawlResult.getExternalLinks(), crawlResult.getImages());
     }
 }
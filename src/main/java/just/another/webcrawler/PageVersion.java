@@ -0,0 +1,65 @@
+package just.another.webcrawler;
+
+/**
+ * An immutable bean that identifies the version of a page that was read, by its validators, if the server sent any,
+ * and a hash of its content. Used to ask for a page only if it has changed since the previous crawl.
+ */
+public class PageVersion {
+
+    private final String etag;
+    private final String lastModified;
+    private final long contentHash;
+
+    public PageVersion(String etag, String lastModified, long contentHash) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * @return the ETag header or null if there wasn't one
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return the Last-Modified header or null if there wasn't one
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PageVersion that = (PageVersion) o;
+
+        if (contentHash != that.contentHash) return false;
+        if (etag != null ? !etag.equals(that.etag) : that.etag != null) return false;
+        return lastModified != null ? lastModified.equals(that.lastModified) : that.lastModified == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = etag != null ? etag.hashCode() : 0;
+        result = 31 * result + (lastModified != null ? lastModified.hashCode() : 0);
+        result = 31 * result + Long.hashCode(contentHash);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PageVersion{" +
+                "etag='" + etag + '\'' +
+                ", lastModified='" + lastModified + '\'' +
+                ", contentHash=" + contentHash +
+                '}';
+    }
+}
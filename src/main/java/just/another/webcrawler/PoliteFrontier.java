@@ -0,0 +1,342 @@
+package just.another.webcrawler;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A Frontier that spreads requests out over time per host.
+ *
+ * Every host has its own queue of urls and a token bucket that refills at rate requests per second up to burst tokens.
+ * Hosts with urls waiting sit on a heap ordered by the time their bucket next has a token, so take always hands out a
+ * url from whichever host may be requested soonest. A taker only waits when no host at all is ready, it never holds on
+ * to a url for a host that isn't allowed yet while another host could be crawled.
+ *
+ * A rate of zero or less means no limit, in which case hosts are simply taken in turn.
+ *
+ * With a maximum in flight every host also gets a ConcurrencyLimit on the number of its urls that may be taken and not
+ * yet done, adapted between one and that maximum to the time its pages take and to its failures. A host at its limit
+ * leaves the heap until one of its urls is done, so the crawlers it would have held up take other hosts instead.
+ *
+ * An optional HostWarmer is told about every host as its first url is queued, and again whenever the host becomes the
+ * next in line to be taken, so that its address and a connection can be ready by the time it is crawled.
+ *
+ * The crawl is over once no url is pending, unless the frontier is only one part of a larger crawl in which case it
+ * stays open until closed.
+ */
+public class PoliteFrontier implements Frontier {
+
+    private final double tokensPerNano;
+    private final double burst;
+    private final boolean finishWhenIdle;
+    private final HostWarmer warmer;
+    private final int maxInFlight;
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private final PriorityQueue<HostQueue> readyHosts = new PriorityQueue<>(
+            (a, b) -> Long.signum(a.nextAllowedNanos - b.nextAllowedNanos));
+    private final Lock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private int size;
+    private int pending;
+    private boolean closed;
+
+    public PoliteFrontier() {
+        this(0, 1);
+    }
+
+    /**
+     * @param rate  the number of requests per second each host may receive, zero or less for no limit
+     * @param burst the number of requests a host may receive at once after being left idle
+     */
+    public PoliteFrontier(double rate, int burst) {
+        this(rate, burst, true, null, 0);
+    }
+
+    /**
+     * @param warmer gets hosts ready before they are crawled, or null
+     */
+    public PoliteFrontier(double rate, int burst, HostWarmer warmer) {
+        this(rate, burst, true, warmer, 0);
+    }
+
+    /**
+     * @param maxInFlight the most urls of a host that may be in flight at once, each host's limit adapts below it, or
+     *                    zero for no limit
+     */
+    public PoliteFrontier(double rate, int burst, HostWarmer warmer, int maxInFlight) {
+        this(rate, burst, true, warmer, maxInFlight);
+    }
+
+    /**
+     * @param finishWhenIdle false if more urls may be added when nothing is pending, the frontier is then only
+     *                       finished by closing it
+     */
+    PoliteFrontier(double rate, int burst, boolean finishWhenIdle, HostWarmer warmer, int maxInFlight) {
+        if (burst < 1) {
+            throw new IllegalArgumentException("The burst must be at least 1");
+        }
+        this.tokensPerNano = rate > 0 ? rate / TimeUnit.SECONDS.toNanos(1) : 0;
+        this.burst = burst;
+        this.finishWhenIdle = finishWhenIdle;
+        this.warmer = warmer;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void add(String url) {
+        String host = hostOf(url);
+        lock.lock();
+        try {
+            enqueue(host, url, System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the lock once for all of the urls, their hosts are worked out before it is taken
+     */
+    @Override
+    public void addAll(Collection<String> urls) {
+        if (urls.isEmpty()) {
+            return;
+        }
+        String[] values = urls.toArray(new String[0]);
+        String[] hostNames = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            hostNames[i] = hostOf(values[i]);
+        }
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            for (int i = 0; i < values.length; i++) {
+                enqueue(hostNames[i], values[i], now);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                HostQueue next = readyHosts.peek();
+                if (next == null) {
+                    if (closed || finishWhenIdle && pending == 0) {
+                        return null;
+                    }
+                    changed.await();
+                    continue;
+                }
+                long now = System.nanoTime();
+                long wait = next.nextAllowedNanos - now;
+                if (wait > 0) {
+                    changed.awaitNanos(wait);
+                    continue;
+                }
+                readyHosts.poll();
+                next.ready = false;
+                next.consumeToken(now);
+                String url = next.urls.poll();
+                size--;
+                if (next.limit != null) {
+                    next.inFlight++;
+                    next.started.put(url, now);
+                }
+                if (next.canTake()) {
+                    schedule(next, now);
+                } else {
+                    if (next.urls.isEmpty()) {
+                        next.warmed = false;
+                    }
+                    if (!readyHosts.isEmpty()) {
+                        changed.signal();
+                    }
+                }
+                warmNext();
+                return url;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void done(String url) {
+        finish(url, false, false);
+    }
+
+    @Override
+    public void failed(String url, boolean overloaded) {
+        finish(url, true, overloaded);
+    }
+
+    private void finish(String url, boolean failed, boolean overloaded) {
+        String host = maxInFlight > 0 ? hostOf(url) : null;
+        lock.lock();
+        try {
+            if (host != null) {
+                release(host, url, failed, overloaded, System.nanoTime());
+            }
+            if (--pending == 0 && finishWhenIdle) {
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int pending() {
+        lock.lock();
+        try {
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees the place of the url among those of its host in flight and adapts the host's limit to how it went. The
+     * latency is the whole time a crawler had the url, which the fetch makes up most of.
+     */
+    private void release(String host, String url, boolean failed, boolean overloaded, long now) {
+        HostQueue hostQueue = hosts.get(host);
+        Long started = hostQueue != null ? hostQueue.started.remove(url) : null;
+        if (started == null) {
+            return;
+        }
+        hostQueue.inFlight--;
+        if (failed) {
+            hostQueue.limit.failed(overloaded, now);
+        } else {
+            hostQueue.limit.succeeded(now - started, hostQueue.inFlight);
+        }
+        if (!hostQueue.ready && hostQueue.canTake()) {
+            schedule(hostQueue, now);
+        }
+    }
+
+    private void enqueue(String host, String url, long now) {
+        HostQueue hostQueue = hosts.get(host);
+        if (hostQueue == null) {
+            hostQueue = new HostQueue();
+            hosts.put(host, hostQueue);
+            if (warmer != null) {
+                warmer.queued(url);
+            }
+        }
+        hostQueue.urls.add(url);
+        size++;
+        pending++;
+        if (!hostQueue.ready && hostQueue.canTake()) {
+            schedule(hostQueue, now);
+        }
+    }
+
+    private void schedule(HostQueue hostQueue, long now) {
+        hostQueue.nextAllowedNanos = hostQueue.nextAllowed(now);
+        hostQueue.ready = true;
+        readyHosts.add(hostQueue);
+        // A single waiter is enough, whoever takes next passes the signal on if there is more to take
+        changed.signal();
+    }
+
+    // Only once each time the host comes up, until it runs out of urls
+    private void warmNext() {
+        HostQueue head = readyHosts.peek();
+        if (warmer != null && head != null && !head.warmed) {
+            head.warmed = true;
+            warmer.next(head.urls.peek());
+        }
+    }
+
+    /**
+     * The lower cased authority of the url, or the whole url if it has none
+     */
+    static String hostOf(String url) {
+        int start = url.indexOf("://");
+        if (start < 0) {
+            return url;
+        }
+        start += 3;
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            end++;
+        }
+        return url.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    private class HostQueue {
+
+        private final Queue<String> urls = new ArrayDeque<>();
+        private final ConcurrencyLimit limit = maxInFlight > 0 ? new ConcurrencyLimit(maxInFlight) : null;
+        // When each url in flight was taken, only kept when there is a limit
+        private final Map<String, Long> started = limit != null ? new HashMap<>() : null;
+        private int inFlight;
+        private boolean ready;
+        private double tokens = burst;
+        private long lastRefillNanos = System.nanoTime();
+        private long nextAllowedNanos;
+        private boolean warmed;
+
+        boolean canTake() {
+            return !urls.isEmpty() && (limit == null || inFlight < limit.get());
+        }
+
+        long nextAllowed(long now) {
+            if (tokensPerNano == 0) {
+                return now;
+            }
+            refill(now);
+            return tokens >= 1 ? now : now + (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+
+        void consumeToken(long now) {
+            if (tokensPerNano > 0) {
+                refill(now);
+                tokens = Math.max(0, tokens - 1);
+            }
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - lastRefillNanos) * tokensPerNano);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package just.another.webcrawler;
+
+import java.util.Collection;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A Frontier that hands out the url with the lowest UrlScorer score first, urls with the same score in the order they
+ * were added. With the depth from the base url as the score a crawl cut short by a budget has crawled the part of the
+ * site nearest its base url.
+ *
+ * Urls are scored as they are added, before the lock is taken. There is no notion of hosts, a rate per host needs the
+ * PoliteFrontier.
+ */
+public class PriorityFrontier implements Frontier {
+
+    private final UrlScorer scorer;
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private final Lock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private long sequence;
+    private int pending;
+    private boolean closed;
+
+    public PriorityFrontier() {
+        this(UrlScorer.depth());
+    }
+
+    public PriorityFrontier(UrlScorer scorer) {
+        this.scorer = scorer;
+    }
+
+    /**
+     * Adds the url as if it were the base url
+     */
+    @Override
+    public void add(String url) {
+        add(url, 0);
+    }
+
+    @Override
+    public boolean usesDepth() {
+        return true;
+    }
+
+    @Override
+    public void add(String url, int depth) {
+        double score = scorer.score(url, depth);
+        lock.lock();
+        try {
+            queue.add(new Entry(url, score, sequence++));
+            pending++;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addAll(Collection<String> urls) {
+        addAll(urls, 0);
+    }
+
+    @Override
+    public void addAll(Collection<String> urls, int depth) {
+        if (urls.isEmpty()) {
+            return;
+        }
+        String[] values = urls.toArray(new String[0]);
+        double[] scores = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            scores[i] = scorer.score(values[i], depth);
+        }
+        lock.lock();
+        try {
+            for (int i = 0; i < values.length; i++) {
+                queue.add(new Entry(values[i], scores[i], sequence++));
+            }
+            pending += values.length;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (queue.isEmpty()) {
+                if (closed || pending == 0) {
+                    return null;
+                }
+                changed.await();
+            }
+            return queue.poll().url;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void done(String url) {
+        lock.lock();
+        try {
+            if (--pending == 0) {
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int pending() {
+        lock.lock();
+        try {
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        private final String url;
+        private final double score;
+        private final long sequence;
+
+        Entry(String url, double score, long sequence) {
+            this.url = url;
+            this.score = score;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package just.another.webcrawler;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The original regular expression based extraction. It scans the content once for links and once more for images and
+ * does not look for a base href.
+ *
+ * Kept as a reference implementation to benchmark HtmlLinkExtractor against. Regular expressions can't work on partial
+ * content so anything fed incrementally is buffered until the end of the page.
+ */
+public class RegexLinkExtractor implements LinkExtractor {
+
+    private static final Pattern LINK_PATTERN = Pattern.compile("(?i)<a\\s+[^>]*?href\\s*=\\s*((\"[^\"]*\")|('[^']*'))");
+    private static final Pattern IMG_PATTERN = Pattern.compile("(?i)<img\\s+[^>]*?src\\s*=\\s*((\"[^\"]*\")|('[^']*'))");
+
+    private final StringBuilder buffer = new StringBuilder();
+    private LinkHandler handler;
+
+    @Override
+    public void begin(LinkHandler handler) {
+        this.handler = handler;
+        buffer.setLength(0);
+    }
+
+    @Override
+    public void feed(CharSequence chunk) {
+        buffer.append(chunk);
+    }
+
+    @Override
+    public void end() {
+        extract(buffer, handler);
+        handler = null;
+    }
+
+    @Override
+    public void extract(CharSequence content, LinkHandler handler) {
+        Matcher linkMatcher = LINK_PATTERN.matcher(content);
+        while (linkMatcher.find()) {
+            handler.link(unquote(content, linkMatcher));
+        }
+        Matcher imageMatcher = IMG_PATTERN.matcher(content);
+        while (imageMatcher.find()) {
+            handler.image(unquote(content, imageMatcher));
+        }
+    }
+
+    private CharSequence unquote(CharSequence content, Matcher matcher) {
+        return content.subSequence(matcher.start(1) + 1, matcher.end(1) - 1);
+    }
+}
@@ -0,0 +1,483 @@
+package just.another.webcrawler;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Keeps the CrawlResult of every crawled page in a compact form.
+ *
+ * Every url, whether of a page, a link or an image, is interned once into a dictionary that gives it an int id, and a
+ * page keeps its links as three sorted int arrays. The logo, stylesheet and social links found on every page of a site
+ * then cost four bytes a page rather than a String and a set entry each. Results are handed back as sets that are views
+ * of the arrays, resolving ids to urls as they are iterated.
+ *
+ * Given a spill directory, once the pages held in memory pass a threshold the pages stored longest ago are appended to
+ * a spill file, delta and varint encoded, until they are under half of it. Pages are only read back when the site map is
+ * built, so the oldest are as good as any to spill, and the heap then only grows with the number of unique urls.
+ *
+ * Safe for many crawlers to store results at once.
+ */
+public class ResultStore implements Closeable {
+
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    // The header and three array references of a Page, and the headers of its arrays
+    private static final int PAGE_OVERHEAD = 32 + 3 * 16;
+    private static final int INITIAL_RECORD_SIZE = 4096;
+    // Spilled pages are encoded and written this many bytes at a time
+    private static final int DEFAULT_SPILL_WRITE_SIZE = 1024 * 1024;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicReferenceArray<String[]> urls = new AtomicReferenceArray<>(1 << (31 - CHUNK_BITS));
+    private final Map<Integer, Page> pages = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> spilled = new ConcurrentHashMap<>();
+    private final Queue<Integer> resident = new ConcurrentLinkedQueue<>();
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final Path spillDirectory;
+    private final long maxResidentBytes;
+    private final int spillWriteSize;
+    private final Lock spillLock = new ReentrantLock();
+    private FileChannel spill;
+    private long spillEnd;
+    private ByteBuffer record = ByteBuffer.allocate(INITIAL_RECORD_SIZE);
+    // The pages encoded into the record since it was last written, and their offsets in the spill file
+    private int[] recordIds = new int[64];
+    private Page[] recordPages = new Page[64];
+    private long[] recordOffsets = new long[64];
+    private int recordPageCount;
+
+    /**
+     * A store that keeps every page in memory
+     */
+    public ResultStore() {
+        this(null, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param spillDirectory   where the spill file is created, it is deleted when the store is closed if not before
+     * @param maxResidentBytes roughly how many bytes of pages are kept in memory before the oldest are spilled
+     */
+    public ResultStore(Path spillDirectory, long maxResidentBytes) {
+        this(spillDirectory, maxResidentBytes, DEFAULT_SPILL_WRITE_SIZE);
+    }
+
+    ResultStore(Path spillDirectory, long maxResidentBytes, int spillWriteSize) {
+        this.spillDirectory = spillDirectory;
+        this.maxResidentBytes = maxResidentBytes;
+        this.spillWriteSize = spillWriteSize;
+    }
+
+    public void put(String url, CrawlResult result) {
+        int id = intern(url);
+        Page page = new Page(intern(result.getInternalLinks()), intern(result.getExternalLinks()), intern(result.getImages()), result.getVersion());
+        Page previous = pages.put(id, page);
+        if (previous != null) {
+            residentBytes.addAndGet(-previous.bytes());
+        } else {
+            spilled.remove(id);
+            resident.add(id);
+        }
+        if (residentBytes.addAndGet(page.bytes()) > maxResidentBytes && spillDirectory != null) {
+            spill();
+        }
+    }
+
+    /**
+     * @return the result of the page or null if there is none
+     */
+    public CrawlResult get(String url) {
+        Integer id = ids.get(url);
+        if (id == null) {
+            return null;
+        }
+        Page page = pages.get(id);
+        if (page == null) {
+            Long offset = spilled.get(id);
+            if (offset == null) {
+                return null;
+            }
+            page = read(offset);
+        }
+        return page.toResult();
+    }
+
+    public boolean contains(String url) {
+        Integer id = ids.get(url);
+        return id != null && (pages.containsKey(id) || spilled.containsKey(id));
+    }
+
+    /**
+     * @return the number of pages stored
+     */
+    public int size() {
+        return pages.size() + spilled.size();
+    }
+
+    /**
+     * @return the number of unique urls in the dictionary
+     */
+    public int urlCount() {
+        return nextId.get();
+    }
+
+    /**
+     * @return the estimated bytes taken by the pages held in memory
+     */
+    long residentBytes() {
+        return residentBytes.get();
+    }
+
+    /**
+     * @return the capacity of the buffer pages are encoded into to be spilled
+     */
+    int recordCapacity() {
+        spillLock.lock();
+        try {
+            return record.capacity();
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    /**
+     * Hands every page to the consumer, in no particular order. Pages stored meanwhile may or may not be included.
+     */
+    public void forEach(BiConsumer<String, CrawlResult> consumer) {
+        for (Map.Entry<Integer, Page> page : pages.entrySet()) {
+            consumer.accept(url(page.getKey()), page.getValue().toResult());
+        }
+        for (Map.Entry<Integer, Long> page : spilled.entrySet()) {
+            consumer.accept(url(page.getKey()), read(page.getValue()).toResult());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        spillLock.lock();
+        try {
+            if (spill != null) {
+                spill.close();
+            }
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    private int intern(String url) {
+        Integer id = ids.get(url);
+        if (id != null) {
+            return id;
+        }
+        return ids.computeIfAbsent(url, u -> {
+            int newId = nextId.getAndIncrement();
+            chunk(newId >>> CHUNK_BITS)[newId & (CHUNK_SIZE - 1)] = u;
+            return newId;
+        });
+    }
+
+    private int[] intern(Set<String> values) {
+        int[] result = new int[values.size()];
+        int i = 0;
+        for (String value : values) {
+            result[i++] = intern(value);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    // The url of every id handed out is written before the id is published by the dictionary
+    private String url(int id) {
+        return urls.get(id >>> CHUNK_BITS)[id & (CHUNK_SIZE - 1)];
+    }
+
+    private String[] chunk(int index) {
+        String[] chunk = urls.get(index);
+        if (chunk == null) {
+            urls.compareAndSet(index, null, new String[CHUNK_SIZE]);
+            chunk = urls.get(index);
+        }
+        return chunk;
+    }
+
+    /**
+     * Spills the oldest pages until those in memory are under half the threshold, a MB at a time so a spill never needs
+     * more than about a MB of its own. The offsets of the pages are only published once they are written, until then
+     * they are still read from memory.
+     */
+    private void spill() {
+        if (!spillLock.tryLock()) {
+            return;
+        }
+        try {
+            if (spill == null) {
+                Path path = Files.createTempFile(spillDirectory, "crawl-results", ".spill");
+                spill = FileChannel.open(path, READ, WRITE, DELETE_ON_CLOSE);
+            }
+            // The bytes of the pages encoded but not yet written, which are still counted as resident
+            long encodedBytes = 0;
+            Integer id;
+            while (residentBytes.get() - encodedBytes > maxResidentBytes / 2 && (id = resident.poll()) != null) {
+                Page page = pages.get(id);
+                if (page == null) {
+                    continue;
+                }
+                if (recordPageCount == recordIds.length) {
+                    recordIds = Arrays.copyOf(recordIds, recordPageCount * 2);
+                    recordPages = Arrays.copyOf(recordPages, recordPageCount * 2);
+                    recordOffsets = Arrays.copyOf(recordOffsets, recordPageCount * 2);
+                }
+                recordIds[recordPageCount] = id;
+                recordPages[recordPageCount] = page;
+                recordOffsets[recordPageCount] = spillEnd + record.position();
+                recordPageCount++;
+                encode(page);
+                encodedBytes += page.bytes();
+                if (record.position() >= spillWriteSize) {
+                    writeRecord();
+                    encodedBytes = 0;
+                }
+            }
+            writeRecord();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to spill crawl results to " + spillDirectory, e);
+        } finally {
+            // Nothing is kept of a spill between spills but the small buffers it started with
+            record = ByteBuffer.allocate(INITIAL_RECORD_SIZE);
+            recordIds = new int[64];
+            recordPages = new Page[64];
+            recordOffsets = new long[64];
+            recordPageCount = 0;
+            spillLock.unlock();
+        }
+    }
+
+    private void writeRecord() throws IOException {
+        record.flip();
+        while (record.hasRemaining()) {
+            spillEnd += spill.write(record, spillEnd);
+        }
+        record.clear();
+        for (int i = 0; i < recordPageCount; i++) {
+            Page page = recordPages[i];
+            spilled.put(recordIds[i], recordOffsets[i]);
+            if (pages.remove(recordIds[i], page)) {
+                residentBytes.addAndGet(-page.bytes());
+            } else {
+                // Stored again meanwhile, the newer result stays in memory
+                spilled.remove(recordIds[i], recordOffsets[i]);
+                resident.add(recordIds[i]);
+            }
+            recordPages[i] = null;
+        }
+        recordPageCount = 0;
+    }
+
+    private void encode(Page page) {
+        int start = record.position();
+        ensureCapacity(Integer.BYTES);
+        record.position(start + Integer.BYTES);
+        putIds(page.internalLinks);
+        putIds(page.externalLinks);
+        putIds(page.images);
+        PageVersion version = page.version;
+        ensureCapacity(1);
+        record.put((byte) (version != null ? 1 : 0));
+        if (version != null) {
+            putString(version.getEtag());
+            putString(version.getLastModified());
+            ensureCapacity(Long.BYTES);
+            record.putLong(version.getContentHash());
+        }
+        record.putInt(start, record.position() - start - Integer.BYTES);
+    }
+
+    private Page read(long offset) {
+        try {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            readFully(length, offset);
+            ByteBuffer in = ByteBuffer.allocate(length.getInt(0));
+            readFully(in, offset + Integer.BYTES);
+            in.flip();
+            int[] internalLinks = getIds(in);
+            int[] externalLinks = getIds(in);
+            int[] images = getIds(in);
+            PageVersion version = null;
+            if (in.get() == 1) {
+                version = new PageVersion(getString(in), getString(in), in.getLong());
+            }
+            return new Page(internalLinks, externalLinks, images, version);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read crawl results back from " + spillDirectory, e);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (spill.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated spill file");
+            }
+        }
+    }
+
+    // The ids are sorted so each is written as its difference from the one before
+    private void putIds(int[] values) {
+        putVarInt(values.length);
+        int previous = 0;
+        for (int value : values) {
+            putVarInt(value - previous);
+            previous = value;
+        }
+    }
+
+    private static int[] getIds(ByteBuffer in) {
+        int[] values = new int[getVarInt(in)];
+        int previous = 0;
+        for (int i = 0; i < values.length; i++) {
+            previous += getVarInt(in);
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            putVarInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarInt(bytes.length + 1);
+        ensureCapacity(bytes.length);
+        record.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = getVarInt(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void putVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7f) != 0) {
+            record.put((byte) (value & 0x7f | 0x80));
+            value >>>= 7;
+        }
+        record.put((byte) value);
+    }
+
+    private static int getVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (record.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(record.capacity() * 2, record.position() + bytes));
+            record.flip();
+            larger.put(record);
+            record = larger;
+        }
+    }
+
+    private final class Page {
+
+        private final int[] internalLinks;
+        private final int[] externalLinks;
+        private final int[] images;
+        private final PageVersion version;
+
+        Page(int[] internalLinks, int[] externalLinks, int[] images, PageVersion version) {
+            this.internalLinks = internalLinks;
+            this.externalLinks = externalLinks;
+            this.images = images;
+            this.version = version;
+        }
+
+        long bytes() {
+            return PAGE_OVERHEAD + 4L * (internalLinks.length + externalLinks.length + images.length);
+        }
+
+        CrawlResult toResult() {
+            return new CrawlResult(new UrlSet(internalLinks), new UrlSet(externalLinks), new UrlSet(images), version);
+        }
+    }
+
+    /**
+     * An unmodifiable set of urls backed by a sorted array of their ids
+     */
+    private final class UrlSet extends AbstractSet<String> {
+
+        private final int[] ids;
+
+        UrlSet(int[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            Integer id = o instanceof String ? ResultStore.this.ids.get(o) : null;
+            return id != null && Arrays.binarySearch(ids, id) >= 0;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < ids.length;
+                }
+
+                @Override
+                public String next() {
+                    if (next == ids.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return url(ids[next++]);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+    }
+}
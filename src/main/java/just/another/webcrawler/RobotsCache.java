@@ -0,0 +1,154 @@
+package just.another.webcrawler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fetches the robots.txt of every host the first time one of its urls is checked and keeps its compiled RobotsRules
+ * for the rest of the crawl. As RFC 9309 says, a robots.txt that isn't there, or that the server refuses with any other
+ * 4xx status, allows everything, while one that can't be reached, for a 5xx status or a network error, disallows
+ * everything since the site may well disallow much of it.
+ *
+ * A host's robots.txt is only fetched once however many crawlers check its urls at the same time, the others wait for
+ * the same rules rather than blocking the whole cache while it is read.
+ *
+ * Can also read the sitemaps that a site's robots.txt lists, following sitemap indexes, so the urls of a large site can
+ * be queued in bulk rather than found a page at a time.
+ */
+public class RobotsCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RobotsCache.class);
+
+    public static final String USER_AGENT = "web-crawler";
+    // The sitemaps protocol limits a sitemap to 50,000 urls and an index to as many sitemaps
+    private static final int MAX_SITEMAPS = 1000;
+
+    private final UrlReader urlReader;
+    private final String userAgent;
+    private final Map<String, CompletableFuture<RobotsRules>> rules = new ConcurrentHashMap<>();
+
+    public RobotsCache(UrlReader urlReader) {
+        this(urlReader, USER_AGENT);
+    }
+
+    public RobotsCache(UrlReader urlReader, String userAgent) {
+        this.urlReader = urlReader;
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * @param url a normalized absolute url, as the links of a page are resolved to
+     */
+    public boolean isAllowed(String url) {
+        int pathStart = pathStart(url);
+        if (pathStart < 0) {
+            // Not a hierarchical url, there is no host to ask
+            return true;
+        }
+        return rules(url.substring(0, pathStart)).isAllowed(pathStart < url.length() ? url.substring(pathStart) : "/");
+    }
+
+    /**
+     * @return the urls listed by the sitemaps of the site's robots.txt, and by any sitemaps those index
+     */
+    public Set<String> sitemapUrls(String siteUrl) {
+        int pathStart = pathStart(siteUrl);
+        if (pathStart < 0) {
+            return new HashSet<>();
+        }
+        Set<String> urls = new LinkedHashSet<>();
+        Set<String> sitemapsRead = new HashSet<>();
+        Queue<String> sitemaps = new ArrayDeque<>(rules(siteUrl.substring(0, pathStart)).getSitemaps());
+        String sitemap;
+        while ((sitemap = sitemaps.poll()) != null && sitemapsRead.size() < MAX_SITEMAPS) {
+            if (!sitemapsRead.add(sitemap)) {
+                continue;
+            }
+            try {
+                String xml = urlReader.read(sitemap);
+                (xml.contains("<sitemapindex") ? sitemaps : urls).addAll(locs(xml));
+            } catch (IOException e) {
+                logger.info("Unable to read sitemap " + sitemap);
+            }
+        }
+        return urls;
+    }
+
+    private RobotsRules rules(String origin) {
+        CompletableFuture<RobotsRules> future = rules.get(origin);
+        if (future == null) {
+            CompletableFuture<RobotsRules> fetching = new CompletableFuture<>();
+            future = rules.putIfAbsent(origin, fetching);
+            if (future == null) {
+                fetching.complete(fetch(origin));
+                return fetching.join();
+            }
+        }
+        return future.join();
+    }
+
+    private RobotsRules fetch(String origin) {
+        try {
+            return RobotsRules.parse(urlReader.read(origin + "/robots.txt"), userAgent);
+        } catch (HttpStatusException e) {
+            if (e.getStatus() >= 500) {
+                logger.info("Unable to reach robots.txt for " + origin + ", disallowing everything");
+                return RobotsRules.DISALLOW_ALL;
+            }
+            logger.info("No robots.txt for " + origin + ", allowing everything");
+            return RobotsRules.ALLOW_ALL;
+        } catch (IOException e) {
+            logger.info("Unable to reach robots.txt for " + origin + ", disallowing everything");
+            return RobotsRules.DISALLOW_ALL;
+        } catch (RuntimeException e) {
+            logger.info("No robots.txt for " + origin + ", allowing everything");
+            return RobotsRules.ALLOW_ALL;
+        }
+    }
+
+    /**
+     * @return the text of every loc element of a sitemap or sitemap index, with entities unescaped
+     */
+    static Set<String> locs(String xml) {
+        Set<String> locs = new LinkedHashSet<>();
+        int from = 0;
+        int start;
+        while ((start = xml.indexOf("<loc>", from)) >= 0) {
+            int end = xml.indexOf("</loc>", start);
+            if (end < 0) {
+                break;
+            }
+            String loc = xml.substring(start + "<loc>".length(), end).trim();
+            if (loc.startsWith("<![CDATA[") && loc.endsWith("]]>")) {
+                loc = loc.substring("<![CDATA[".length(), loc.length() - "]]>".length()).trim();
+            } else {
+                loc = loc.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'").replace("&amp;", "&");
+            }
+            if (!loc.isEmpty()) {
+                locs.add(loc);
+            }
+            from = end;
+        }
+        return locs;
+    }
+
+    // Where the path of an absolute url starts, its length if it has none, or -1 if it has no authority
+    private static int pathStart(String url) {
+        int authority = url.indexOf("://");
+        if (authority < 0) {
+            return -1;
+        }
+        int slash = url.indexOf('/', authority + 3);
+        return slash < 0 ? url.length() : slash;
+    }
+}
@@ -0,0 +1,233 @@
+package just.another.webcrawler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The Allow and Disallow rules of a robots.txt that apply to one user agent, compiled into a prefix trie.
+ *
+ * As RFC 9309 describes, the rules of every group naming the user agent apply, or else those of the * groups, and of
+ * the rules that match a path the longest wins, an Allow winning a tie. Rules are mostly plain prefixes, so each rule
+ * is a node of a trie of path characters and a path is matched by walking down the trie once, whatever the number of
+ * rules. A rule with a * or $ hangs off the node of the prefix before its first wildcard and is only matched against
+ * the rest of paths that reach it.
+ *
+ * Also keeps the Sitemap urls of the file, which apply to every user agent. Immutable, and so safe to share.
+ */
+public class RobotsRules {
+
+    public static final RobotsRules ALLOW_ALL = new RobotsRules(new Node(), Collections.emptyList());
+    public static final RobotsRules DISALLOW_ALL = parse("User-agent: *\nDisallow: /\n", "*");
+
+    private final Node root;
+    private final List<String> sitemaps;
+
+    private RobotsRules(Node root, List<String> sitemaps) {
+        this.root = root;
+        this.sitemaps = sitemaps;
+    }
+
+    /**
+     * @param robotsTxt the content of a robots.txt
+     * @param userAgent the product token of the crawler, matched case insensitively
+     */
+    public static RobotsRules parse(String robotsTxt, String userAgent) {
+        String agent = userAgent.toLowerCase(Locale.ROOT);
+        List<Rule> named = new ArrayList<>();
+        List<Rule> any = new ArrayList<>();
+        List<String> sitemaps = new ArrayList<>();
+        boolean inAgents = false;
+        boolean forAgent = false;
+        boolean forAny = false;
+        for (String line : robotsTxt.split("\r\n|\r|\n")) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            switch (key) {
+                case "user-agent":
+                    // Consecutive user-agent lines start a single group
+                    if (!inAgents) {
+                        forAgent = false;
+                        forAny = false;
+                        inAgents = true;
+                    }
+                    String name = value.toLowerCase(Locale.ROOT);
+                    forAgent |= name.equals(agent);
+                    forAny |= name.equals("*");
+                    break;
+                case "allow":
+                case "disallow":
+                    inAgents = false;
+                    // An empty Disallow allows everything, which is the same as having no rule
+                    if (!value.isEmpty()) {
+                        Rule rule = new Rule(value, key.equals("allow"));
+                        if (forAgent) {
+                            named.add(rule);
+                        }
+                        if (forAny) {
+                            any.add(rule);
+                        }
+                    }
+                    break;
+                case "sitemap":
+                    if (!value.isEmpty()) {
+                        sitemaps.add(value);
+                    }
+                    break;
+                default:
+                    inAgents = false;
+            }
+        }
+        Node root = new Node();
+        for (Rule rule : named.isEmpty() ? any : named) {
+            root.add(rule);
+        }
+        return new RobotsRules(root, Collections.unmodifiableList(sitemaps));
+    }
+
+    /**
+     * @param path the path of a url, with its query if any, starting with /
+     */
+    public boolean isAllowed(String path) {
+        Node node = root;
+        int bestLength = -1;
+        boolean allowed = true;
+        for (int i = 0; ; i++) {
+            if (node.rule != null && i >= bestLength && (i > bestLength || node.rule.allow)) {
+                bestLength = i;
+                allowed = node.rule.allow;
+            }
+            for (Rule rule : node.wildcards) {
+                int length = rule.pattern.length();
+                if ((length > bestLength || length == bestLength && rule.allow) && rule.matches(path, i)) {
+                    bestLength = length;
+                    allowed = rule.allow;
+                }
+            }
+            if (i == path.length() || (node = node.child(path.charAt(i))) == null) {
+                return allowed;
+            }
+        }
+    }
+
+    public List<String> getSitemaps() {
+        return sitemaps;
+    }
+
+    private static final class Rule {
+
+        private final String pattern;
+        private final boolean allow;
+        // Where the literal prefix of the pattern ends, at its first * or $
+        private final int literalLength;
+
+        Rule(String pattern, boolean allow) {
+            this.pattern = pattern;
+            this.allow = allow;
+            int wildcard = pattern.length();
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '*' || c == '$') {
+                    wildcard = i;
+                    break;
+                }
+            }
+            literalLength = wildcard;
+        }
+
+        boolean isLiteral() {
+            return literalLength == pattern.length();
+        }
+
+        // The path is known to start with the literal prefix, the rest of the pattern is matched from there
+        boolean matches(String path, int from) {
+            return matches(path, from, literalLength);
+        }
+
+        // Greedy, on a mismatch only the last * is given one more character, which is enough as anything an earlier *
+        // could take the last could take too. So a match takes at most the length of the path times that of the pattern
+        // however many *s a robots.txt throws at it, rather than growing with a power of the number of *s
+        private boolean matches(String path, int p, int r) {
+            boolean anchored = pattern.endsWith("$");
+            int end = anchored ? pattern.length() - 1 : pattern.length();
+            int star = -1;
+            int starP = 0;
+            while (p < path.length()) {
+                if (r < end && pattern.charAt(r) == '*') {
+                    star = r++;
+                    starP = p;
+                } else if (r < end && pattern.charAt(r) == path.charAt(p)) {
+                    r++;
+                    p++;
+                } else if (r == end && !anchored) {
+                    // The rest of the path follows a match of the whole pattern
+                    return true;
+                } else if (star >= 0) {
+                    r = star + 1;
+                    p = ++starP;
+                } else {
+                    return false;
+                }
+            }
+            while (r < end && pattern.charAt(r) == '*') {
+                r++;
+            }
+            return r == end;
+        }
+    }
+
+    private static final class Node {
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private Rule rule;
+        private List<Rule> wildcards = Collections.emptyList();
+
+        void add(Rule rule) {
+            Node node = this;
+            for (int i = 0; i < rule.literalLength; i++) {
+                node = node.childOrNew(rule.pattern.charAt(i));
+            }
+            if (!rule.isLiteral()) {
+                if (node.wildcards.isEmpty()) {
+                    node.wildcards = new ArrayList<>();
+                }
+                node.wildcards.add(rule);
+            } else if (node.rule == null || rule.allow) {
+                // The same path both allowed and disallowed is allowed
+                node.rule = rule;
+            }
+        }
+
+        Node child(char key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node childOrNew(char key) {
+            Node child = child(key);
+            if (child == null) {
+                child = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = key;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
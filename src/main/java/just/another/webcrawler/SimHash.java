@@ -0,0 +1,112 @@
+package just.another.webcrawler;
+
+import java.util.Arrays;
+
+/**
+ * Computes a 64 bit SimHash of the text of a page as it is fed in chunks, alongside the LinkExtractor.
+ *
+ * The text outside of tags is split into lower cased words and every run of three words is hashed. Each bit of the
+ * SimHash is set if more of those hashes have it set than not, so pages that share most of their runs of words get
+ * SimHashes that differ in only a few bits, however long they are. Pages with too little text to tell apart have no
+ * SimHash at all rather than one that matches every other short page.
+ *
+ * Keeps its state in fields so a word may span chunks. Instances are not thread safe and are reset for every page.
+ */
+public class SimHash {
+
+    /**
+     * The value of a page with too little text to have a SimHash
+     */
+    public static final long NONE = 0;
+
+    private static final int SHINGLE_WORDS = 3;
+    private static final int MIN_SHINGLES = 16;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int[] weights = new int[Long.SIZE];
+    private final long[] words = new long[SHINGLE_WORDS];
+    private long word;
+    private boolean inWord;
+    private boolean inTag;
+    private int wordCount;
+    private int shingles;
+
+    public void reset() {
+        Arrays.fill(weights, 0);
+        inWord = false;
+        inTag = false;
+        wordCount = 0;
+        shingles = 0;
+    }
+
+    public void feed(CharSequence chunk) {
+        for (int i = 0, length = chunk.length(); i < length; i++) {
+            char c = chunk.charAt(i);
+            if (inTag) {
+                inTag = c != '>';
+            } else if (Character.isLetterOrDigit(c)) {
+                if (!inWord) {
+                    inWord = true;
+                    word = FNV_OFFSET;
+                }
+                word = (word ^ Character.toLowerCase(c)) * FNV_PRIME;
+            } else {
+                endWord();
+                inTag = c == '<';
+            }
+        }
+    }
+
+    /**
+     * @return the SimHash of the text fed since the last reset, or NONE if there was too little of it
+     */
+    public long value() {
+        endWord();
+        if (shingles < MIN_SHINGLES) {
+            return NONE;
+        }
+        long value = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (weights[bit] > 0) {
+                value |= 1L << bit;
+            }
+        }
+        // NONE is kept for pages without a SimHash
+        return value != NONE ? value : 1;
+    }
+
+    /**
+     * @return the number of bits in which the two SimHashes differ
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private void endWord() {
+        if (!inWord) {
+            return;
+        }
+        inWord = false;
+        words[wordCount++ % SHINGLE_WORDS] = word;
+        if (wordCount >= SHINGLE_WORDS) {
+            long shingle = 0;
+            for (int i = 0; i < SHINGLE_WORDS; i++) {
+                // Rotated by position so the same words in another order are another shingle
+                shingle ^= Long.rotateLeft(words[(wordCount + i) % SHINGLE_WORDS], 21 * i);
+            }
+            shingle = mix(shingle);
+            for (int bit = 0; bit < Long.SIZE; bit++) {
+                weights[bit] += (int) ((shingle >>> bit) & 1) * 2 - 1;
+            }
+            shingles++;
+        }
+    }
+
+    // The finalizer of SplitMix64, so every bit of a shingle hash depends on every bit of its words
+    private static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
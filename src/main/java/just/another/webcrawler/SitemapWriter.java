@@ -0,0 +1,133 @@
+package just.another.webcrawler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Set;
+
+/**
+ * Writes the LinkGraph of a site as indented text.
+ *
+ * Pages are walked depth first with an explicit stack so deep sites can't overflow the thread's stack, and each page is
+ * written once, the first time it is reached. Lines are encoded into one large buffer that is only written to the
+ * channel when full and indentation is copied from a reused run of spaces.
+ */
+public class SitemapWriter {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int INDENT = 2;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private byte[] spaces = new byte[0];
+
+    public SitemapWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    SitemapWriter(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Writes every page of the graph, a page reached from many parents is written under the first only
+     */
+    public void write(LinkGraph graph) throws IOException {
+        if (graph.size() > 0) {
+            BitSet written = new BitSet(graph.size());
+            // The stack holds the node at each level along with the index of the next link to follow from it
+            int[] nodes = new int[16];
+            int[] nextLinks = new int[16];
+            boolean[] headersWritten = new boolean[16];
+            int top = 0;
+            written.set(0);
+            writePage(graph, 0, 0);
+            while (top >= 0) {
+                int node = nodes[top];
+                if (nextLinks[top] == graph.linkCount(node)) {
+                    top--;
+                    continue;
+                }
+                int link = graph.link(node, nextLinks[top]++);
+                if (written.get(link)) {
+                    continue;
+                }
+                written.set(link);
+                int depth = top * 2;
+                if (!headersWritten[top]) {
+                    headersWritten[top] = true;
+                    line(depth + 1, "Internal links");
+                }
+                if (++top == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, top * 2);
+                    nextLinks = Arrays.copyOf(nextLinks, top * 2);
+                    headersWritten = Arrays.copyOf(headersWritten, top * 2);
+                }
+                nodes[top] = link;
+                nextLinks[top] = 0;
+                headersWritten[top] = false;
+                writePage(graph, link, depth + 2);
+            }
+        }
+        drain();
+    }
+
+    // Writes everything but the internal links, which are written as the stack unwinds
+    private void writePage(LinkGraph graph, int node, int depth) throws IOException {
+        line(depth, graph.url(node));
+        lines(depth + 1, "Images", graph.images(node));
+        lines(depth + 1, "ExternalLinks", graph.externalLinks(node));
+    }
+
+    private void lines(int depth, String header, Set<String> values) throws IOException {
+        if (!values.isEmpty()) {
+            line(depth, header);
+            for (String value : values) {
+                line(depth + 1, value);
+            }
+        }
+    }
+
+    private void line(int depth, CharSequence text) throws IOException {
+        int indent = depth * INDENT;
+        if (spaces.length < indent) {
+            spaces = new byte[Math.max(indent, spaces.length * 2)];
+            Arrays.fill(spaces, (byte) ' ');
+        }
+        for (int written = 0; written < indent; ) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int n = Math.min(indent - written, buffer.remaining());
+            buffer.put(spaces, written, n);
+            written += n;
+        }
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            drain();
+        }
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) '\n');
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
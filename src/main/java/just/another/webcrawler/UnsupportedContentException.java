@@ -0,0 +1,16 @@
+package just.another.webcrawler;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the UrlReader when the headers of a response show that its body isn't a page to find links in, the body
+ * isn't read.
+ */
+public class UnsupportedContentException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UnsupportedContentException(String message) {
+        super(message);
+    }
+}
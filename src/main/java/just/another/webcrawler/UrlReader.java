@@ -1,21 +1,690 @@
 package just.another.webcrawler;
 
-import java.io.BufferedReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.URL;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.StandardCharsets;
-
-import static java.util.stream.Collectors.joining;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 /**
  * Simple class that reads the contents of a URL. Having this in it's own class allows for mocking in test.
+ *
+ * Content can be streamed straight into a LinkExtractor in bounded chunks so that a page is never held in memory as a
+ * whole. The byte and char buffers used to decode a response are pooled and reused, there is never more than one set
+ * per concurrent reader. Bodies larger than the maximum body size are truncated.
+ *
+ * Given the version of a page from a previous crawl the page is asked for conditionally, with If-None-Match and
+ * If-Modified-Since, and a page that comes back in full is hashed before it is parsed so that content that hasn't
+ * changed isn't parsed again either. Such a page has to be held whole until it is hashed, up to the maximum body size,
+ * in a growable buffer that is pooled like the others. Buffers that grew beyond a MB aren't pooled, so the memory kept
+ * between pages stays small whatever the largest page was.
+ *
+ * Pages are asked for gzip or deflate compressed and inflated as they are streamed, with pooled Inflaters. The charset
+ * a page is decoded in is that of its Content-Type, or else a byte order mark or meta charset in the first KB of the
+ * page, or else UTF-8. The bytes counted in the CrawlMetrics are those received, before they are inflated.
+ *
+ * The headers of a page are checked before its body is read, a response that isn't HTML is closed unread.
  */
 public class UrlReader {
 
+    private static final Logger logger = LoggerFactory.getLogger(UrlReader.class);
+
+    public static final int DEFAULT_MAX_BODY_SIZE = 10 * 1024 * 1024;
+    public static final int DEFAULT_TIMEOUT_SECONDS = 30;
+    private static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+    private static final long CONTENT_HASH_SEED = 0xcbf29ce484222325L;
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    // As much of a page as browsers look through for a meta charset
+    private static final int SNIFF_LENGTH = 1024;
+    private static final int MAX_POOLED_BODY_SIZE = 1024 * 1024;
+
+    private final int maxBodySize;
+    private final int bufferSize;
+    private final int timeoutMillis;
+    private final CrawlMetrics metrics;
+    private final Queue<Buffers> bufferPool = new ConcurrentLinkedQueue<>();
+    private final Queue<Body> bodyPool = new ConcurrentLinkedQueue<>();
+    private final Queue<InflatingInputStream> inflaterPool = new ConcurrentLinkedQueue<>();
+
+    public UrlReader() {
+        this(DEFAULT_MAX_BODY_SIZE);
+    }
+
+    public UrlReader(int maxBodySize) {
+        this(maxBodySize, new CrawlMetrics());
+    }
+
+    /**
+     * @param metrics counts the bytes of every body read
+     */
+    public UrlReader(int maxBodySize, CrawlMetrics metrics) {
+        this(maxBodySize, DEFAULT_BUFFER_SIZE, (int) TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT_SECONDS), metrics);
+    }
+
+    /**
+     * @param timeoutMillis how long to wait to connect to a host or for the next bytes of a response
+     */
+    public UrlReader(int maxBodySize, long timeoutMillis, CrawlMetrics metrics) {
+        this(maxBodySize, DEFAULT_BUFFER_SIZE, (int) timeoutMillis, metrics);
+    }
+
+    UrlReader(int maxBodySize, int bufferSize) {
+        this(maxBodySize, bufferSize, new CrawlMetrics());
+    }
+
+    UrlReader(int maxBodySize, int bufferSize, CrawlMetrics metrics) {
+        this(maxBodySize, bufferSize, (int) TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT_SECONDS), metrics);
+    }
+
+    UrlReader(int maxBodySize, int bufferSize, int timeoutMillis, CrawlMetrics metrics) {
+        this.maxBodySize = maxBodySize;
+        this.bufferSize = bufferSize;
+        this.timeoutMillis = timeoutMillis;
+        this.metrics = metrics;
+    }
+
     public String read(String url) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new URL(url).openConnection().getInputStream(), StandardCharsets.UTF_8))) {
-            return reader.lines().collect(joining("\n"));
+        StringBuilder content = new StringBuilder();
+        FetchResponse response = open(url, requestHeaders(null));
+        CountingInputStream received = new CountingInputStream(response.getBody());
+        try (InputStream raw = received; InputStream in = decompress(url, response, raw)) {
+            decode(url, in, charsetOf(response.getHeader("Content-Type")), content::append);
+        } finally {
+            metrics.bytesRead(received.count);
+        }
+        return content.toString();
+    }
+
+    /**
+     * Streams the content of the url into the extractor, the caller is responsible for beginning and ending the page.
+     * Nothing is read of a response that ContentTypes says isn't a page.
+     *
+     * @param previous the version of the page read by a previous crawl, or null
+     * @return the version read. If its content hash is that of the previous version the page hasn't changed and
+     * nothing was fed to the extractor
+     * @throws UnsupportedContentException if the response isn't a page
+     */
+    public PageVersion read(String url, PageVersion previous, LinkExtractor extractor) throws IOException {
+        return read(url, previous, extractor, responseUrl -> { });
+    }
+
+    /**
+     * As read, but also tells the url the page came from, after any redirects, which is what its relative links are
+     * resolved against
+     *
+     * @param responseUrl given the url of the response before anything is fed to the extractor
+     */
+    public PageVersion read(String url, PageVersion previous, LinkExtractor extractor, Consumer<String> responseUrl) throws IOException {
+        FetchResponse response = open(url, requestHeaders(previous));
+        if (response.getStatus() != HttpURLConnection.HTTP_NOT_MODIFIED) {
+            String rejection = ContentTypes.rejection(response.getHeader("Content-Type"), response.getHeader("Content-Length"), maxBodySize);
+            if (rejection != null) {
+                // Closing the body would download what is left of it to keep the connection alive
+                response.abort();
+                throw new UnsupportedContentException("Not reading " + url + ", " + rejection);
+            }
+        }
+        responseUrl.accept(response.getUrl() != null ? response.getUrl() : url);
+        String etag = response.getHeader("ETag");
+        String lastModified = response.getHeader("Last-Modified");
+        Charset charset = charsetOf(response.getHeader("Content-Type"));
+        CountingInputStream received = new CountingInputStream(response.getBody());
+        try (InputStream raw = received; InputStream in = decompress(url, response, raw)) {
+            if (previous == null) {
+                return new PageVersion(etag, lastModified, decode(url, in, charset, extractor::feed));
+            }
+            if (response.getStatus() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return new PageVersion(etag != null ? etag : previous.getEtag(),
+                        lastModified != null ? lastModified : previous.getLastModified(), previous.getContentHash());
+            }
+            Body body = readBody(url, in);
+            try {
+                long contentHash = hash(CONTENT_HASH_SEED, body.bytes, 0, body.length);
+                if (contentHash != previous.getContentHash()) {
+                    decode(url, new ByteArrayInputStream(body.bytes, 0, body.length), charset, extractor::feed);
+                }
+                return new PageVersion(etag, lastModified, contentHash);
+            } finally {
+                if (body.bytes.length <= MAX_POOLED_BODY_SIZE) {
+                    bodyPool.offer(body);
+                }
+            }
+        } finally {
+            metrics.bytesRead(received.count);
+        }
+    }
+
+    /**
+     * Sends a GET for the url with the given request headers
+     *
+     * @throws HttpStatusException if the server responds with an error status
+     */
+    protected FetchResponse open(String url, Map<String, String> requestHeaders) throws IOException {
+        URLConnection connection;
+        try {
+            connection = new URI(url).toURL().openConnection();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("Invalid url " + url, e);
+        }
+        requestHeaders.forEach(connection::setRequestProperty);
+        // Without them a host that stops answering holds the crawler, and anyone waiting on its robots.txt, forever
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        int status = HttpURLConnection.HTTP_OK;
+        Closeable abort = null;
+        if (connection instanceof HttpURLConnection) {
+            HttpURLConnection http = (HttpURLConnection) connection;
+            status = http.getResponseCode();
+            if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                // Closed rather than left to getInputStream to fail on, so the connection can be kept alive
+                InputStream error = http.getErrorStream();
+                if (error != null) {
+                    error.close();
+                }
+                throw new HttpStatusException(status, url);
+            }
+            abort = http::disconnect;
+        }
+        // A 304 has an empty body
+        InputStream body = connection.getInputStream();
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (header.getKey() != null) {
+                headers.put(header.getKey().toLowerCase(Locale.ROOT), String.join(",", header.getValue()));
+            }
+        }
+        // Closing the JDK's keep alive stream drains a short body rather than dropping the connection, disconnect doesn't
+        return new FetchResponse(status, headers, body, abort != null ? abort : body, connection.getURL().toString());
+    }
+
+    private static Map<String, String> requestHeaders(PageVersion previous) {
+        Map<String, String> headers = new HashMap<>();
+        // The agent whose robots.txt group is obeyed, rather than the JVM's own
+        headers.put("User-Agent", RobotsCache.USER_AGENT);
+        headers.put("Accept-Encoding", ACCEPT_ENCODING);
+        if (previous != null && previous.getEtag() != null) {
+            headers.put("If-None-Match", previous.getEtag());
+        }
+        if (previous != null && previous.getLastModified() != null) {
+            headers.put("If-Modified-Since", previous.getLastModified());
+        }
+        return headers;
+    }
+
+    /**
+     * Reads the body whole into a pooled buffer, straight from the stream, that the caller must return to the pool
+     */
+    private Body readBody(String url, InputStream in) throws IOException {
+        Body body = bodyPool.poll();
+        if (body == null) {
+            body = new Body(Math.min(bufferSize, maxBodySize));
+        }
+        body.length = 0;
+        while (true) {
+            if (body.length == body.bytes.length) {
+                if (body.length >= maxBodySize) {
+                    logger.info("Truncating " + url + " at " + maxBodySize + " bytes");
+                    break;
+                }
+                body.bytes = Arrays.copyOf(body.bytes, (int) Math.min(maxBodySize, 2L * body.bytes.length));
+            }
+            int n = in.read(body.bytes, body.length, body.bytes.length - body.length);
+            if (n < 0) {
+                break;
+            }
+            body.length += n;
+        }
+        return body;
+    }
+
+    // Undoes the Content-Encoding of the body, a maximum body size then applies to the inflated page
+    private InputStream decompress(String url, FetchResponse response, InputStream body) throws IOException {
+        String encoding = response.getHeader("Content-Encoding");
+        if (encoding == null) {
+            return body;
+        }
+        switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+            case "":
+            case "identity":
+                return body;
+            case "gzip":
+            case "x-gzip":
+                return borrowInflater().reset(body, true);
+            case "deflate":
+                return borrowInflater().reset(body, false);
+            default:
+                throw new IOException("Unsupported Content-Encoding " + encoding + " for " + url);
+        }
+    }
+
+    long decode(String url, InputStream in, Consumer<CharSequence> sink) throws IOException {
+        return decode(url, in, null, sink);
+    }
+
+    /**
+     * Decodes the content into the sink
+     *
+     * @param charset the charset of the content or null to look for one in the content itself
+     * @return the hash of the bytes that were decoded
+     */
+    long decode(String url, InputStream in, Charset charset, Consumer<CharSequence> sink) throws IOException {
+        Buffers buffers = borrowBuffers();
+        try {
+            ByteBuffer bytes = buffers.bytes;
+            CharBuffer chars = buffers.chars;
+            CharsetDecoder decoder = null;
+            bytes.clear();
+            long contentHash = CONTENT_HASH_SEED;
+            long total = 0;
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                int n = in.read(bytes.array(), bytes.position(), (int) Math.min(bytes.remaining(), maxBodySize - total));
+                if (n < 0) {
+                    endOfInput = true;
+                } else {
+                    contentHash = hash(contentHash, bytes.array(), bytes.position(), n);
+                    bytes.position(bytes.position() + n);
+                    total += n;
+                    if (total >= maxBodySize) {
+                        logger.info("Truncating " + url + " at " + maxBodySize + " bytes");
+                        endOfInput = true;
+                    }
+                }
+                if (decoder == null) {
+                    // Nothing is decoded until there is enough of the page to look for a meta charset in
+                    if (charset == null && !endOfInput && bytes.position() < SNIFF_LENGTH && bytes.hasRemaining()) {
+                        continue;
+                    }
+                    decoder = buffers.decoder(charset != null ? charset : sniffCharset(bytes.array(), 0, bytes.position()));
+                }
+                bytes.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(bytes, chars, endOfInput);
+                    drain(chars, sink);
+                } while (result.isOverflow());
+                bytes.compact();
+            }
+            while (decoder.flush(chars).isOverflow()) {
+                drain(chars, sink);
+            }
+            drain(chars, sink);
+            return contentHash;
+        } finally {
+            bufferPool.offer(buffers);
+        }
+    }
+
+    /**
+     * @return the charset of a Content-Type header, or null if it has none that is supported
+     */
+    static Charset charsetOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int i = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (i < 0) {
+            return null;
+        }
+        int start = i + "charset=".length();
+        int end = start;
+        while (end < contentType.length() && contentType.charAt(end) != ';' && !Character.isWhitespace(contentType.charAt(end))) {
+            end++;
+        }
+        return charsetNamed(contentType.substring(start, end).replace("\"", "").replace("'", ""));
+    }
+
+    /**
+     * Looks for a byte order mark or, as browsers do, a meta charset, whether as a charset attribute or within the
+     * content of an http-equiv Content-Type
+     *
+     * @return the charset the start of the page declares, or UTF-8 if it declares none that is supported
+     */
+    static Charset sniffCharset(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        if (length >= 3 && (bytes[offset] & 0xff) == 0xef && (bytes[offset + 1] & 0xff) == 0xbb && (bytes[offset + 2] & 0xff) == 0xbf) {
+            return StandardCharsets.UTF_8;
+        }
+        if (length >= 2 && ((bytes[offset] & 0xff) == 0xfe && (bytes[offset + 1] & 0xff) == 0xff
+                || (bytes[offset] & 0xff) == 0xff && (bytes[offset + 1] & 0xff) == 0xfe)) {
+            return StandardCharsets.UTF_16;
+        }
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] != '<' || !regionMatchesIgnoreCase(bytes, i + 1, end, "meta")) {
+                continue;
+            }
+            int tagEnd = i + 1;
+            while (tagEnd < end && bytes[tagEnd] != '>') {
+                tagEnd++;
+            }
+            for (int j = i + 5; j < tagEnd; j++) {
+                if (!regionMatchesIgnoreCase(bytes, j, tagEnd, "charset")) {
+                    continue;
+                }
+                int k = j + "charset".length();
+                while (k < tagEnd && bytes[k] == ' ') {
+                    k++;
+                }
+                if (k == tagEnd || bytes[k] != '=') {
+                    continue;
+                }
+                k++;
+                while (k < tagEnd && (bytes[k] == ' ' || bytes[k] == '"' || bytes[k] == '\'')) {
+                    k++;
+                }
+                int start = k;
+                while (k < tagEnd && isCharsetNameByte(bytes[k])) {
+                    k++;
+                }
+                Charset charset = charsetNamed(new String(bytes, start, k - start, StandardCharsets.US_ASCII));
+                if (charset != null) {
+                    // A page that could be read far enough to find its meta in ascii can't really be UTF-16
+                    return charset.name().startsWith("UTF-16") ? StandardCharsets.UTF_8 : charset;
+                }
+            }
+            i = tagEnd;
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static Charset charsetNamed(String name) {
+        try {
+            return name.isEmpty() ? null : Charset.forName(name);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            return null;
+        }
+    }
+
+    private static boolean isCharsetNameByte(byte b) {
+        return b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9' || b == '-' || b == '_' || b == '.' || b == ':';
+    }
+
+    private static boolean regionMatchesIgnoreCase(byte[] bytes, int offset, int end, String lowerCase) {
+        if (end - offset < lowerCase.length()) {
+            return false;
+        }
+        for (int i = 0; i < lowerCase.length(); i++) {
+            int b = bytes[offset + i];
+            if ((b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b) != lowerCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // FNV-1a, cheap next to decoding and with 64 bits a changed page is all but certain to hash differently
+    private static long hash(long hash, byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= bytes[i] & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private void drain(CharBuffer chars, Consumer<CharSequence> sink) {
+        chars.flip();
+        if (chars.hasRemaining()) {
+            sink.accept(chars);
+        }
+        chars.clear();
+    }
+
+    private Buffers borrowBuffers() {
+        Buffers buffers = bufferPool.poll();
+        return buffers != null ? buffers : new Buffers(bufferSize);
+    }
+
+    private InflatingInputStream borrowInflater() {
+        InflatingInputStream inflater = inflaterPool.poll();
+        return inflater != null ? inflater : new InflatingInputStream(bufferSize, inflaterPool);
+    }
+
+    private static class Buffers {
+
+        private final ByteBuffer bytes;
+        private final CharBuffer chars;
+        private CharsetDecoder decoder = newDecoder(StandardCharsets.UTF_8);
+
+        Buffers(int size) {
+            bytes = ByteBuffer.allocate(size);
+            chars = CharBuffer.allocate(size);
+        }
+
+        // The decoder of the last charset is kept, nearly every page of a site is in the same one
+        CharsetDecoder decoder(Charset charset) {
+            if (!decoder.charset().equals(charset)) {
+                decoder = newDecoder(charset);
+            }
+            return decoder.reset();
+        }
+
+        private static CharsetDecoder newDecoder(Charset charset) {
+            return charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+    }
+
+    /**
+     * The bytes of a whole body, in an array that grows as needed up to the maximum body size and is then reused
+     */
+    private static final class Body {
+
+        private byte[] bytes;
+        private int length;
+
+        Body(int size) {
+            bytes = new byte[Math.max(1, size)];
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Inflates a gzip or deflate body through an Inflater and input buffer that are handed back to the pool on close.
+     *
+     * Both are raw deflate once the gzip or zlib header is skipped, servers that send deflate without the zlib header
+     * are handled too. The trailer isn't verified, pages are routinely truncated at the maximum body size before it
+     * is reached anyway.
+     */
+    private static final class InflatingInputStream extends InputStream {
+
+        private static final int GZIP_FEXTRA = 4;
+        private static final int GZIP_FNAME = 8;
+        private static final int GZIP_FCOMMENT = 16;
+        private static final int GZIP_FHCRC = 2;
+
+        private final Inflater inflater = new Inflater(true);
+        private final byte[] input;
+        private final byte[] single = new byte[1];
+        private final Queue<InflatingInputStream> pool;
+        private InputStream in;
+        private boolean gzip;
+        private boolean started;
+        private int position;
+        private int limit;
+
+        InflatingInputStream(int bufferSize, Queue<InflatingInputStream> pool) {
+            this.input = new byte[bufferSize];
+            this.pool = pool;
+        }
+
+        InflatingInputStream reset(InputStream in, boolean gzip) {
+            this.in = in;
+            this.gzip = gzip;
+            started = false;
+            position = 0;
+            limit = 0;
+            inflater.reset();
+            return this;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (!started) {
+                skipHeader();
+                inflater.setInput(input, position, limit - position);
+                started = true;
+            }
+            try {
+                while (len > 0) {
+                    if (inflater.finished()) {
+                        return -1;
+                    }
+                    int n = inflater.inflate(b, off, len);
+                    if (n > 0) {
+                        return n;
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new ZipException("Deflate streams with a preset dictionary aren't supported");
+                    }
+                    if (inflater.needsInput()) {
+                        limit = in.read(input);
+                        if (limit < 0) {
+                            throw new EOFException("Unexpected end of compressed body");
+                        }
+                        inflater.setInput(input, 0, limit);
+                    }
+                }
+                return 0;
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                try {
+                    in.close();
+                } finally {
+                    in = null;
+                    pool.offer(this);
+                }
+            }
+        }
+
+        private void skipHeader() throws IOException {
+            if (gzip) {
+                if (next() != 0x1f || next() != 0x8b || next() != 8) {
+                    throw new ZipException("Not a gzip body");
+                }
+                int flags = next();
+                skip(6);
+                if ((flags & GZIP_FEXTRA) != 0) {
+                    skip(next() | next() << 8);
+                }
+                if ((flags & GZIP_FNAME) != 0) {
+                    skipString();
+                }
+                if ((flags & GZIP_FCOMMENT) != 0) {
+                    skipString();
+                }
+                if ((flags & GZIP_FHCRC) != 0) {
+                    skip(2);
+                }
+            } else {
+                require(2);
+                int cmf = input[position] & 0xff;
+                int flg = input[position + 1] & 0xff;
+                if ((cmf & 0x0f) == 8 && (cmf << 8 | flg) % 31 == 0) {
+                    position += 2;
+                }
+            }
+        }
+
+        private int next() throws IOException {
+            require(1);
+            return input[position++] & 0xff;
+        }
+
+        private void skipString() throws IOException {
+            int b;
+            do {
+                b = next();
+            } while (b != 0);
+        }
+
+        private void skip(int n) throws IOException {
+            for (int i = 0; i < n; i++) {
+                next();
+            }
+        }
+
+        // Reads until at least n bytes are buffered, moving those still unread to the front
+        private void require(int n) throws IOException {
+            if (limit - position >= n) {
+                return;
+            }
+            System.arraycopy(input, position, input, 0, limit - position);
+            limit -= position;
+            position = 0;
+            while (limit < n) {
+                int read = in.read(input, limit, input.length - limit);
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of compressed body");
+                }
+                limit += read;
+            }
         }
     }
 }
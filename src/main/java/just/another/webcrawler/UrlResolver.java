@@ -0,0 +1,239 @@
+package just.another.webcrawler;
+
+/**
+ * Resolves the links found on a page against the url of the page, or its base href, as RFC 3986 describes.
+ *
+ * The url resolved against is parsed once, when the resolver is created, and every link is then resolved in a single
+ * pass into a reused buffer so that the only thing allocated per link is the resulting String. Along the way the link
+ * is normalized the way the crawler has always compared urls:
+ *
+ *   - Surrounding whitespace and any quotes are dropped
+ *   - The query and fragment are dropped
+ *   - The scheme and host are lower cased and a default port is dropped
+ *   - Dot segments are removed from the path
+ *   - A trailing slash is dropped
+ *
+ * A resolver keeps its buffers between calls so a single instance should not be shared between threads.
+ */
+public class UrlResolver {
+
+    private final String origin;
+    private final String scheme;
+    private final String path;
+    private final String directory;
+    private final StringBuilder link = new StringBuilder();
+    private final StringBuilder out = new StringBuilder();
+
+    /**
+     * @param url the absolute url of the page links are resolved against
+     */
+    public UrlResolver(String url) {
+        String normalized = resolve(url, "", "", "/", "/", true);
+        int schemeEnd = schemeEnd(normalized);
+        scheme = schemeEnd > 0 ? normalized.substring(0, schemeEnd) : "";
+        int authorityEnd = schemeEnd > 0 && normalized.startsWith("//", schemeEnd + 1) ? pathStart(normalized, schemeEnd + 3) : 0;
+        origin = normalized.substring(0, authorityEnd);
+        // A url without a path, such as http://host, resolves relative links as if it were http://host/
+        path = authorityEnd < normalized.length() ? normalized.substring(authorityEnd) : "/";
+        directory = path.substring(0, path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @return the url normalized as links resolved against it would be
+     */
+    public static String normalize(String url) {
+        return new UrlResolver(url).resolve(url);
+    }
+
+    /**
+     * @return the normalized absolute url of the link
+     */
+    public String resolve(CharSequence href) {
+        return resolve(href, origin, scheme, path, directory, false);
+    }
+
+    /**
+     * @return a resolver for the links of a page that gives this base href, which is itself resolved against this
+     */
+    public UrlResolver resolveBase(CharSequence href) {
+        // The trailing slash of a base href is kept as it marks the directory links are resolved from
+        return new UrlResolver(resolve(href, origin, scheme, path, directory, true));
+    }
+
+    private String resolve(CharSequence href, String origin, String scheme, String path, String directory, boolean keepTrailingSlash) {
+        copyLink(href);
+        out.setLength(0);
+        int schemeEnd = schemeEnd(link);
+        int pathStart = 0;
+        int rootLength;
+        if (schemeEnd > 0) {
+            appendLowerCase(link, 0, schemeEnd);
+            if (!startsWith(link, schemeEnd + 1, "//")) {
+                // Not hierarchical, mailto: or javascript: and the like, there is nothing else to normalize
+                out.append(link, schemeEnd, link.length());
+                return out.toString();
+            }
+            out.append("://");
+            pathStart = appendAuthority(out, schemeEnd, schemeEnd + 3);
+            rootLength = out.append('/').length();
+        } else if (startsWith(link, 0, "//")) {
+            out.append(scheme).append("://");
+            pathStart = appendAuthority(scheme, scheme.length(), 2);
+            rootLength = out.append('/').length();
+        } else if (link.length() == 0) {
+            out.append(origin).append(path);
+            rootLength = out.length();
+        } else if (link.charAt(0) == '/') {
+            rootLength = out.append(origin).append('/').length();
+        } else {
+            out.append(origin).append(directory);
+            rootLength = origin.length() + 1;
+        }
+        // The root is already written so a leading slash is skipped
+        appendPath(pathStart < link.length() && link.charAt(pathStart) == '/' ? pathStart + 1 : pathStart, rootLength);
+        if (!keepTrailingSlash && out.length() > 0 && out.charAt(out.length() - 1) == '/') {
+            out.setLength(out.length() - 1);
+        }
+        return out.toString();
+    }
+
+    // Copies the link into the buffer without surrounding whitespace, quotes, the query or fragment
+    private void copyLink(CharSequence href) {
+        link.setLength(0);
+        int start = 0;
+        int end = href.length();
+        while (start < end && href.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && href.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            char c = href.charAt(i);
+            if (c == '?' || c == '#') {
+                break;
+            }
+            if (c != '"' && c != '\'') {
+                link.append(c);
+            }
+        }
+    }
+
+    // Appends the segments of the link from start, removing dot segments, onto a path that ends with a slash
+    private void appendPath(int start, int rootLength) {
+        int i = start;
+        while (i < link.length()) {
+            int end = i;
+            while (end < link.length() && link.charAt(end) != '/') {
+                end++;
+            }
+            boolean last = end == link.length();
+            if (isDot(i, end)) {
+                // Dropped, the path already ends with a slash
+            } else if (isDoubleDot(i, end)) {
+                // Back to the slash before the last segment, never above the root
+                int previous = out.length() - 1;
+                while (previous > rootLength - 1 && out.charAt(previous - 1) != '/') {
+                    previous--;
+                }
+                out.setLength(Math.max(rootLength, previous));
+            } else {
+                out.append(link, i, end);
+                if (!last) {
+                    out.append('/');
+                }
+            }
+            i = end + 1;
+        }
+    }
+
+    // Appends the lower cased authority from start, without a default or empty port, and returns where the path starts
+    private int appendAuthority(CharSequence scheme, int schemeLength, int start) {
+        int end = pathStart(link, start);
+        int hostStart = start;
+        for (int i = start; i < end; i++) {
+            if (link.charAt(i) == '@') {
+                hostStart = i + 1;
+            }
+        }
+        out.append(link, start, hostStart);
+        int portStart = end;
+        for (int i = end - 1; i >= hostStart && link.charAt(i) != ']'; i--) {
+            if (link.charAt(i) == ':') {
+                portStart = i;
+                break;
+            }
+        }
+        appendLowerCase(link, hostStart, portStart);
+        if (portStart < end && !isDefaultPort(scheme, schemeLength, portStart + 1, end)) {
+            out.append(link, portStart, end);
+        }
+        return end;
+    }
+
+    // The scheme is either that of the page or the lower cased start of the output
+    private boolean isDefaultPort(CharSequence scheme, int schemeLength, int start, int end) {
+        return start == end
+                || regionEquals(scheme, 0, schemeLength, "http") && regionEquals(link, start, end, "80")
+                || regionEquals(scheme, 0, schemeLength, "https") && regionEquals(link, start, end, "443");
+    }
+
+    private static boolean regionEquals(CharSequence value, int start, int end, String expected) {
+        return end - start == expected.length() && startsWith(value, start, expected);
+    }
+
+    private boolean isDot(int start, int end) {
+        return end - start == 1 && link.charAt(start) == '.';
+    }
+
+    private boolean isDoubleDot(int start, int end) {
+        return end - start == 2 && link.charAt(start) == '.' && link.charAt(start + 1) == '.';
+    }
+
+    private void appendLowerCase(CharSequence value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            out.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+    }
+
+    // The index of the colon that ends the scheme, or -1 if the value doesn't start with one
+    private static int schemeEnd(CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ':') {
+                return i > 0 ? i : -1;
+            }
+            boolean letter = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+            if (!letter && (i == 0 || !(c >= '0' && c <= '9' || c == '+' || c == '-' || c == '.'))) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int pathStart(CharSequence value, int authorityStart) {
+        int i = authorityStart;
+        while (i < value.length() && value.charAt(i) != '/') {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean startsWith(CharSequence value, int offset, String prefix) {
+        if (value.length() - offset < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (value.charAt(offset + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return origin + directory;
+    }
+}
@@ -0,0 +1,52 @@
+package just.another.webcrawler;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Scores the urls queued on a PriorityFrontier, the lower the score the sooner a url is crawled. Scorers can be added
+ * together so that depth can be weighed up against any other heuristic.
+ */
+@FunctionalInterface
+public interface UrlScorer {
+
+    /**
+     * @param depth the number of links followed from the base url to find the url
+     */
+    double score(String url, int depth);
+
+    default UrlScorer plus(UrlScorer other) {
+        return (url, depth) -> score(url, depth) + other.score(url, depth);
+    }
+
+    /**
+     * Breadth first, the pages nearest the base url are usually the ones that matter most
+     */
+    static UrlScorer depth() {
+        return (url, depth) -> depth;
+    }
+
+    /**
+     * Holds back urls whose path repeats a segment, like /a/b/a/b, which is what the endless links of calendars and
+     * badly relative links tend to look like
+     *
+     * @param penalty added to the score for every segment that repeats an earlier one
+     */
+    static UrlScorer repeatedSegments(double penalty) {
+        return (url, depth) -> {
+            int start = url.indexOf("://");
+            int path = url.indexOf('/', start < 0 ? 0 : start + 3);
+            if (path < 0) {
+                return 0;
+            }
+            Set<String> segments = new HashSet<>();
+            int repeats = 0;
+            for (String segment : url.substring(path + 1).split("/")) {
+                if (!segment.isEmpty() && !segments.add(segment)) {
+                    repeats++;
+                }
+            }
+            return repeats * penalty;
+        };
+    }
+}
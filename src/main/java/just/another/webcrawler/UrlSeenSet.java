@@ -0,0 +1,34 @@
+package just.another.webcrawler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Remembers every url that has been discovered so that each one is only queued once. Implementations must be safe to
+ * use from many crawlers at once.
+ */
+public interface UrlSeenSet {
+
+    /**
+     * @return true if the url had not been seen before
+     */
+    boolean add(String url);
+
+    /**
+     * Adds every url in one go, which implementations can do with far less locking than adding them one at a time
+     *
+     * @return the urls that had not been seen before, in the order given
+     */
+    default List<String> addAll(Collection<String> urls) {
+        List<String> added = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            if (add(url)) {
+                added.add(url);
+            }
+        }
+        return added;
+    }
+
+    long size();
+}
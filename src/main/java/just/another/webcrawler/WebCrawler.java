@@ -3,65 +3,229 @@ package just.another.webcrawler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.PrintStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.System.exit;
-import static java.util.stream.Collectors.joining;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 
 /**
  * The main point of entry.
  *
- * A WebCrawler submits PageCrawlers and waits for a result before gathering textual output which it writes to a file.
+ * A WebCrawler submits PageCrawlers and waits for a result before streaming the site map to a file.
+ *
+ * Crawlers either run as nThreads long lived workers on a fixed pool or, in virtual mode, one page at a time on a new
+ * virtual thread per page. In virtual mode nThreads only caps how many pages are in flight at once.
  */
 public class WebCrawler {
 
     private static final Logger logger = LoggerFactory.getLogger(WebCrawler.class);
 
-    private static final String INDENT = "  ";
-    private static final String OUTPUT_FILE = "sitemap.txt";
+    private static final String OUTPUT_NAME = "sitemap";
+    private static final String OUTPUT_FILE = OUTPUT_NAME + ".txt";
+    // Enough to put a url that repeats a segment behind those a few links deeper
+    private static final double REPEATED_SEGMENT_PENALTY = 3;
 
     private final PageProcessor pageProcessor;
     private final String baseUrl;
     private final int nThreads;
     private final CountDownLatch latch;
-    private final PrintStream out;
+    private final WritableByteChannel out;
     private final PageCrawlerProvider pageCrawlerProvider;
+    private final UrlReader urlReader;
+    private final CrawlOptions.Execution execution;
 
-    public static void main(String[] args) throws FileNotFoundException {
-        String baseUrl;
-        int nThreads;
+    public static void main(String[] args) throws IOException {
+        CrawlOptions options;
         try {
-            baseUrl = args[0];
-            nThreads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+            options = CrawlOptions.parse(args);
         } catch (Exception e) {
-            System.err.println("Usage: web-crawler <site> [threads]\n" +
-                    "   site     The absolute URL of the site to crawl\n" +
-                    "   threads  The number of concurrent threads. Defaults to 1. Some sites may refuse to serve content if too many requests are made from the same ip.");
+            System.err.println(CrawlOptions.USAGE);
             exit(0);
             return;
         }
 
-        PageProcessor pageProcessor = new PageProcessor(baseUrl, nThreads);
-        WebCrawler webCrawler = new WebCrawler(pageProcessor, baseUrl, new PrintStream(new FileOutputStream(OUTPUT_FILE)), nThreads, new PageCrawlerProvider());
-        webCrawler.crawl();
+        // Normalized as every link found is, so the site doesn't link back to itself under another name
+        String baseUrl = UrlResolver.normalize(options.getBaseUrl());
+        int nThreads = options.getThreads();
+        boolean offHeap = options.getSeenSet() == CrawlOptions.SeenSet.OFFHEAP;
+        UrlSeenSet seenUrls = FingerprintSeenSet.newBuilder()
+                .withExpectedUrls(options.getExpectedUrls())
+                .withOffHeap(offHeap)
+                .withBloomFilter(offHeap)
+                .build();
+        CrawlMetrics metrics = new CrawlMetrics();
+        metrics.register();
+        CrawlJournal journal = options.getJournal() != null ? new CrawlJournal(Paths.get(options.getJournal())) : null;
+        Map<String, CrawlResult> previousResults = new ConcurrentHashMap<>();
+        if (options.getRecrawl() != null) {
+            CrawlJournal.read(Paths.get(options.getRecrawl()), (url, result) -> {
+                if (result != null) {
+                    previousResults.put(url, result);
+                }
+            });
+        }
+        DnsCache dnsCache = new DnsCache(TimeUnit.SECONDS.toMillis(options.getDnsTtl()));
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(options.getTimeout());
+        NioFetchEngine engine = null;
+        UrlReader urlReader;
+        if (options.getFetch() == CrawlOptions.Fetch.NIO) {
+            engine = new NioFetchEngine(options.getSelectors(), options.getConnectionsPerHost(), timeoutMillis, dnsCache);
+            urlReader = new NioUrlReader(options.getMaxBodySize(), timeoutMillis, engine, metrics);
+        } else {
+            urlReader = new UrlReader(options.getMaxBodySize(), timeoutMillis, metrics);
+        }
+        HostWarmer warmer = new HostWarmer(dnsCache, engine);
+        // However many pages of a host are in flight is then up to the frontier, nThreads only caps it
+        int maxInFlight = options.getConcurrency() == CrawlOptions.Concurrency.ADAPTIVE ? nThreads : 0;
+        ClusterFrontier cluster = null;
+        Frontier frontier;
+        if (options.getCluster() != null) {
+            cluster = ClusterFrontier.newBuilder(options.getCluster(), options.getNode())
+                    .withLocal(new PoliteFrontier(options.getRate(), options.getBurst(), false, warmer, maxInFlight))
+                    .withSeenUrls(seenUrls)
+                    .build();
+            frontier = cluster;
+        } else if (options.getFrontier() == CrawlOptions.Frontier.STEALING) {
+            frontier = new WorkStealingFrontier();
+        } else if (options.getFrontier() == CrawlOptions.Frontier.PRIORITY) {
+            frontier = new PriorityFrontier(UrlScorer.depth().plus(UrlScorer.repeatedSegments(REPEATED_SEGMENT_PENALTY)));
+        } else {
+            frontier = new PoliteFrontier(options.getRate(), options.getBurst(), warmer, maxInFlight);
+        }
+        List<CrawlSink> sinks = openSinks(options, baseUrl);
+        // Spilled to the temporary directory rather than the working directory, which holds the site maps and may be
+        // shared by the nodes of a cluster
+        ResultStore results = options.getMaxResultMemory() > 0
+                ? new ResultStore(Paths.get(System.getProperty("java.io.tmpdir")), options.getMaxResultMemory() * (1L << 20))
+                : new ResultStore();
+        PageProcessor pageProcessor = PageProcessor.newBuilder(baseUrl)
+                .withFrontier(frontier)
+                .withSeenUrls(seenUrls)
+                .withJournal(journal)
+                .withPreviousResults(previousResults)
+                .withMetrics(metrics)
+                .withSinks(sinks)
+                .withResultStore(results)
+                .withRobots(options.getRobots() != CrawlOptions.Robots.IGNORE ? new RobotsCache(urlReader) : null)
+                .withSeedFromSitemaps(options.getRobots() == CrawlOptions.Robots.SEED)
+                .withDuplicateIndex(options.getDedup() != CrawlOptions.Dedup.NONE ? new DuplicateIndex(options.getDedup() == CrawlOptions.Dedup.NEAR) : null)
+                .withMaxDepth(options.getMaxDepth())
+                .withMaxPages(options.getMaxPages())
+                .withMaxMillis(TimeUnit.SECONDS.toMillis(options.getMaxTime()))
+                .build();
+        ScheduledExecutorService reporter = null;
+        if (options.getMetricsInterval() > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "crawl-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(() -> logger.info(metrics.summary()),
+                    options.getMetricsInterval(), options.getMetricsInterval(), TimeUnit.SECONDS);
+        }
+        // Only node 0 of a cluster writes the text site map, the others mustn't truncate it if they share a directory
+        boolean writesSiteMap = options.getNode() == 0;
+        boolean text = options.getOutputs().contains(CrawlOptions.Output.TEXT);
+        try (WritableByteChannel out = !text ? null
+                : writesSiteMap ? FileChannel.open(Paths.get(OUTPUT_FILE), CREATE, TRUNCATE_EXISTING, WRITE)
+                : Channels.newChannel(OutputStream.nullOutputStream())) {
+            WebCrawler webCrawler = new WebCrawler(pageProcessor, baseUrl, out, nThreads, new PageCrawlerProvider(metrics), urlReader, options.getExecution());
+            webCrawler.crawl();
+            logger.info(metrics.summary());
+        } finally {
+            if (reporter != null) {
+                reporter.shutdownNow();
+            }
+            if (engine != null) {
+                engine.close();
+            }
+            if (cluster != null) {
+                cluster.close();
+            }
+            if (journal != null) {
+                journal.close();
+            }
+            for (CrawlSink sink : sinks) {
+                sink.close();
+            }
+            results.close();
+        }
     }
 
-    WebCrawler(PageProcessor pageProcessor, String baseUrl, PrintStream out, int nThreads, PageCrawlerProvider pageCrawlerProvider) {
+    // Every node of a cluster writes the pages it crawled itself, node 0 under the usual name and the others under
+    // their own so that nodes can share a directory
+    private static List<CrawlSink> openSinks(CrawlOptions options, String baseUrl) throws IOException {
+        String name = options.getNode() == 0 ? OUTPUT_NAME : OUTPUT_NAME + "-node" + options.getNode();
+        List<CrawlSink> sinks = new ArrayList<>();
+        for (CrawlOptions.Output output : options.getOutputs()) {
+            switch (output) {
+                case XML:
+                    sinks.add(new XmlSitemapSink(Paths.get(""), name, baseUrl));
+                    break;
+                case JSONL:
+                    sinks.add(new JsonlSink(Paths.get(name + ".jsonl")));
+                    break;
+                case BINARY:
+                    sinks.add(new BinarySitemapSink(Paths.get(name + ".bin")));
+                    break;
+                default:
+                    // The text site map is written from the whole LinkGraph once the crawl is over
+            }
+        }
+        return sinks;
+    }
+
+    WebCrawler(PageProcessor pageProcessor, String baseUrl, WritableByteChannel out, int nThreads, PageCrawlerProvider pageCrawlerProvider, UrlReader urlReader, CrawlOptions.Execution execution) {
         this.baseUrl = baseUrl;
         this.pageProcessor = pageProcessor;
         this.pageCrawlerProvider = pageCrawlerProvider;
+        this.urlReader = urlReader;
+        this.execution = execution;
         this.nThreads = nThreads;
         this.out = out;
         latch = new CountDownLatch(nThreads);
     }
 
-    public void crawl() {
-        UrlReader urlReader = new UrlReader();
+    /**
+     * Crawls the site and then, unless there is no channel to write it to, writes the text site map
+     */
+    public void crawl() throws IOException {
+        if (execution == CrawlOptions.Execution.VIRTUAL) {
+            crawlOnVirtualThreads();
+        } else {
+            crawlOnThreadPool();
+        }
+
+        if (out == null) {
+            return;
+        }
+        LinkGraph siteMap = pageProcessor.getSiteMap();
+        if (siteMap != null) {
+            logger.info("Writing site map to " + OUTPUT_FILE);
+            new SitemapWriter(out).write(siteMap);
+        }
+    }
+
+    private void crawlOnThreadPool() {
         ExecutorService executorService = Executors.newFixedThreadPool(nThreads);
         for (int i = 0; i < nThreads; i++) {
             executorService.submit(() -> {
@@ -78,43 +242,38 @@ public class WebCrawler {
         } finally {
             executorService.shutdown();
         }
-
-        Page siteMap = pageProcessor.getSiteMap();
-
-        logger.info("Writing site map to " + OUTPUT_FILE);
-        outputPage(siteMap, "");
-    }
-
-    private void outputPage(Page page, String prefix) {
-        out.println(prefix + page.getName());
-        prefix += INDENT;
-        outputImages(page, prefix);
-        outputExternalLinks(page, prefix);
-        outputInternalLinks(page, prefix);
-    }
-
-    private void outputImages(Page page, String prefix) {
-        if (!page.getImages().isEmpty()) {
-            out.println(prefix + "Images");
-            prefix += INDENT;
-            out.print(page.getImages().stream().collect(joining("\n" + prefix, prefix, "\n")));
-        }
     }
 
-    private void outputExternalLinks(Page page, String prefix) {
-        if (!page.getExternalLinks().isEmpty()) {
-            out.println(prefix + "ExternalLinks");
-            prefix += INDENT;
-            out.print(page.getExternalLinks().stream().collect(joining("\n" + prefix, prefix, "\n")));
-        }
-    }
-
-    private void outputInternalLinks(Page page, String prefix) {
-        if (!page.getInternalLinks().isEmpty()) {
-            out.println(prefix + "Internal links");
-            for (Page internalLink : page.getInternalLinks()) {
-                outputPage(internalLink, prefix + INDENT);
+    /**
+     * Takes pages off the queue on this thread and crawls each one on its own virtual thread. The semaphore is acquired
+     * before taking a page so that at most nThreads pages are ever in flight. PageCrawlers (and their buffers) are
+     * pooled and handed from one virtual thread to the next, there is never more than one per permit.
+     */
+    private void crawlOnVirtualThreads() {
+        Semaphore inFlight = new Semaphore(nThreads);
+        Queue<PageCrawler> crawlers = new ConcurrentLinkedQueue<>();
+        try (ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (true) {
+                inFlight.acquire();
+                String url = pageProcessor.getNextPage();
+                if (url == null) {
+                    break;
+                }
+                executorService.submit(() -> {
+                    PageCrawler crawler = crawlers.poll();
+                    if (crawler == null) {
+                        crawler = pageCrawlerProvider.newPageCrawler(baseUrl, pageProcessor, urlReader);
+                    }
+                    try {
+                        crawler.crawl(url);
+                    } finally {
+                        crawlers.offer(crawler);
+                        inFlight.release();
+                    }
+                });
             }
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted waiting for crawlers to complete", e);
         }
     }
 }
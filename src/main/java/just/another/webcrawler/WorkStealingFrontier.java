@@ -0,0 +1,190 @@
+package just.another.webcrawler;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A Frontier in which every crawler thread has a deque of its own so that crawlers don't contend on one queue.
+ *
+ * The links a crawler finds go onto its own deque and it takes the most recent of them first. A crawler whose deque is
+ * empty steals the oldest url from another's, so work spreads out from whoever found it. Urls added by threads that
+ * never take, such as the seed, go onto a shared queue that every crawler checks before stealing.
+ *
+ * There is no lock or single counter to decide when the crawl is over. The urls added and done are counted in striped
+ * LongAdders, which only ever grow, and an idle crawler reads every done count before every added count. Each url done
+ * was added first, along with the links found on it, so if the two sums match nothing was pending in between and the
+ * crawl is over. Idle crawlers park until a url is added or briefly enough to notice that it is.
+ *
+ * There is no notion of hosts, a rate per host needs the PoliteFrontier.
+ */
+public class WorkStealingFrontier implements Frontier {
+
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ThreadLocal<Worker> workers = new ThreadLocal<>();
+    private final CopyOnWriteArrayList<Worker> allWorkers = new CopyOnWriteArrayList<>();
+    private final Queue<String> injected = new ConcurrentLinkedQueue<>();
+    private final Queue<Thread> idle = new ConcurrentLinkedQueue<>();
+    private final LongAdder added = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private volatile boolean closed;
+
+    @Override
+    public void add(String url) {
+        added.increment();
+        Worker worker = workers.get();
+        if (worker != null) {
+            worker.urls.addLast(url);
+        } else {
+            injected.add(url);
+        }
+        wake(1);
+    }
+
+    /**
+     * Counts the urls once and wakes as many idle crawlers as there are urls to take
+     */
+    @Override
+    public void addAll(Collection<String> urls) {
+        if (urls.isEmpty()) {
+            return;
+        }
+        added.add(urls.size());
+        Worker worker = workers.get();
+        if (worker != null) {
+            worker.urls.addAll(urls);
+        } else {
+            injected.addAll(urls);
+        }
+        wake(urls.size());
+    }
+
+    @Override
+    public String take() throws InterruptedException {
+        Worker worker = worker();
+        while (true) {
+            String url = worker.urls.pollLast();
+            if (url == null) {
+                url = injected.poll();
+            }
+            if (url == null) {
+                url = steal(worker);
+            }
+            if (url != null) {
+                return url;
+            }
+            if (closed || isFinished()) {
+                wakeAll();
+                return null;
+            }
+            park();
+        }
+    }
+
+    @Override
+    public void done(String url) {
+        completed.increment();
+        if (!idle.isEmpty() && isFinished()) {
+            wakeAll();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        wakeAll();
+    }
+
+    @Override
+    public int size() {
+        int size = injected.size();
+        for (Worker worker : allWorkers) {
+            size += worker.urls.size();
+        }
+        return size;
+    }
+
+    @Override
+    public int pending() {
+        return (int) (added.sum() - completed.sum());
+    }
+
+    // Done must be read first, see the class comment
+    private boolean isFinished() {
+        long done = completed.sum();
+        return done == added.sum();
+    }
+
+    private Worker worker() {
+        Worker worker = workers.get();
+        if (worker == null) {
+            worker = new Worker();
+            workers.set(worker);
+            allWorkers.add(worker);
+        }
+        return worker;
+    }
+
+    // Starts from a random victim so thieves don't all go after the same deque
+    private String steal(Worker thief) {
+        int n = allWorkers.size();
+        int start = n > 1 ? ThreadLocalRandom.current().nextInt(n) : 0;
+        for (int i = 0; i < n; i++) {
+            Worker victim = allWorkers.get((start + i) % n);
+            if (victim != thief) {
+                String url = victim.urls.pollFirst();
+                if (url != null) {
+                    return url;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void park() throws InterruptedException {
+        Thread thread = Thread.currentThread();
+        idle.add(thread);
+        // Checked again once registered so that an add in between isn't missed for a whole park
+        if (injected.isEmpty() && !anyWork()) {
+            LockSupport.parkNanos(this, MAX_PARK_NANOS);
+        }
+        idle.remove(thread);
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    private boolean anyWork() {
+        for (Worker worker : allWorkers) {
+            if (!worker.urls.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void wake(int threads) {
+        Thread waiting;
+        for (int i = 0; i < threads && (waiting = idle.poll()) != null; i++) {
+            LockSupport.unpark(waiting);
+        }
+    }
+
+    private void wakeAll() {
+        Thread waiting;
+        while ((waiting = idle.poll()) != null) {
+            LockSupport.unpark(waiting);
+        }
+    }
+
+    private static final class Worker {
+        private final ConcurrentLinkedDeque<String> urls = new ConcurrentLinkedDeque<>();
+    }
+}
@@ -0,0 +1,152 @@
+package just.another.webcrawler;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes every crawled page to a sitemaps.org sitemap.
+ *
+ * A sitemap may list at most 50,000 urls in at most 50MB so pages are written to name-1.xml, name-2.xml and so on, a
+ * new file begun whenever the current one is full. Once closed a crawl that fit in one file has it renamed to name.xml,
+ * otherwise name.xml is written as a sitemap index of every file, each listed under the base url.
+ */
+public class XmlSitemapSink implements CrawlSink {
+
+    private static final int MAX_URLS = 50_000;
+    private static final long MAX_BYTES = 50L * 1024 * 1024;
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+    private static final String URLSET = "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n";
+    private static final String URLSET_END = "</urlset>\n";
+
+    private final Path directory;
+    private final String name;
+    private final String baseUrl;
+    private final int maxUrls;
+    private final long maxBytes;
+    private final Lock lock = new ReentrantLock();
+    private final StringBuilder entry = new StringBuilder();
+    private ChannelWriter out;
+    private int files;
+    private int urls;
+
+    /**
+     * @param name    the name of the sitemap, or sitemap index, without the .xml
+     * @param baseUrl the url the sitemaps are served from, for the index
+     */
+    public XmlSitemapSink(Path directory, String name, String baseUrl) {
+        this(directory, name, baseUrl, MAX_URLS, MAX_BYTES);
+    }
+
+    XmlSitemapSink(Path directory, String name, String baseUrl, int maxUrls, long maxBytes) {
+        this.directory = directory;
+        this.name = name;
+        this.baseUrl = baseUrl;
+        this.maxUrls = maxUrls;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void page(String url, CrawlResult result) throws IOException {
+        lock.lock();
+        try {
+            entry.setLength(0);
+            entry.append("  <url><loc>");
+            escape(url, entry);
+            entry.append("</loc></url>\n");
+            // Three bytes a char is as much as UTF-8 takes, so a file is never allowed to go over
+            if (out == null || urls == maxUrls || out.position() + entry.length() * 3L + URLSET_END.length() > maxBytes) {
+                finishFile();
+                out = open(file(++files));
+                out.text(HEADER).text(URLSET);
+                urls = 0;
+            }
+            out.text(entry);
+            urls++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            finishFile();
+            if (files == 1) {
+                Files.move(directory.resolve(file(1)), directory.resolve(name + ".xml"), REPLACE_EXISTING);
+                return;
+            }
+            try (ChannelWriter index = open(name + ".xml")) {
+                index.text(HEADER);
+                if (files == 0) {
+                    index.text(URLSET).text(URLSET_END);
+                    return;
+                }
+                index.text("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+                for (int i = 1; i <= files; i++) {
+                    entry.setLength(0);
+                    entry.append("  <sitemap><loc>");
+                    escape(baseUrl + "/" + file(i), entry);
+                    entry.append("</loc></sitemap>\n");
+                    index.text(entry);
+                }
+                index.text("</sitemapindex>\n");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void finishFile() throws IOException {
+        if (out != null) {
+            try {
+                out.text(URLSET_END);
+            } finally {
+                out.close();
+                out = null;
+            }
+        }
+    }
+
+    private String file(int i) {
+        return name + "-" + i + ".xml";
+    }
+
+    private ChannelWriter open(String file) throws IOException {
+        return new ChannelWriter(FileChannel.open(directory.resolve(file), CREATE, TRUNCATE_EXISTING, WRITE));
+    }
+
+    private static void escape(String value, StringBuilder to) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    to.append("&amp;");
+                    break;
+                case '<':
+                    to.append("&lt;");
+                    break;
+                case '>':
+                    to.append("&gt;");
+                    break;
+                case '"':
+                    to.append("&quot;");
+                    break;
+                case '\'':
+                    to.append("&apos;");
+                    break;
+                default:
+                    to.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package just.another.webcrawler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class BinarySitemapSinkTest {
+
+    private static final String BASE_URL = "http://www.someurl.com";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackWhatWasWritten() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("sitemap.bin");
+        CrawlResult home = new CrawlResult(new HashSet<>(Arrays.asList(BASE_URL + "/a", BASE_URL + "/caf\u00e9")),
+                singleton("http://www.google.com"), singleton(BASE_URL + "/logo.png"));
+        CrawlResult page = new CrawlResult(singleton(BASE_URL), emptySet(), singleton(BASE_URL + "/logo.png"));
+        try (BinarySitemapSink sink = new BinarySitemapSink(path)) {
+            sink.page(BASE_URL, home);
+            sink.page(BASE_URL + "/a", page);
+        }
+
+        Map<String, CrawlResult> pages = new LinkedHashMap<>();
+        BinarySitemapSink.read(path, pages::put);
+
+        assertThat(pages.keySet().toString(), is("[" + BASE_URL + ", " + BASE_URL + "/a]"));
+        assertThat(pages.get(BASE_URL).getInternalLinks(), is(home.getInternalLinks()));
+        assertThat(pages.get(BASE_URL).getExternalLinks(), is(home.getExternalLinks()));
+        assertThat(pages.get(BASE_URL + "/a").getInternalLinks(), is(page.getInternalLinks()));
+        assertThat(pages.get(BASE_URL + "/a").getImages(), is(page.getImages()));
+    }
+}
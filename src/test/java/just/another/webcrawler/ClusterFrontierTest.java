@@ -0,0 +1,178 @@
+package just.another.webcrawler;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.Collections.emptySet;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ClusterFrontierTest {
+
+    private static final String BASE_URL = "http://www.someurl.com";
+    private static final int NODES = 3;
+    private static final int PAGES = 300;
+
+    private final List<ClusterFrontier> frontiers = new ArrayList<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        frontiers.forEach(ClusterFrontier::close);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void urlsAreSpreadEvenlyOverTheRing() throws Exception {
+        HashRing ring = new HashRing(NODES);
+        int[] owned = new int[NODES];
+        for (int page = 0; page < 30000; page++) {
+            owned[ring.owner(url(page))]++;
+        }
+
+        for (int node = 0; node < NODES; node++) {
+            assertTrue(owned[node] > 30000 / NODES * 0.8 && owned[node] < 30000 / NODES * 1.2);
+        }
+        assertThat(new HashRing(NODES).owner(url(42)), is(ring.owner(url(42))));
+    }
+
+    @Test
+    public void crawlsEveryPageOnceAcrossTheClusterAndFinishes() throws Exception {
+        List<InetSocketAddress> nodes = new ArrayList<>();
+        for (int node = 0; node < NODES; node++) {
+            nodes.add(new InetSocketAddress("localhost", freePort()));
+        }
+        Map<String, Integer> crawledBy = new ConcurrentHashMap<>();
+        List<Future<PageProcessor>> processors = new ArrayList<>();
+        for (int node = 0; node < NODES; node++) {
+            int self = node;
+            processors.add(executor.submit(() -> crawl(nodes, self, crawledBy)));
+        }
+
+        for (Future<PageProcessor> processor : processors) {
+            processor.get(30, TimeUnit.SECONDS);
+        }
+        assertThat(crawledBy.size(), is(PAGES));
+        assertThat(new HashSet<>(crawledBy.values()).size(), is(NODES));
+        for (int node = 1; node < NODES; node++) {
+            assertNull(processors.get(node).get().getSiteMap());
+        }
+        assertThat(processors.get(0).get().getSiteMap().size(), is(PAGES));
+    }
+
+    @Test
+    public void dropsConnectionsFromOutsideTheCluster() throws Exception {
+        try (ServerSocket other = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"))) {
+            int port = freePort();
+            ClusterFrontier frontier = coordinatorWith(port, other);
+
+            try (Socket socket = new Socket()) {
+                socket.bind(new InetSocketAddress("127.0.0.2", 0));
+                socket.connect(new InetSocketAddress("127.0.0.1", port));
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeInt(1);
+                out.writeByte(4);
+                out.flush();
+                socket.setSoTimeout(5000);
+                assertThat(socket.getInputStream().read(), is(-1));
+            }
+            assertStillRunning(frontier);
+        }
+    }
+
+    @Test
+    public void dropsAConnectionThatSendsAnOversizedMessage() throws Exception {
+        try (ServerSocket other = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"))) {
+            int port = freePort();
+            ClusterFrontier frontier = coordinatorWith(port, other);
+
+            try (Socket socket = new Socket("127.0.0.1", port)) {
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeInt(1);
+                out.writeByte(1);
+                out.writeInt(1);
+                out.writeInt(100_000_000);
+                out.flush();
+                socket.setSoTimeout(5000);
+                assertThat(socket.getInputStream().read(), is(-1));
+            }
+            assertStillRunning(frontier);
+        }
+    }
+
+    // The other node is only a listening socket, enough for the coordinator to connect to
+    private ClusterFrontier coordinatorWith(int port, ServerSocket other) throws IOException {
+        List<InetSocketAddress> nodes = new ArrayList<>();
+        nodes.add(new InetSocketAddress("127.0.0.1", port));
+        nodes.add(new InetSocketAddress("127.0.0.1", other.getLocalPort()));
+        ClusterFrontier frontier = ClusterFrontier.newBuilder(nodes, 0).build();
+        frontiers.add(frontier);
+        return frontier;
+    }
+
+    private void assertStillRunning(ClusterFrontier frontier) throws Exception {
+        Future<String> next = executor.submit(frontier::take);
+        try {
+            next.get(200, TimeUnit.MILLISECONDS);
+            fail("The frontier was terminated");
+        } catch (TimeoutException expected) {
+            // still waiting for urls
+        }
+    }
+
+    // Every page links to the next two and back to the first, so most links found belong to another node
+    private PageProcessor crawl(List<InetSocketAddress> nodes, int self, Map<String, Integer> crawledBy) throws IOException {
+        UrlSeenSet seenUrls = FingerprintSeenSet.newBuilder().build();
+        ClusterFrontier frontier = ClusterFrontier.newBuilder(nodes, self).withSeenUrls(seenUrls).withBatchSize(8).build();
+        synchronized (frontiers) {
+            frontiers.add(frontier);
+        }
+        PageProcessor pageProcessor = PageProcessor.newBuilder(BASE_URL).withFrontier(frontier).withSeenUrls(seenUrls).build();
+        while (true) {
+            String url = pageProcessor.getNextPage();
+            if (url == null) {
+                return pageProcessor;
+            }
+            assertNull(crawledBy.put(url, self));
+            int page = url.equals(BASE_URL) ? 0 : Integer.parseInt(url.substring(url.lastIndexOf('/') + 1));
+            Set<String> links = new HashSet<>();
+            for (int next = page + 1; next <= page + 2 && next < PAGES; next++) {
+                links.add(url(next));
+            }
+            links.add(BASE_URL);
+            pageProcessor.submitResult(url, new CrawlResult(links, emptySet(), emptySet()));
+        }
+    }
+
+    private static String url(int page) {
+        return page == 0 ? BASE_URL : BASE_URL + "/page/" + page;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
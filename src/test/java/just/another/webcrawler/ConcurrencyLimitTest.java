@@ -0,0 +1,58 @@
+package just.another.webcrawler;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimitTest {
+
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    public void growsWhileLatencyHoldsAndShrinksOnceItRises() throws Exception {
+        ConcurrencyLimit limit = new ConcurrencyLimit(16);
+        assertThat(limit.get(), is(4));
+
+        for (int i = 0; i < 200; i++) {
+            limit.succeeded(LATENCY, limit.get() - 1);
+        }
+        assertThat(limit.get(), is(16));
+
+        for (int i = 0; i < 20; i++) {
+            limit.succeeded(3 * LATENCY, limit.get() - 1);
+        }
+        assertTrue(limit.get() < 8);
+    }
+
+    @Test
+    public void onlyGrowsWhileItIsUsed() throws Exception {
+        ConcurrencyLimit limit = new ConcurrencyLimit(16);
+
+        for (int i = 0; i < 200; i++) {
+            limit.succeeded(LATENCY, 0);
+        }
+        assertThat(limit.get(), is(4));
+    }
+
+    @Test
+    public void backsOffFromAnOverloadedHostOncePerRoundTrip() throws Exception {
+        ConcurrencyLimit limit = new ConcurrencyLimit(16);
+        for (int i = 0; i < 200; i++) {
+            limit.succeeded(LATENCY, limit.get() - 1);
+        }
+        assertThat(limit.get(), is(16));
+
+        limit.failed(true, 0);
+        assertThat(limit.get(), is(8));
+        limit.failed(true, LATENCY / 2);
+        assertThat(limit.get(), is(8));
+        limit.failed(true, 2 * LATENCY);
+        assertThat(limit.get(), is(4));
+        limit.failed(false, 4 * LATENCY);
+        assertThat(limit.get(), is(4));
+    }
+}
@@ -0,0 +1,103 @@
+package just.another.webcrawler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Collections.emptySet;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class CrawlJournalTest {
+
+    private static final String BASE_URL = "http://www.someurl.com";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysResultsAndFailuresInOrder() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("crawl.journal");
+        CrawlResult result = new CrawlResult(asSet(BASE_URL + "/a", BASE_URL + "/b"), asSet("http://www.google.com"), asSet(BASE_URL + "/image.gif"));
+        try (CrawlJournal journal = new CrawlJournal(path)) {
+            journal.replay((url, replayed) -> {
+                throw new AssertionError("A new journal is empty");
+            });
+            journal.completed(BASE_URL, result);
+            journal.failed(BASE_URL + "/a");
+        }
+
+        Map<String, CrawlResult> replayed = replay(path);
+
+        assertThat(replayed.keySet(), is(asSet(BASE_URL, BASE_URL + "/a")));
+        assertThat(replayed.get(BASE_URL), is(result));
+        assertThat(replayed.get(BASE_URL + "/a"), is((CrawlResult) null));
+    }
+
+    @Test
+    public void replaysAliasesWithThePageTheyAreAnAliasOf() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("crawl.journal");
+        try (CrawlJournal journal = new CrawlJournal(path)) {
+            journal.replay((url, replayed) -> { });
+            journal.completed(BASE_URL, CrawlResult.EMPTY);
+            journal.aliased(BASE_URL + "/index.html", BASE_URL);
+        }
+
+        Map<String, String> aliases = new HashMap<>();
+        try (CrawlJournal journal = new CrawlJournal(path)) {
+            journal.replay((url, replayed) -> assertThat(url, is(BASE_URL)), aliases::put);
+        }
+
+        assertThat(aliases, is(Collections.singletonMap(BASE_URL + "/index.html", BASE_URL)));
+        // Without a consumer of their own aliases are replayed as failures
+        Map<String, CrawlResult> replayed = replay(path);
+        assertThat(replayed.keySet(), is(asSet(BASE_URL, BASE_URL + "/index.html")));
+        assertThat(replayed.get(BASE_URL + "/index.html"), is((CrawlResult) null));
+    }
+
+    @Test
+    public void ignoresATornRecordAndAppendsOverIt() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("crawl.journal");
+        try (CrawlJournal journal = new CrawlJournal(path)) {
+            journal.replay((url, replayed) -> { });
+            journal.completed(BASE_URL, CrawlResult.EMPTY);
+            journal.completed(BASE_URL + "/torn", CrawlResult.EMPTY);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() - 1);
+        }
+
+        try (CrawlJournal journal = new CrawlJournal(path)) {
+            assertThat(replayInto(journal).keySet(), is(asSet(BASE_URL)));
+            journal.completed(BASE_URL + "/after", new CrawlResult(emptySet(), emptySet(), emptySet()));
+        }
+
+        assertThat(replay(path).keySet(), is(asSet(BASE_URL, BASE_URL + "/after")));
+    }
+
+    private static Map<String, CrawlResult> replay(Path path) throws Exception {
+        try (CrawlJournal journal = new CrawlJournal(path)) {
+            return replayInto(journal);
+        }
+    }
+
+    private static Map<String, CrawlResult> replayInto(CrawlJournal journal) throws Exception {
+        Map<String, CrawlResult> replayed = new LinkedHashMap<>();
+        journal.replay(replayed::put);
+        return replayed;
+    }
+
+    private static Set<String> asSet(String... items) {
+        return new HashSet<>(Arrays.asList(items));
+    }
+}
@@ -0,0 +1,68 @@
+package just.another.webcrawler;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertTrue;
+
+public class CrawlMetricsTest {
+
+    @Test
+    public void percentilesAreWithinABucketOfTheTrueValue() throws Exception {
+        CrawlMetrics metrics = new CrawlMetrics();
+        for (int micros = 1; micros <= 1000; micros++) {
+            metrics.record(CrawlMetrics.Stage.FETCH, TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+
+        CrawlMetrics.StageTimes times = metrics.times(CrawlMetrics.Stage.FETCH);
+
+        assertThat(times.getCount(), is(1000L));
+        assertThat(times.getMeanMicros(), is(500.5));
+        assertThat(times.getMaxMicros(), is(1000.0));
+        assertTrue(times.getMedianMicros() >= 500 && times.getMedianMicros() <= 500 * 1.25);
+        assertTrue(times.getPercentile99Micros() >= 990 && times.getPercentile99Micros() <= 1000);
+        assertThat(metrics.times(CrawlMetrics.Stage.PARSE).getCount(), is(0L));
+    }
+
+    @Test
+    public void ratesAreOverTheWholeCrawl() throws Exception {
+        AtomicLong clock = new AtomicLong();
+        CrawlMetrics metrics = new CrawlMetrics(clock::get);
+        metrics.pageCrawled();
+        metrics.pageCrawled();
+        metrics.bytesRead(4096);
+        clock.set(TimeUnit.SECONDS.toNanos(2));
+
+        assertThat(metrics.getPagesPerSecond(), is(1.0));
+        assertThat(metrics.getBytesPerSecond(), is(2048.0));
+    }
+
+    @Test
+    public void publishedOverJmx() throws Exception {
+        CrawlMetrics metrics = new CrawlMetrics();
+        metrics.gauges(() -> 3, () -> 5);
+        metrics.error();
+        metrics.record(CrawlMetrics.Stage.SUBMIT, 2000);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(CrawlMetrics.OBJECT_NAME);
+        metrics.register();
+        try {
+            assertThat(server.getAttribute(name, "Errors"), is(1L));
+            assertThat(server.getAttribute(name, "FrontierDepth"), is(3));
+            assertThat(server.getAttribute(name, "UnprocessedPages"), is(5));
+            CompositeData submitTimes = (CompositeData) server.getAttribute(name, "SubmitTimes");
+            assertThat(submitTimes.get("count"), is(1L));
+            assertThat(submitTimes.get("maxMicros"), is(2.0));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
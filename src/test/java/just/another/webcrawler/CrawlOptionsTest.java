@@ -0,0 +1,122 @@
+package just.another.webcrawler;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class CrawlOptionsTest {
+
+    private static final String BASE_URL = "http://www.someurl.com";
+
+    @Test
+    public void defaultsToOneThread() throws Exception {
+        CrawlOptions options = CrawlOptions.parse(BASE_URL);
+
+        assertThat(options.getBaseUrl(), is(BASE_URL));
+        assertThat(options.getThreads(), is(1));
+        assertThat(options.getMaxBodySize(), is(UrlReader.DEFAULT_MAX_BODY_SIZE));
+    }
+
+    @Test
+    public void parsesThreadsAndNamedOptions() throws Exception {
+        CrawlOptions options = CrawlOptions.parse(BASE_URL, "4", "--max-body-size=1024");
+
+        assertThat(options.getThreads(), is(4));
+        assertThat(options.getMaxBodySize(), is(1024));
+    }
+
+    @Test
+    public void parsesPerHostRate() throws Exception {
+        CrawlOptions options = CrawlOptions.parse(BASE_URL, "8", "--rate=0.5", "--burst=2");
+
+        assertThat(options.getRate(), is(0.5));
+        assertThat(options.getBurst(), is(2));
+    }
+
+    @Test
+    public void parsesCluster() throws Exception {
+        CrawlOptions options = CrawlOptions.parse(BASE_URL, "--cluster=localhost:9701,localhost:9702", "--node=1");
+
+        assertThat(options.getCluster().size(), is(2));
+        assertThat(options.getCluster().get(1).getPort(), is(9702));
+        assertThat(options.getNode(), is(1));
+    }
+
+    @Test
+    public void parsesBudgets() throws Exception {
+        CrawlOptions options = CrawlOptions.parse(BASE_URL, "--frontier=priority", "--max-depth=3", "--max-pages=1000", "--max-time=60");
+
+        assertThat(options.getFrontier(), is(CrawlOptions.Frontier.PRIORITY));
+        assertThat(options.getMaxDepth(), is(3));
+        assertThat(options.getMaxPages(), is(1000L));
+        assertThat(options.getMaxTime(), is(60));
+    }
+
+    @Test
+    public void parsesRobots() throws Exception {
+        assertThat(CrawlOptions.parse(BASE_URL).getRobots(), is(CrawlOptions.Robots.OBEY));
+        assertThat(CrawlOptions.parse(BASE_URL, "--robots=seed").getRobots(), is(CrawlOptions.Robots.SEED));
+    }
+
+    @Test
+    public void parsesDedup() throws Exception {
+        assertThat(CrawlOptions.parse(BASE_URL).getDedup(), is(CrawlOptions.Dedup.NONE));
+        assertThat(CrawlOptions.parse(BASE_URL, "--dedup=exact").getDedup(), is(CrawlOptions.Dedup.EXACT));
+        assertThat(CrawlOptions.parse(BASE_URL, "--dedup=near").getDedup(), is(CrawlOptions.Dedup.NEAR));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aDistributedCrawlCantDedupPages() throws Exception {
+        CrawlOptions.parse(BASE_URL, "--dedup=exact", "--cluster=localhost:9701,localhost:9702");
+    }
+
+    @Test
+    public void parsesMaxResultMemory() throws Exception {
+        assertThat(CrawlOptions.parse(BASE_URL).getMaxResultMemory(), is(0));
+        assertThat(CrawlOptions.parse(BASE_URL, "--max-result-memory=256").getMaxResultMemory(), is(256));
+    }
+
+    @Test
+    public void parsesConcurrency() throws Exception {
+        assertThat(CrawlOptions.parse(BASE_URL).getConcurrency(), is(CrawlOptions.Concurrency.FIXED));
+        assertThat(CrawlOptions.parse(BASE_URL, "--concurrency=adaptive").getConcurrency(), is(CrawlOptions.Concurrency.ADAPTIVE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onlyThePoliteFrontierAdaptsItsConcurrency() throws Exception {
+        CrawlOptions.parse(BASE_URL, "--concurrency=adaptive", "--frontier=stealing");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAMaxBodySizeOfZero() throws Exception {
+        CrawlOptions.parse(BASE_URL, "--max-body-size=0");
+    }
+
+    @Test
+    public void parsesTimeout() throws Exception {
+        assertThat(CrawlOptions.parse(BASE_URL).getTimeout(), is(UrlReader.DEFAULT_TIMEOUT_SECONDS));
+        assertThat(CrawlOptions.parse(BASE_URL, "--timeout=5").getTimeout(), is(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsATimeoutOfZero() throws Exception {
+        CrawlOptions.parse(BASE_URL, "--timeout=0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTheStealingFrontierWithVirtualThreads() throws Exception {
+        CrawlOptions.parse(BASE_URL, "--frontier=stealing", "--execution=virtual");
+    }
+
+    @Test
+    public void parsesDnsTtl() throws Exception {
+        assertThat(CrawlOptions.parse(BASE_URL).getDnsTtl(), is(60));
+        assertThat(CrawlOptions.parse(BASE_URL, "--dns-ttl=0").getDnsTtl(), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownOptions() throws Exception {
+        CrawlOptions.parse(BASE_URL, "--no-such-option");
+    }
+}
@@ -0,0 +1,69 @@
+package just.another.webcrawler;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class DnsCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    @Test
+    public void keepsAddressesUntilTheirTtlIsUp() throws Exception {
+        DnsCache dnsCache = new DnsCache(this::lookUp, 60_000, now::get, Runnable::run);
+
+        InetAddress address = dnsCache.resolve("one.com");
+        assertThat(dnsCache.resolve("ONE.com"), is(address));
+        assertThat(dnsCache.prefetch("one.com").get(), is(address));
+        assertThat(lookups.get(), is(1));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        dnsCache.resolve("one.com");
+        assertThat(lookups.get(), is(2));
+    }
+
+    @Test
+    public void remembersHostsThatCantBeResolvedForAShorterWhile() throws Exception {
+        DnsCache dnsCache = new DnsCache(this::lookUp, 60_000, now::get, Runnable::run);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                dnsCache.resolve("missing.com");
+                fail();
+            } catch (UnknownHostException e) {
+                assertThat(e.getMessage(), is("missing.com"));
+            }
+        }
+        assertThat(lookups.get(), is(1));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertThat(dnsCache.prefetch("missing.com").isCompletedExceptionally(), is(true));
+        assertThat(lookups.get(), is(2));
+    }
+
+    @Test
+    public void prefetchesInTheBackground() throws Exception {
+        DnsCache dnsCache = new DnsCache(this::lookUp, 60_000, now::get, command -> new Thread(command).start());
+
+        InetAddress address = dnsCache.prefetch("one.com").get(10, TimeUnit.SECONDS);
+        assertThat(dnsCache.resolve("one.com"), is(address));
+        assertThat(lookups.get(), is(1));
+    }
+
+    private InetAddress lookUp(String host) throws UnknownHostException {
+        lookups.incrementAndGet();
+        if (host.equals("missing.com")) {
+            throw new UnknownHostException(host);
+        }
+        return InetAddress.getByAddress(host, new byte[]{10, 0, 0, (byte) lookups.get()});
+    }
+}
@@ -0,0 +1,54 @@
+package just.another.webcrawler;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DuplicateIndexTest {
+
+    private static final String ARTICLE = "<html><body><h1>Crawling the web politely</h1><p>A crawler that keeps to the rate " +
+            "a site asks for, reads its robots.txt before it follows a link and never fetches the same document twice " +
+            "under different names is a crawler that site owners are happy to let in. This page explains how ours does " +
+            "each of those things and which options change how it behaves on your site.</p></body></html>";
+
+    @Test
+    public void nearlyTheSameTextHasNearlyTheSameSimHash() throws Exception {
+        long article = simHash(ARTICLE);
+        long tracked = simHash(ARTICLE.replace("</body>", "<p>Visited via newsletter</p></body>"));
+        long other = simHash("<p>Release notes: the frontier now steals work between crawler threads, the journal is " +
+                "written in batches, metrics are published over JMX and the site map can be written as xml or jsonl " +
+                "while the crawl is still running, with budgets for depth, pages and time.</p>");
+
+        assertTrue(SimHash.distance(article, tracked) <= 3);
+        assertTrue(SimHash.distance(article, other) > 3);
+        assertThat(simHash("<p>Too short to tell apart</p>"), is(SimHash.NONE));
+    }
+
+    @Test
+    public void theFirstPageOfAContentIsTheOriginal() throws Exception {
+        DuplicateIndex exact = new DuplicateIndex(false);
+        DuplicateIndex near = new DuplicateIndex(true);
+        long article = simHash(ARTICLE);
+        long tracked = simHash(ARTICLE.replace("</body>", "<p>Visited via newsletter</p></body>"));
+
+        assertNull(exact.originalOf("/", 1, article));
+        assertThat(exact.originalOf("/index.html", 1, article), is("/"));
+        assertNull(exact.originalOf("/?ref=mail", 2, tracked));
+        assertNull(near.originalOf("/", 1, article));
+        assertThat(near.originalOf("/?ref=mail", 2, tracked), is("/"));
+        assertNull(near.originalOf("/short", 3, SimHash.NONE));
+        assertNull(near.originalOf("/other", 4, SimHash.NONE));
+    }
+
+    private static long simHash(String page) {
+        SimHash simHash = new SimHash();
+        // Fed in small chunks so words span them
+        for (int i = 0; i < page.length(); i += 7) {
+            simHash.feed(page.substring(i, Math.min(page.length(), i + 7)));
+        }
+        return simHash.value();
+    }
+}
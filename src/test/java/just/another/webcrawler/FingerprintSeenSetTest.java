@@ -0,0 +1,89 @@
+package just.another.webcrawler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintSeenSetTest {
+
+    private static final String BASE_URL = "http://www.someurl.com/";
+
+    @Test
+    public void onlyAddsAUrlOnce() throws Exception {
+        FingerprintSeenSet seenUrls = FingerprintSeenSet.newBuilder().build();
+
+        assertTrue(seenUrls.add(BASE_URL + "page"));
+        assertFalse(seenUrls.add(BASE_URL + "page"));
+        assertThat(seenUrls.size(), is(1L));
+    }
+
+    @Test
+    public void addsABatchReturningOnlyTheNewUrlsInOrder() throws Exception {
+        FingerprintSeenSet seenUrls = FingerprintSeenSet.newBuilder().withExpectedUrls(16).withBloomFilter(true).build();
+        seenUrls.add(BASE_URL + "b");
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            urls.add(BASE_URL + i);
+        }
+        urls.addAll(Arrays.asList(BASE_URL + "a", BASE_URL + "b", BASE_URL + "c"));
+
+        List<String> added = seenUrls.addAll(urls);
+
+        assertThat(added.size(), is(102));
+        assertThat(added.subList(99, 102), is(Arrays.asList(BASE_URL + "99", BASE_URL + "a", BASE_URL + "c")));
+        assertThat(seenUrls.addAll(urls).isEmpty(), is(true));
+        assertThat(seenUrls.size(), is(103L));
+    }
+
+    @Test
+    public void growsBeyondTheExpectedNumberOfUrls() throws Exception {
+        assertGrows(FingerprintSeenSet.newBuilder().withExpectedUrls(16).build());
+    }
+
+    @Test
+    public void growsOffHeapBehindABloomFilter() throws Exception {
+        assertGrows(FingerprintSeenSet.newBuilder().withExpectedUrls(16).withOffHeap(true).withBloomFilter(true).build());
+    }
+
+    @Test
+    public void concurrentAddsOfTheSameUrlsOnlySucceedOnce() throws Exception {
+        FingerprintSeenSet seenUrls = FingerprintSeenSet.newBuilder().withExpectedUrls(16).build();
+        AtomicInteger added = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    if (seenUrls.add(BASE_URL + i)) {
+                        added.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(added.get(), is(10_000));
+        assertThat(seenUrls.size(), is(10_000L));
+    }
+
+    private static void assertGrows(FingerprintSeenSet seenUrls) {
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(seenUrls.add(BASE_URL + i));
+        }
+        for (int i = 0; i < 100_000; i++) {
+            assertFalse(seenUrls.add(BASE_URL + i));
+        }
+        assertThat(seenUrls.size(), is(100_000L));
+    }
+}
@@ -0,0 +1,71 @@
+package just.another.webcrawler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class HtmlLinkExtractorTest {
+
+    private HtmlLinkExtractor extractor = new HtmlLinkExtractor();
+    private RecordingHandler handler = new RecordingHandler();
+
+    @Test
+    public void findsQuotedAndUnquotedLinks() throws Exception {
+        extractor.extract("<a href=\"one\">1</a><A title='x' HREF = 'two'>2</A><a href=three>3</a>", handler);
+
+        assertThat(handler.links, is(asList("one", "two", "three")));
+    }
+
+    @Test
+    public void findsImagesAndBase() throws Exception {
+        extractor.extract("<head><base href=\"http://www.someurl.com/dir/\"></head><img alt=\"a > b\" src=\"image.gif\"/>", handler);
+
+        assertThat(handler.bases, is(singletonList("http://www.someurl.com/dir/")));
+        assertThat(handler.images, is(singletonList("image.gif")));
+    }
+
+    @Test
+    public void ignoresAttributesThatOnlyEndInHref() throws Exception {
+        extractor.extract("<a data-href=\"nope\" href=\"yes\"></a><abbr href=\"nope\"></abbr>", handler);
+
+        assertThat(handler.links, is(singletonList("yes")));
+    }
+
+    @Test
+    public void ignoresCommentsScriptsAndStyles() throws Exception {
+        extractor.extract("<!-- <a href=\"comment\"> --><script>var s = '<a href=\"script\">';</script>" +
+                "<style>a:after { content: '<img src=\"style\">' }</STYLE><a href=\"real\">", handler);
+
+        assertThat(handler.links, is(singletonList("real")));
+        assertThat(handler.images, is(emptyList()));
+    }
+
+    private static class RecordingHandler implements LinkHandler {
+
+        private final List<String> links = new ArrayList<>();
+        private final List<String> images = new ArrayList<>();
+        private final List<String> bases = new ArrayList<>();
+
+        @Override
+        public void link(CharSequence href) {
+            links.add(href.toString());
+        }
+
+        @Override
+        public void image(CharSequence src) {
+            images.add(src.toString());
+        }
+
+        @Override
+        public void base(CharSequence href) {
+            bases.add(href.toString());
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package just.another.webcrawler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class JsonlSinkTest {
+
+    private static final String BASE_URL = "http://www.someurl.com";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesALinePerEdge() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("sitemap.jsonl");
+        try (JsonlSink sink = new JsonlSink(path)) {
+            sink.page(BASE_URL, new CrawlResult(singleton(BASE_URL + "/\"quoted\""), emptySet(), singleton(BASE_URL + "/logo.png")));
+        }
+
+        assertThat(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), is(
+                "{\"from\":\"" + BASE_URL + "\",\"to\":\"" + BASE_URL + "/\\\"quoted\\\"\",\"type\":\"link\"}\n" +
+                "{\"from\":\"" + BASE_URL + "\",\"to\":\"" + BASE_URL + "/logo.png\",\"type\":\"image\"}\n"));
+    }
+}
@@ -0,0 +1,152 @@
+package just.another.webcrawler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertTrue;
+
+public class NioFetchEngineTest {
+
+    private HttpServer server;
+    private NioFetchEngine engine;
+    private String baseUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/page", exchange -> respond(exchange, 200, "<a href=\"other\">other</a>".getBytes(StandardCharsets.UTF_8), false));
+        server.createContext("/large", exchange -> {
+            byte[] body = new byte[1024 * 1024];
+            Arrays.fill(body, (byte) 'x');
+            respond(exchange, 200, body, true);
+        });
+        server.createContext("/moved", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/page");
+            respond(exchange, 301, new byte[0], false);
+        });
+        server.createContext("/missing", exchange -> respond(exchange, 404, "Not found".getBytes(StandardCharsets.UTF_8), false));
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        engine = new NioFetchEngine(2, 4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        engine.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void reusesKeepAliveConnections() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            FetchResponse response = engine.fetch(URI.create(baseUrl + "/page")).get(10, TimeUnit.SECONDS);
+
+            assertThat(response.getStatus(), is(200));
+            assertThat(readFully(response.getBody()), is("<a href=\"other\">other</a>"));
+        }
+        assertThat(engine.connectionsOpened(), is(1L));
+    }
+
+    @Test
+    public void streamsLargeChunkedBodies() throws Exception {
+        FetchResponse response = engine.fetch(URI.create(baseUrl + "/large")).get(10, TimeUnit.SECONDS);
+
+        assertThat(readFully(response.getBody()).length(), is(1024 * 1024));
+    }
+
+    @Test
+    public void multiplexesManyRequestsOverFewConnections() throws Exception {
+        List<CompletableFuture<FetchResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            responses.add(engine.fetch(URI.create(baseUrl + "/page?n=" + i)));
+        }
+        for (CompletableFuture<FetchResponse> response : responses) {
+            assertThat(readFully(response.get(10, TimeUnit.SECONDS).getBody()), is("<a href=\"other\">other</a>"));
+        }
+        assertTrue(engine.connectionsOpened() <= 4);
+    }
+
+    @Test
+    public void theFirstRequestToAHostUsesTheConnectionOpenedAheadOfIt() throws Exception {
+        engine.prewarm(URI.create(baseUrl + "/page"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (engine.connectionsOpened() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(engine.connectionsOpened(), is(1L));
+
+        engine.prewarm(URI.create(baseUrl + "/other"));
+        FetchResponse response = engine.fetch(URI.create(baseUrl + "/page")).get(10, TimeUnit.SECONDS);
+
+        assertThat(readFully(response.getBody()), is("<a href=\"other\">other</a>"));
+        assertThat(engine.connectionsOpened(), is(1L));
+    }
+
+    @Test
+    public void readerFollowsRedirects() throws Exception {
+        NioUrlReader urlReader = new NioUrlReader(UrlReader.DEFAULT_MAX_BODY_SIZE, engine);
+
+        assertThat(urlReader.read(baseUrl + "/moved"), is("<a href=\"other\">other</a>"));
+        List<String> responseUrls = new ArrayList<>();
+        LinkExtractor extractor = new HtmlLinkExtractor();
+        extractor.begin(new LinkHandler() {
+            @Override
+            public void link(CharSequence href) {
+            }
+
+            @Override
+            public void image(CharSequence src) {
+            }
+
+            @Override
+            public void base(CharSequence href) {
+            }
+        });
+        urlReader.read(baseUrl + "/moved", null, extractor, responseUrls::add);
+        assertThat(responseUrls, is(Arrays.asList(baseUrl + "/page")));
+    }
+
+    @Test(expected = IOException.class)
+    public void readerFailsOnErrorStatus() throws Exception {
+        new NioUrlReader(UrlReader.DEFAULT_MAX_BODY_SIZE, engine).read(baseUrl + "/missing");
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body, boolean chunked) throws IOException {
+        exchange.sendResponseHeaders(status, chunked ? 0 : body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        try (InputStream body = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = body.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -3,8 +3,11 @@ package just.another.webcrawler;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.util.HashSet;
+import java.util.function.Consumer;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptySet;
 import static java.util.Collections.singletonList;
 import static org.mockito.Mockito.*;
@@ -25,7 +28,7 @@ public class PageCrawlerTest {
 
         pageCrawler.run();
 
-        verify(pageProcessor).submitResult(BASE_URL, resultsFromInternalLink(url));
+        verifySubmitted(resultsFromInternalLink(url));
     }
 
     @Test
@@ -36,7 +39,7 @@ public class PageCrawlerTest {
 
         pageCrawler.run();
 
-        verify(pageProcessor).submitResult(BASE_URL, resultsFromInternalLink(BASE_URL + "/" + url));
+        verifySubmitted(resultsFromInternalLink(BASE_URL + "/" + url));
     }
 
     @Test
@@ -47,7 +50,7 @@ public class PageCrawlerTest {
 
         pageCrawler.run();
 
-        verify(pageProcessor).submitResult(BASE_URL, resultsFromInternalLink(url));
+        verifySubmitted(resultsFromInternalLink(url));
     }
 
     @Test
@@ -58,7 +61,7 @@ public class PageCrawlerTest {
 
         pageCrawler.run();
 
-        verify(pageProcessor).submitResult(BASE_URL, resultsFromInternalLink(url));
+        verifySubmitted(resultsFromInternalLink(url));
     }
 
     @Test
@@ -68,7 +71,7 @@ public class PageCrawlerTest {
 
         pageCrawler.run();
 
-        verify(pageProcessor).submitResult(BASE_URL, CrawlResult.EMPTY);
+        verifySubmitted(CrawlResult.EMPTY);
     }
 
     @Test
@@ -79,7 +82,7 @@ public class PageCrawlerTest {
 
         pageCrawler.run();
 
-        verify(pageProcessor).submitResult(BASE_URL, resultsFromExternalLink(url));
+        verifySubmitted(resultsFromExternalLink(url));
     }
 
     @Test
@@ -90,12 +93,101 @@ public class PageCrawlerTest {
 
         pageCrawler.run();
 
-        verify(pageProcessor).submitResult(BASE_URL, resultsFromImage(BASE_URL + "/" + url));
+        verifySubmitted(resultsFromImage(BASE_URL + "/" + url));
+    }
+
+    @Test
+    public void resolvesRelativeLinksAgainstBaseHref() throws Exception {
+        String content = "<base href=\"" + BASE_URL + "/dir/\"><a href=\"page\" />";
+        setupProcessorAndReader(content);
+
+        pageCrawler.run();
+
+        verifySubmitted(resultsFromInternalLink(BASE_URL + "/dir/page"));
+    }
+
+    @Test
+    public void resolvesLinksToParentDirectories() throws Exception {
+        String content = "<base href=\"" + BASE_URL + "/dir/sub/\"><a href=\"../../page\" /><a href=\"" + BASE_URL + ".evil.com\" />";
+        setupProcessorAndReader(content);
+
+        pageCrawler.run();
+
+        verifySubmitted(new CrawlResult(new HashSet<>(singletonList(BASE_URL + "/page")),
+                new HashSet<>(singletonList(BASE_URL + ".evil.com")), emptySet()));
+    }
+
+    @Test
+    public void resolvesRelativeLinksAgainstTheUrlThePageCameFrom() throws Exception {
+        // The page was queued normalized and the server redirected it to the directory
+        String url = BASE_URL + "/docs/guide";
+        when(pageProcessor.getNextPage()).thenReturn(url, (String) null);
+        doAnswer(invocation -> {
+            invocation.<Consumer<String>>getArgument(3).accept(url + "/");
+            invocation.<LinkExtractor>getArgument(2).feed("<a href=\"intro\"><a href=\"../api\"><a href=\"./\">");
+            return null;
+        }).when(urlReader).read(eq(url), isNull(), any(LinkExtractor.class), any());
+
+        pageCrawler.run();
+
+        verify(pageProcessor).submitResult(eq(url), eq(new CrawlResult(new HashSet<>(asList(url + "/intro", BASE_URL + "/docs/api")),
+                emptySet(), emptySet())), isNull(), anyLong());
+    }
+
+    @Test
+    public void reusesThePreviousResultOfAnUnchangedPage() throws Exception {
+        PageVersion previousVersion = new PageVersion("\"v1\"", null, 42);
+        CrawlResult previous = new CrawlResult(new HashSet<>(singletonList(BASE_URL + "/page")), emptySet(), emptySet(), previousVersion);
+        when(pageProcessor.getNextPage()).thenReturn(BASE_URL, (String) null);
+        when(pageProcessor.takePreviousResult(BASE_URL)).thenReturn(previous);
+        when(urlReader.read(eq(BASE_URL), eq(previousVersion), any(LinkExtractor.class), any())).thenReturn(previousVersion);
+
+        pageCrawler.run();
+
+        verifySubmitted(previous);
+    }
+
+    @Test
+    public void submitsTheCanonicalUrlOfThePage() throws Exception {
+        setupProcessorAndReader("<head><LINK href=\"/main\" rel=\"Canonical\"></head><a href=\"page\">");
+
+        pageCrawler.run();
+
+        verify(pageProcessor).submitResult(BASE_URL, resultsFromInternalLink(BASE_URL + "/page"), BASE_URL + "/main", SimHash.NONE);
+    }
+
+    @Test
+    public void tellsTheProcessorWhenAHostIsOverloaded() throws Exception {
+        when(pageProcessor.getNextPage()).thenReturn(BASE_URL, BASE_URL + "/missing", null);
+        when(urlReader.read(eq(BASE_URL), isNull(), any(LinkExtractor.class), any())).thenThrow(new HttpStatusException(503, BASE_URL));
+        when(urlReader.read(eq(BASE_URL + "/missing"), isNull(), any(LinkExtractor.class), any())).thenThrow(new HttpStatusException(404, BASE_URL + "/missing"));
+
+        pageCrawler.run();
+
+        verify(pageProcessor).submitError(BASE_URL, true);
+        verify(pageProcessor).submitError(BASE_URL + "/missing", false);
+    }
+
+    @Test
+    public void aTimeoutIsAnOverload() throws Exception {
+        when(pageProcessor.getNextPage()).thenReturn(BASE_URL, (String) null);
+        when(urlReader.read(eq(BASE_URL), isNull(), any(LinkExtractor.class), any())).thenThrow(new SocketTimeoutException("Read timed out"));
+
+        pageCrawler.run();
+
+        verify(pageProcessor).submitError(BASE_URL, true);
+    }
+
+    private void verifySubmitted(CrawlResult result) {
+        verify(pageProcessor).submitResult(eq(BASE_URL), eq(result), isNull(), anyLong());
     }
 
     private void setupProcessorAndReader(String urlContent) throws InterruptedException, IOException {
-        when(pageProcessor.getNextPage()).thenReturn(BASE_URL, PageProcessor.COMPLETE);
-        when(urlReader.read(BASE_URL)).thenReturn(urlContent);
+        when(pageProcessor.getNextPage()).thenReturn(BASE_URL, (String) null);
+        doAnswer(invocation -> {
+            invocation.<LinkExtractor>getArgument(2).feed(urlContent);
+            return null;
+        }).when(urlReader).read(eq(BASE_URL), isNull(), any(LinkExtractor.class), any());
     }
 
     private CrawlResult resultsFromInternalLink(String link) {
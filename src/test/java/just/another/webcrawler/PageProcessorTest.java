@@ -1,21 +1,30 @@
 package just.another.webcrawler;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import static java.util.Collections.emptySet;
-import static just.another.webcrawler.PageProcessor.COMPLETE;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 
 public class PageProcessorTest {
 
     private static final String BASE_URL = "http://www.someurl.com";
 
-    private PageProcessor pageProcessor = new PageProcessor(BASE_URL, 1);
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PageProcessor pageProcessor = new PageProcessor(BASE_URL);
 
     @Test
     public void getsStartingUrlAsFirstTask() throws Exception {
@@ -32,8 +41,11 @@ public class PageProcessorTest {
         String firstTask = pageProcessor.getNextPage();
         pageProcessor.submitResult(firstTask, new CrawlResult(emptySet(), asSet(externalLink), emptySet()));
 
-        Page expectedPage = new Page(BASE_URL, emptySet(), asSet(externalLink), emptySet());
-        assertThat(pageProcessor.getSiteMap(), is(expectedPage));
+        LinkGraph siteMap = pageProcessor.getSiteMap();
+        assertThat(siteMap.size(), is(1));
+        assertThat(siteMap.url(0), is(BASE_URL));
+        assertThat(siteMap.externalLinks(0), is(asSet(externalLink)));
+        assertThat(siteMap.images(0), is(emptySet()));
     }
 
     @Test
@@ -43,8 +55,10 @@ public class PageProcessorTest {
         String firstTask = pageProcessor.getNextPage();
         pageProcessor.submitResult(firstTask, new CrawlResult(emptySet(), emptySet(), asSet(image)));
 
-        Page expectedPage = new Page(BASE_URL, emptySet(), emptySet(), asSet(image));
-        assertThat(pageProcessor.getSiteMap(), is(expectedPage));
+        LinkGraph siteMap = pageProcessor.getSiteMap();
+        assertThat(siteMap.size(), is(1));
+        assertThat(siteMap.externalLinks(0), is(emptySet()));
+        assertThat(siteMap.images(0), is(asSet(image)));
     }
 
     @Test
@@ -56,8 +70,10 @@ public class PageProcessorTest {
         String secondTask = pageProcessor.getNextPage();
         pageProcessor.submitResult(secondTask, new CrawlResult(emptySet(), emptySet(), emptySet()));
 
-        Page expectedPage = new Page(BASE_URL, asSet(new Page(internalLink, emptySet(), emptySet(), emptySet())), emptySet(), emptySet());
-        assertThat(pageProcessor.getSiteMap(), is(expectedPage));
+        LinkGraph siteMap = pageProcessor.getSiteMap();
+        assertThat(siteMap.size(), is(2));
+        assertThat(linksOf(siteMap, BASE_URL), is(asSet(internalLink)));
+        assertThat(linksOf(siteMap, internalLink), is(emptySet()));
     }
 
     @Test
@@ -76,20 +92,17 @@ public class PageProcessorTest {
                 asSet("http://www.someurl.com/image.gif")
         ));
 
-        Page expectedPage = new Page(
-                BASE_URL,
-                asSet(new Page(
-                        BASE_URL + "/internal-page",
-                        emptySet(),
-                        asSet("http://www.twitter.com"),
-                        asSet("http://www.someurl.com/image.gif"))),
-                asSet("http://www.google.com"),
-                asSet("http://www.someurl.com/image.gif"));
-        assertThat(pageProcessor.getSiteMap(), is(expectedPage));
+        LinkGraph siteMap = pageProcessor.getSiteMap();
+        int childPage = siteMap.id(BASE_URL + "/internal-page");
+        assertThat(linksOf(siteMap, BASE_URL), is(asSet(BASE_URL + "/internal-page")));
+        assertThat(siteMap.externalLinks(0), is(asSet("http://www.google.com")));
+        assertThat(siteMap.images(0), is(asSet("http://www.someurl.com/image.gif")));
+        assertThat(siteMap.externalLinks(childPage), is(asSet("http://www.twitter.com")));
+        assertThat(siteMap.images(childPage), is(asSet("http://www.someurl.com/image.gif")));
     }
 
     @Test
-    public void circularReferencesRemovedFromSiteMap() throws Exception {
+    public void circularReferencesShareOneNode() throws Exception {
         String firstLink = BASE_URL + "/first";
         String secondLink = BASE_URL + "/second";
 
@@ -97,17 +110,12 @@ public class PageProcessorTest {
         pageProcessor.submitResult(pageProcessor.getNextPage(), new CrawlResult(asSet(secondLink), emptySet(), emptySet()));
         pageProcessor.submitResult(pageProcessor.getNextPage(), new CrawlResult(asSet(firstLink), emptySet(), emptySet()));
 
-        assertThat(pageProcessor.getNextPage(), is(COMPLETE));
-        Page expectedSiteMap = new Page(
-                BASE_URL,
-                asSet(new Page(
-                        firstLink,
-                        asSet(new Page(secondLink, emptySet(), emptySet(), emptySet())),
-                        emptySet(),
-                        emptySet())),
-                emptySet(),
-                emptySet());
-        assertThat(pageProcessor.getSiteMap(), is(expectedSiteMap));
+        assertNull(pageProcessor.getNextPage());
+        LinkGraph siteMap = pageProcessor.getSiteMap();
+        assertThat(siteMap.size(), is(3));
+        assertThat(linksOf(siteMap, BASE_URL), is(asSet(firstLink)));
+        assertThat(linksOf(siteMap, firstLink), is(asSet(secondLink)));
+        assertThat(linksOf(siteMap, secondLink), is(asSet(firstLink)));
     }
 
     @Test
@@ -120,11 +128,308 @@ public class PageProcessorTest {
         pageProcessor.submitResult(secondTask, new CrawlResult(emptySet(), emptySet(), emptySet()));
         String noMorePages = pageProcessor.getNextPage();
 
-        assertThat(noMorePages, is(COMPLETE));
+        assertNull(noMorePages);
+    }
+
+    @Test
+    public void recordsPagesErrorsAndQueueDepth() throws Exception {
+        CrawlMetrics metrics = new CrawlMetrics();
+        pageProcessor = PageProcessor.newBuilder(BASE_URL).withMetrics(metrics).build();
+
+        pageProcessor.submitResult(pageProcessor.getNextPage(), new CrawlResult(asSet(BASE_URL + "/first", BASE_URL + "/second"), emptySet(), emptySet()));
+        pageProcessor.submitError(pageProcessor.getNextPage());
+
+        assertThat(metrics.getPagesCrawled(), is(1L));
+        assertThat(metrics.getErrors(), is(1L));
+        assertThat(metrics.getFrontierDepth(), is(1));
+        assertThat(metrics.getUnprocessedPages(), is(1));
+        assertThat(metrics.getEnqueueTimes().getCount(), is(1L));
+        assertThat(metrics.getSubmitTimes().getCount(), is(1L));
+    }
+
+    @Test
+    public void resumesFromTheJournalWithoutRecrawlingFinishedPages() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("crawl.journal");
+        String firstLink = BASE_URL + "/first";
+        String secondLink = BASE_URL + "/second";
+        try (CrawlJournal journal = new CrawlJournal(path)) {
+            pageProcessor = PageProcessor.newBuilder(BASE_URL).withJournal(journal).build();
+            pageProcessor.submitResult(pageProcessor.getNextPage(), new CrawlResult(asSet(firstLink, secondLink), emptySet(), emptySet()));
+            pageProcessor.submitError(pageProcessor.getNextPage());
+        }
+
+        try (CrawlJournal journal = new CrawlJournal(path)) {
+            pageProcessor = PageProcessor.newBuilder(BASE_URL).withJournal(journal).build();
+            String remaining = pageProcessor.getNextPage();
+            assertTrue(remaining.equals(firstLink) || remaining.equals(secondLink));
+            pageProcessor.submitResult(remaining, CrawlResult.EMPTY);
+
+            assertNull(pageProcessor.getNextPage());
+            assertThat(linksOf(pageProcessor.getSiteMap(), BASE_URL), is(asSet(remaining)));
+        }
+    }
+
+    @Test
+    public void doesNotFollowLinksBeyondTheMaxDepth() throws Exception {
+        pageProcessor = PageProcessor.newBuilder(BASE_URL).withMaxDepth(1).build();
+
+        pageProcessor.submitResult(pageProcessor.getNextPage(), new CrawlResult(asSet(BASE_URL + "/first"), emptySet(), emptySet()));
+        String first = pageProcessor.getNextPage();
+        pageProcessor.submitResult(first, new CrawlResult(asSet(BASE_URL + "/second"), emptySet(), emptySet()));
+
+        assertThat(first, is(BASE_URL + "/first"));
+        assertNull(pageProcessor.getNextPage());
+    }
+
+    @Test
+    public void keepsTheDepthsOfQueuedUrlsOnlyWhenTheyAreUsed() throws Exception {
+        CrawlResult links = new CrawlResult(asSet(BASE_URL + "/first", BASE_URL + "/second"), emptySet(), emptySet());
+        pageProcessor.submitResult(pageProcessor.getNextPage(), links);
+        PageProcessor limited = PageProcessor.newBuilder(BASE_URL).withMaxDepth(5).build();
+        limited.submitResult(limited.getNextPage(), links);
+        PageProcessor prioritised = PageProcessor.newBuilder(BASE_URL).withFrontier(new PriorityFrontier()).build();
+        prioritised.submitResult(prioritised.getNextPage(), links);
+
+        assertThat(pageProcessor.depthsKept(), is(0));
+        assertThat(limited.depthsKept(), is(2));
+        assertThat(prioritised.depthsKept(), is(2));
+    }
+
+    @Test
+    public void stopsHandingOutPagesOnceTheMaxPagesAreTaken() throws Exception {
+        PriorityFrontier frontier = new PriorityFrontier();
+        pageProcessor = PageProcessor.newBuilder(BASE_URL).withFrontier(frontier).withMaxPages(2).build();
+
+        pageProcessor.submitResult(pageProcessor.getNextPage(), new CrawlResult(asSet(BASE_URL + "/first", BASE_URL + "/second"), emptySet(), emptySet()));
+        String next = pageProcessor.getNextPage();
+        pageProcessor.submitResult(next, new CrawlResult(asSet(BASE_URL + "/third"), emptySet(), emptySet()));
+
+        assertNull(pageProcessor.getNextPage());
+        assertNull(pageProcessor.getNextPage());
+        assertThat(pageProcessor.getSiteMap().size(), is(2));
+    }
+
+    @Test
+    public void stopsHandingOutPagesOnceTheTimeIsUp() throws Exception {
+        pageProcessor = PageProcessor.newBuilder(BASE_URL).withMaxMillis(50).build();
+        pageProcessor.submitResult(pageProcessor.getNextPage(), new CrawlResult(asSet(BASE_URL + "/first"), emptySet(), emptySet()));
+
+        Thread.sleep(100);
+
+        assertNull(pageProcessor.getNextPage());
+    }
+
+    @Test
+    public void aliasesAreLeftOutAndLinkedToAsTheirCanonicalPage() throws Exception {
+        CrawlMetrics metrics = new CrawlMetrics();
+        pageProcessor = PageProcessor.newBuilder(BASE_URL).withDuplicateIndex(new DuplicateIndex(false)).withMetrics(metrics).build();
+        String index = BASE_URL + "/index.html";
+        String copy = BASE_URL + "/copy";
+        String article = BASE_URL + "/article";
+        String tracked = article + "/tracked";
+        String hidden = BASE_URL + "/hidden";
+        // The index has the content of the base url and the tracked page names the article as canonical
+        Map<String, CrawlResult> pages = new HashMap<>();
+        pages.put(BASE_URL, new CrawlResult(asSet(index, copy, tracked), emptySet(), emptySet(), new PageVersion(null, null, 1)));
+        pages.put(index, new CrawlResult(asSet(hidden), emptySet(), emptySet(), new PageVersion(null, null, 1)));
+        pages.put(copy, new CrawlResult(asSet(tracked), emptySet(), emptySet(), new PageVersion(null, null, 2)));
+        pages.put(tracked, new CrawlResult(asSet(hidden), emptySet(), emptySet(), new PageVersion(null, null, 3)));
+        pages.put(article, new CrawlResult(emptySet(), emptySet(), emptySet(), new PageVersion(null, null, 4)));
+
+        Set<String> taken = new HashSet<>();
+        String url;
+        while ((url = pageProcessor.getNextPage()) != null) {
+            taken.add(url);
+            pageProcessor.submitResult(url, pages.get(url), url.equals(tracked) ? article : null, SimHash.NONE);
+        }
+
+        assertThat(taken, is(pages.keySet()));
+        assertThat(metrics.getDuplicatePages(), is(2L));
+        LinkGraph siteMap = pageProcessor.getSiteMap();
+        assertThat(siteMap.size(), is(3));
+        assertThat(linksOf(siteMap, BASE_URL), is(asSet(copy, article)));
+        assertThat(linksOf(siteMap, copy), is(asSet(article)));
+    }
+
+    @Test
+    public void anAliasWhoseCanonicalPageFailsStaysAPageAndItsLinksAreFollowed() throws Exception {
+        pageProcessor = PageProcessor.newBuilder(BASE_URL).withDuplicateIndex(new DuplicateIndex(false)).build();
+        String missing = BASE_URL + "/missing";
+        String tracked = BASE_URL + "/tracked";
+        String page = BASE_URL + "/page";
+        String skipped = BASE_URL + "/skipped";
+        // The base url names a canonical page that fails, the tracked page one that can't be crawled and the page one
+        // that isn't HTML
+        Map<String, CrawlResult> pages = new HashMap<>();
+        pages.put(BASE_URL, new CrawlResult(asSet(tracked, page), emptySet(), emptySet(), new PageVersion(null, null, 1)));
+        pages.put(tracked, new CrawlResult(asSet(page), emptySet(), emptySet(), new PageVersion(null, null, 2)));
+        pages.put(page, new CrawlResult(asSet(tracked), emptySet(), emptySet(), new PageVersion(null, null, 3)));
+        Map<String, String> canonicalUrls = new HashMap<>();
+        canonicalUrls.put(BASE_URL, missing);
+        canonicalUrls.put(tracked, BASE_URL + "/report.pdf");
+        canonicalUrls.put(page, skipped);
+
+        Set<String> taken = new HashSet<>();
+        String url;
+        while ((url = pageProcessor.getNextPage()) != null) {
+            taken.add(url);
+            if (url.equals(missing)) {
+                pageProcessor.submitError(url);
+            } else if (url.equals(skipped)) {
+                pageProcessor.submitSkipped(url);
+            } else {
+                pageProcessor.submitResult(url, pages.get(url), canonicalUrls.get(url), SimHash.NONE);
+            }
+        }
+
+        assertThat(taken, is(asSet(BASE_URL, missing, tracked, page, skipped)));
+        LinkGraph siteMap = pageProcessor.getSiteMap();
+        assertThat(siteMap.size(), is(3));
+        assertThat(linksOf(siteMap, BASE_URL), is(asSet(tracked, page)));
+        assertThat(linksOf(siteMap, tracked), is(asSet(page)));
+        assertThat(linksOf(siteMap, page), is(asSet(tracked)));
+    }
+
+    @Test
+    public void anAliasStaysLinkedToItsCanonicalPageThroughAFailedOne() throws Exception {
+        pageProcessor = PageProcessor.newBuilder(BASE_URL).withDuplicateIndex(new DuplicateIndex(false)).build();
+        String first = BASE_URL + "/first";
+        String second = BASE_URL + "/second";
+        String missing = BASE_URL + "/missing";
+
+        // The first names the second as canonical, which names a page that fails
+        pageProcessor.submitResult(pageProcessor.getNextPage(), new CrawlResult(asSet(first), emptySet(), emptySet(), new PageVersion(null, null, 1)));
+        pageProcessor.submitResult(pageProcessor.getNextPage(), new CrawlResult(emptySet(), emptySet(), emptySet(), new PageVersion(null, null, 2)), second, SimHash.NONE);
+        pageProcessor.submitResult(pageProcessor.getNextPage(), new CrawlResult(emptySet(), emptySet(), emptySet(), new PageVersion(null, null, 3)), missing, SimHash.NONE);
+        pageProcessor.submitError(pageProcessor.getNextPage());
+
+        assertNull(pageProcessor.getNextPage());
+        LinkGraph siteMap = pageProcessor.getSiteMap();
+        assertThat(siteMap.size(), is(2));
+        assertThat(linksOf(siteMap, BASE_URL), is(asSet(second)));
+    }
+
+    @Test
+    public void resumesWithTheAliasesAndContentOfFinishedPages() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("crawl.journal");
+        String index = BASE_URL + "/index.html";
+        String tracked = BASE_URL + "/tracked";
+        String article = BASE_URL + "/article";
+        String copy = BASE_URL + "/copy";
+        try (CrawlJournal journal = new CrawlJournal(path)) {
+            pageProcessor = PageProcessor.newBuilder(BASE_URL).withJournal(journal).withDuplicateIndex(new DuplicateIndex(false)).build();
+            pageProcessor.submitResult(pageProcessor.getNextPage(), new CrawlResult(asSet(index, tracked, copy), emptySet(), emptySet(),
+                    new PageVersion(null, null, 1)), null, SimHash.NONE);
+            // The crawl stops before the copy and the article the tracked page names as canonical are finished
+            Set<String> taken = new HashSet<>();
+            while (!taken.containsAll(asSet(index, tracked))) {
+                String url = pageProcessor.getNextPage();
+                taken.add(url);
+                if (url.equals(index)) {
+                    pageProcessor.submitResult(url, new CrawlResult(emptySet(), emptySet(), emptySet(), new PageVersion(null, null, 1)), null, SimHash.NONE);
+                } else if (url.equals(tracked)) {
+                    pageProcessor.submitResult(url, new CrawlResult(emptySet(), emptySet(), emptySet(), new PageVersion(null, null, 2)), article, SimHash.NONE);
+                }
+            }
+        }
+
+        CrawlMetrics metrics = new CrawlMetrics();
+        try (CrawlJournal journal = new CrawlJournal(path)) {
+            pageProcessor = PageProcessor.newBuilder(BASE_URL).withJournal(journal).withDuplicateIndex(new DuplicateIndex(false))
+                    .withMetrics(metrics).build();
+            Set<String> taken = new HashSet<>();
+            String url;
+            while ((url = pageProcessor.getNextPage()) != null) {
+                taken.add(url);
+                // The copy has the content of the base url, crawled before the resume
+                long contentHash = url.equals(copy) ? 1 : 3;
+                pageProcessor.submitResult(url, new CrawlResult(emptySet(), emptySet(), emptySet(), new PageVersion(null, null, contentHash)), null, SimHash.NONE);
+            }
+
+            assertThat(taken, is(asSet(copy, article)));
+            assertThat(metrics.getDuplicatePages(), is(1L));
+            LinkGraph siteMap = pageProcessor.getSiteMap();
+            assertThat(siteMap.size(), is(2));
+            assertThat(linksOf(siteMap, BASE_URL), is(asSet(article)));
+        }
+    }
+
+    @Test
+    public void doesNotQueueLinksToBinaryFiles() throws Exception {
+        pageProcessor.submitResult(pageProcessor.getNextPage(), new CrawlResult(
+                asSet(BASE_URL + "/report.PDF", BASE_URL + "/photo.jpg", BASE_URL + "/v1.2/page"), emptySet(), emptySet()));
+
+        assertThat(pageProcessor.getNextPage(), is(BASE_URL + "/v1.2/page"));
+        pageProcessor.submitResult(BASE_URL + "/v1.2/page", CrawlResult.EMPTY);
+        assertNull(pageProcessor.getNextPage());
+    }
+
+    @Test
+    public void queuesOnlyAllowedLinksAndSeedsFromSitemaps() throws Exception {
+        UrlReader urlReader = mock(UrlReader.class);
+        when(urlReader.read(BASE_URL + "/robots.txt")).thenReturn("User-agent: *\nDisallow: /private\nSitemap: " + BASE_URL + "/sitemap.xml\n");
+        when(urlReader.read(BASE_URL + "/sitemap.xml")).thenReturn("<sitemapindex><sitemap><loc>" + BASE_URL + "/pages.xml</loc></sitemap></sitemapindex>");
+        when(urlReader.read(BASE_URL + "/pages.xml")).thenReturn("<urlset><url><loc>" + BASE_URL + "/listed/</loc></url>" +
+                "<url><loc>" + BASE_URL + "/private/listed</loc></url><url><loc>http://www.google.com</loc></url></urlset>");
+        CrawlMetrics metrics = new CrawlMetrics();
+        pageProcessor = PageProcessor.newBuilder(BASE_URL)
+                .withRobots(new RobotsCache(urlReader))
+                .withSeedFromSitemaps(true)
+                .withMetrics(metrics)
+                .build();
+
+        assertThat(pageProcessor.getNextPage(), is(BASE_URL));
+        pageProcessor.submitResult(BASE_URL, new CrawlResult(asSet(BASE_URL + "/private/page", BASE_URL + "/public"), emptySet(), emptySet()));
+        Set<String> queued = asSet(pageProcessor.getNextPage(), pageProcessor.getNextPage());
+
+        assertThat(queued, is(asSet(BASE_URL + "/listed", BASE_URL + "/public")));
+        assertThat(metrics.getDisallowedLinks(), is(2L));
+        verify(urlReader, times(1)).read(BASE_URL + "/robots.txt");
+    }
+
+    @Test
+    public void resumesASitemapSeededCrawlWithoutLosingSitemapUrlsOrTheirLinks() throws Exception {
+        UrlReader urlReader = mock(UrlReader.class);
+        when(urlReader.read(BASE_URL + "/robots.txt")).thenReturn("Sitemap: " + BASE_URL + "/sitemap.xml\n");
+        when(urlReader.read(BASE_URL + "/sitemap.xml")).thenReturn("<urlset><url><loc>" + BASE_URL + "/listed</loc></url>" +
+                "<url><loc>" + BASE_URL + "/unfinished</loc></url></urlset>");
+        Path path = folder.getRoot().toPath().resolve("crawl.journal");
+        String listed = BASE_URL + "/listed";
+        try (CrawlJournal journal = new CrawlJournal(path)) {
+            pageProcessor = PageProcessor.newBuilder(BASE_URL).withJournal(journal)
+                    .withRobots(new RobotsCache(urlReader)).withSeedFromSitemaps(true).build();
+            assertThat(pageProcessor.getNextPage(), is(BASE_URL));
+            pageProcessor.submitResult(BASE_URL, new CrawlResult(asSet(BASE_URL + "/linked"), emptySet(), emptySet()));
+            // The listed page is only known from the sitemap, and so is the page it links to
+            while (!pageProcessor.getNextPage().equals(listed)) {
+            }
+            pageProcessor.submitResult(listed, new CrawlResult(asSet(listed + "/deep"), emptySet(), emptySet()));
+        }
+
+        try (CrawlJournal journal = new CrawlJournal(path)) {
+            pageProcessor = PageProcessor.newBuilder(BASE_URL).withJournal(journal)
+                    .withRobots(new RobotsCache(urlReader)).withSeedFromSitemaps(true).build();
+            Set<String> queued = new HashSet<>();
+            String url;
+            while ((url = pageProcessor.getNextPage()) != null) {
+                queued.add(url);
+                pageProcessor.submitResult(url, CrawlResult.EMPTY);
+            }
+
+            assertThat(queued, is(asSet(BASE_URL + "/linked", BASE_URL + "/unfinished", listed + "/deep")));
+        }
+    }
+
+    private static Set<String> linksOf(LinkGraph siteMap, String url) {
+        int node = siteMap.id(url);
+        Set<String> links = new HashSet<>();
+        for (int i = 0; i < siteMap.linkCount(node); i++) {
+            links.add(siteMap.url(siteMap.link(node, i)));
+        }
+        return links;
     }
 
-    @SafeVarargs
-    private static <T> Set<T> asSet(T... items) {
+    private static Set<String> asSet(String... items) {
         return new HashSet<>(Arrays.asList(items));
     }
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+package just.another.webcrawler;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class PoliteFrontierTest {
+
+    @Test
+    public void takesOtherHostsWhileAHostIsWaitingForItsRate() throws Exception {
+        PoliteFrontier frontier = new PoliteFrontier(5, 1);
+        frontier.add("http://one.com/a");
+        frontier.add("http://one.com/b");
+        frontier.add("http://two.com/a");
+
+        long start = System.nanoTime();
+        assertThat(frontier.take(), is("http://one.com/a"));
+        assertThat(frontier.take(), is("http://two.com/a"));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(150));
+        assertThat(frontier.take(), is("http://one.com/b"));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    public void allowsABurstAfterAnIdleHost() throws Exception {
+        PoliteFrontier frontier = new PoliteFrontier(1, 3);
+        for (int i = 0; i < 3; i++) {
+            frontier.add("http://one.com/" + i);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            assertThat(frontier.take(), is("http://one.com/" + i));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        assertThat(frontier.size(), is(0));
+    }
+
+    @Test
+    public void warmsHostsWhenQueuedAndWhenNextInLine() throws Exception {
+        HostWarmer warmer = mock(HostWarmer.class);
+        PoliteFrontier frontier = new PoliteFrontier(0, 1, warmer);
+        frontier.addAll(Arrays.asList("http://one.com/a", "http://one.com/b", "http://two.com/a"));
+
+        verify(warmer).queued("http://one.com/a");
+        verify(warmer).queued("http://two.com/a");
+        verify(warmer, never()).next(anyString());
+
+        assertThat(frontier.take(), is("http://one.com/a"));
+        verify(warmer).next("http://two.com/a");
+        assertThat(frontier.take(), is("http://two.com/a"));
+        verify(warmer).next("http://one.com/b");
+        verifyNoMoreInteractions(warmer);
+    }
+
+    @Test
+    public void takesOtherHostsWhileAHostIsAtItsConcurrencyLimit() throws Exception {
+        PoliteFrontier frontier = new PoliteFrontier(0, 1, null, 2);
+        frontier.addAll(Arrays.asList("http://one.com/a", "http://one.com/b", "http://one.com/c", "http://two.com/a"));
+
+        assertThat(frontier.take(), is("http://one.com/a"));
+        assertThat(frontier.take(), is("http://two.com/a"));
+        assertThat(frontier.take(), is("http://one.com/b"));
+        assertThat(frontier.size(), is(1));
+
+        frontier.done("http://two.com/a");
+        frontier.failed("http://one.com/a", true);
+        frontier.done("http://one.com/b");
+        assertThat(frontier.take(), is("http://one.com/c"));
+        assertThat(frontier.pending(), is(1));
+    }
+
+    @Test
+    public void addsABatchAcrossHosts() throws Exception {
+        PoliteFrontier frontier = new PoliteFrontier();
+        frontier.addAll(Arrays.asList("http://one.com/a", "http://one.com/b", "http://two.com/a"));
+
+        assertThat(frontier.size(), is(3));
+        assertThat(frontier.pending(), is(3));
+        assertThat(frontier.take(), is("http://one.com/a"));
+        assertThat(frontier.take(), is("http://two.com/a"));
+        assertThat(frontier.take(), is("http://one.com/b"));
+    }
+
+    @Test
+    public void finishesOnceNothingIsPending() throws Exception {
+        PoliteFrontier frontier = new PoliteFrontier();
+        frontier.add("http://one.com/a");
+        String url = frontier.take();
+        Thread crawler = new Thread(() -> {
+            frontier.add("http://one.com/b");
+            frontier.done(url);
+        });
+        crawler.start();
+
+        assertThat(frontier.take(), is("http://one.com/b"));
+        frontier.done("http://one.com/b");
+        assertNull(frontier.take());
+        assertThat(frontier.pending(), is(0));
+    }
+
+    @Test
+    public void closingWakesWaitingTakers() throws Exception {
+        PoliteFrontier frontier = new PoliteFrontier();
+        frontier.add("http://one.com/a");
+        frontier.take();
+        Thread closer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            frontier.close();
+        });
+        closer.start();
+
+        assertNull(frontier.take());
+    }
+
+    @Test
+    public void hostIsTheLowerCasedAuthority() throws Exception {
+        assertThat(PoliteFrontier.hostOf("http://WWW.Someurl.com:8080/page?q=1"), is("www.someurl.com:8080"));
+        assertThat(PoliteFrontier.hostOf("http://www.someurl.com"), is("www.someurl.com"));
+    }
+}
@@ -0,0 +1,46 @@
+package just.another.webcrawler;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertNull;
+
+public class PriorityFrontierTest {
+
+    @Test
+    public void takesTheShallowestUrlsFirstInTheOrderTheyWereAdded() throws Exception {
+        PriorityFrontier frontier = new PriorityFrontier();
+        frontier.addAll(Arrays.asList("http://one.com/deep/a", "http://one.com/deep/b"), 2);
+        frontier.add("http://one.com/a", 1);
+        frontier.add("http://one.com/b", 1);
+
+        assertThat(frontier.take(), is("http://one.com/a"));
+        assertThat(frontier.take(), is("http://one.com/b"));
+        assertThat(frontier.take(), is("http://one.com/deep/a"));
+        assertThat(frontier.take(), is("http://one.com/deep/b"));
+    }
+
+    @Test
+    public void holdsBackUrlsThatRepeatASegment() throws Exception {
+        PriorityFrontier frontier = new PriorityFrontier(UrlScorer.depth().plus(UrlScorer.repeatedSegments(3)));
+        frontier.add("http://one.com/2026/may/2026/may", 1);
+        frontier.add("http://one.com/a/b/c", 3);
+
+        assertThat(frontier.take(), is("http://one.com/a/b/c"));
+        assertThat(frontier.take(), is("http://one.com/2026/may/2026/may"));
+    }
+
+    @Test
+    public void finishesOnceNothingIsPending() throws Exception {
+        PriorityFrontier frontier = new PriorityFrontier();
+        frontier.add("http://one.com");
+        String url = frontier.take();
+        frontier.done(url);
+
+        assertNull(frontier.take());
+        assertThat(frontier.pending(), is(0));
+    }
+}
@@ -0,0 +1,121 @@
+package just.another.webcrawler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptySet;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResultStoreTest {
+
+    private static final String BASE_URL = "http://www.someurl.com";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void internsEveryUrlOnceAndReturnsEqualResults() throws Exception {
+        try (ResultStore store = new ResultStore()) {
+            CrawlResult home = new CrawlResult(set(BASE_URL + "/a", BASE_URL + "/b"), set("http://other.com"), set(BASE_URL + "/logo.png"),
+                    new PageVersion("\"v1\"", null, 42));
+            CrawlResult a = new CrawlResult(set(BASE_URL, BASE_URL + "/b"), emptySet(), set(BASE_URL + "/logo.png"));
+            store.put(BASE_URL, home);
+            store.put(BASE_URL + "/a", a);
+
+            assertThat(store.get(BASE_URL), is(home));
+            assertThat(store.get(BASE_URL + "/a"), is(a));
+            assertTrue(store.get(BASE_URL).getInternalLinks().contains(BASE_URL + "/b"));
+            assertNull(store.get(BASE_URL + "/b"));
+            assertThat(store.size(), is(2));
+            assertThat(store.urlCount(), is(5));
+        }
+    }
+
+    @Test
+    public void spillsTheOldestPagesAndReadsThemBack() throws Exception {
+        Map<String, CrawlResult> expected = new HashMap<>();
+        try (ResultStore store = new ResultStore(folder.getRoot().toPath(), 1024)) {
+            for (int page = 0; page < 500; page++) {
+                CrawlResult result = new CrawlResult(set(BASE_URL + "/" + (page + 1), BASE_URL + "/" + (page * 7 % 500)), set("http://other.com/" + page),
+                        emptySet(), page % 2 == 0 ? new PageVersion(null, "Mon, 01 Jan 2024 00:00:00 GMT", page) : null);
+                store.put(BASE_URL + "/" + page, result);
+                expected.put(BASE_URL + "/" + page, result);
+            }
+
+            assertTrue(store.residentBytes() <= 1024);
+            assertThat(store.size(), is(500));
+            for (Map.Entry<String, CrawlResult> page : expected.entrySet()) {
+                assertThat(store.get(page.getKey()), is(page.getValue()));
+            }
+            Map<String, CrawlResult> all = new HashMap<>();
+            store.forEach(all::put);
+            assertThat(all, is(expected));
+        }
+        assertThat(folder.getRoot().list().length, is(0));
+    }
+
+    @Test
+    public void spillsInBoundedWritesAndKeepsNoLargeBuffer() throws Exception {
+        try (ResultStore store = new ResultStore(folder.getRoot().toPath(), 64 * 1024, 1024)) {
+            int pages = 5000;
+            for (int page = 0; page < pages; page++) {
+                store.put(BASE_URL + "/" + page, result(page));
+            }
+
+            assertTrue(store.residentBytes() <= 64 * 1024);
+            assertThat(store.recordCapacity(), is(4096));
+            for (int page = 0; page < pages; page++) {
+                assertThat(store.get(BASE_URL + "/" + page), is(result(page)));
+            }
+        }
+    }
+
+    @Test
+    public void readsPagesBackWhileTheyAreBeingSpilled() throws Exception {
+        try (ResultStore store = new ResultStore(folder.getRoot().toPath(), 1024)) {
+            AtomicInteger stored = new AtomicInteger();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread reader = new Thread(() -> {
+                try {
+                    for (int i = 0; stored.get() < 2000; i++) {
+                        // Every page stored so far in turn, the oldest are those being spilled
+                        int page = i % stored.get();
+                        assertThat(store.get(BASE_URL + "/" + page), is(result(page)));
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            store.put(BASE_URL + "/0", result(0));
+            stored.set(1);
+            reader.start();
+            for (int page = 1; page < 2000; page++) {
+                store.put(BASE_URL + "/" + page, result(page));
+                stored.set(page + 1);
+            }
+            reader.join();
+
+            assertNull(failure.get());
+        }
+    }
+
+    private static CrawlResult result(int page) {
+        return new CrawlResult(set(BASE_URL + "/" + (page + 1)), set("http://other.com/" + page), emptySet());
+    }
+
+    private static Set<String> set(String... urls) {
+        return new HashSet<>(asList(urls));
+    }
+}
@@ -0,0 +1,95 @@
+package just.another.webcrawler;
+
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class RobotsRulesTest {
+
+    private static final String ROBOTS_TXT = "# Comments are ignored\n" +
+            "User-agent: *\n" +
+            "Disallow: /private\n" +
+            "Allow: /private/open\n" +
+            "Disallow: /*.pdf$\n" +
+            "Disallow: /search*q=\n" +
+            "\n" +
+            "User-agent: other-bot\n" +
+            "User-agent: Web-Crawler\n" +
+            "Disallow: /slow\n" +
+            "\n" +
+            "Sitemap: http://www.someurl.com/sitemap.xml\n";
+
+    @Test
+    public void longestMatchingRuleWins() throws Exception {
+        RobotsRules rules = RobotsRules.parse(ROBOTS_TXT, "some-bot");
+
+        assertTrue(rules.isAllowed("/"));
+        assertFalse(rules.isAllowed("/private"));
+        assertFalse(rules.isAllowed("/private/closed"));
+        assertTrue(rules.isAllowed("/private/open/page"));
+        assertTrue(rules.isAllowed("/slow"));
+    }
+
+    @Test
+    public void matchesWildcardsAndEndAnchors() throws Exception {
+        RobotsRules rules = RobotsRules.parse(ROBOTS_TXT, "some-bot");
+
+        assertFalse(rules.isAllowed("/docs/report.pdf"));
+        assertTrue(rules.isAllowed("/docs/report.pdf/summary"));
+        assertFalse(rules.isAllowed("/search/all?q=term"));
+        assertTrue(rules.isAllowed("/search/all"));
+    }
+
+    @Test(timeout = 1000)
+    public void matchesManyWildcardsInLinearTime() throws Exception {
+        RobotsRules rules = RobotsRules.parse("User-agent: *\nDisallow: /*a*a*a*a*a*a*a*b\nDisallow: /*a*a*a*a*a*a*a*c$\n", "some-bot");
+        String path = "/" + "a".repeat(100_000);
+
+        assertTrue(rules.isAllowed(path));
+        assertFalse(rules.isAllowed(path + "b"));
+        assertFalse(rules.isAllowed(path + "c"));
+        assertTrue(rules.isAllowed(path + "cd"));
+    }
+
+    @Test
+    public void aMissingRobotsTxtAllowsEverythingAndAnUnreachableOneNothing() throws Exception {
+        UrlReader urlReader = mock(UrlReader.class);
+        when(urlReader.read("http://missing.com/robots.txt")).thenThrow(new HttpStatusException(404, "http://missing.com/robots.txt"));
+        when(urlReader.read("http://failing.com/robots.txt")).thenThrow(new HttpStatusException(503, "http://failing.com/robots.txt"));
+        when(urlReader.read("http://unreachable.com/robots.txt")).thenThrow(new ConnectException());
+        RobotsCache robots = new RobotsCache(urlReader);
+
+        assertTrue(robots.isAllowed("http://missing.com/page"));
+        assertFalse(robots.isAllowed("http://failing.com/page"));
+        assertFalse(robots.isAllowed("http://unreachable.com"));
+    }
+
+    @Test
+    public void groupNamingTheAgentReplacesTheDefaultGroup() throws Exception {
+        RobotsRules rules = RobotsRules.parse(ROBOTS_TXT, RobotsCache.USER_AGENT);
+
+        assertFalse(rules.isAllowed("/slow/page"));
+        assertTrue(rules.isAllowed("/private"));
+        assertThat(rules.getSitemaps(), is(singletonList("http://www.someurl.com/sitemap.xml")));
+    }
+
+    @Test
+    public void readsTheLocsOfASitemap() throws Exception {
+        String sitemap = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n" +
+                "  <url><loc>http://www.someurl.com/a?x=1&amp;y=2</loc><lastmod>2024-01-01</lastmod></url>\n" +
+                "  <url><loc> <![CDATA[http://www.someurl.com/b]]> </loc></url>\n" +
+                "</urlset>";
+
+        assertThat(RobotsCache.locs(sitemap), is(new LinkedHashSet<>(Arrays.asList("http://www.someurl.com/a?x=1&y=2", "http://www.someurl.com/b"))));
+    }
+}
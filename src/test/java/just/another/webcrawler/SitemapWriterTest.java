@@ -0,0 +1,80 @@
+package just.another.webcrawler;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class SitemapWriterTest {
+
+    private static final String BASE_URL = "http://www.someurl.com";
+
+    private final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    private final Map<String, CrawlResult> results = new HashMap<>();
+
+    @Test
+    public void writesAPageReachedFromTwoParentsOnce() throws Exception {
+        results.put(BASE_URL, new CrawlResult(singleton(BASE_URL + "/a"), emptySet(), emptySet()));
+        results.put(BASE_URL + "/a", new CrawlResult(singleton(BASE_URL + "/b"), emptySet(), emptySet()));
+        results.put(BASE_URL + "/b", new CrawlResult(singleton(BASE_URL + "/a"), emptySet(), singleton("image")));
+
+        new SitemapWriter(Channels.newChannel(baos), 16).write(LinkGraph.build(BASE_URL, results::get));
+
+        assertThat(baos.toString(), is("http://www.someurl.com\n" +
+                "  Internal links\n" +
+                "    http://www.someurl.com/a\n" +
+                "      Internal links\n" +
+                "        http://www.someurl.com/b\n" +
+                "          Images\n" +
+                "            image\n"));
+    }
+
+    @Test
+    public void writesDeepSitesWithoutRecursing() throws Exception {
+        int depth = 10_000;
+        for (int i = 0; i < depth; i++) {
+            results.put(BASE_URL + "/" + i, new CrawlResult(singleton(BASE_URL + "/" + (i + 1)), emptySet(), emptySet()));
+        }
+
+        LineCountingChannel channel = new LineCountingChannel();
+
+        new SitemapWriter(channel).write(LinkGraph.build(BASE_URL + "/0", results::get));
+
+        assertThat(channel.lines, is(depth * 2 - 1));
+    }
+
+    // The indentation of a deep site is quadratic so lines are counted rather than kept
+    private static class LineCountingChannel implements WritableByteChannel {
+
+        private int lines;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            while (src.hasRemaining()) {
+                if (src.get() == '\n') {
+                    lines++;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
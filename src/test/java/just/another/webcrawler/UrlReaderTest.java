@@ -0,0 +1,261 @@
+package just.another.webcrawler;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UrlReaderTest {
+
+    private static final String URL = "http://www.someurl.com";
+
+    @Test
+    public void streamsContentInBoundedChunks() throws Exception {
+        UrlReader urlReader = new UrlReader(1024, 8);
+        List<String> chunks = new ArrayList<>();
+
+        urlReader.decode(URL, stream("<a href=\"page\">caf\u00e9 \u2603</a>"), chunk -> chunks.add(chunk.toString()));
+
+        assertThat(String.join("", chunks), is("<a href=\"page\">caf\u00e9 \u2603</a>"));
+        chunks.forEach(chunk -> assertTrue(chunk.length() <= 8));
+    }
+
+    @Test(timeout = 10_000)
+    public void timesOutOnAHostThatStopsAnswering() throws Exception {
+        // Accepts connections and never answers them
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            UrlReader urlReader = new UrlReader(1024, 200L, new CrawlMetrics());
+            try {
+                urlReader.read("http://127.0.0.1:" + server.getLocalPort() + "/");
+                fail("Read from a host that never answered");
+            } catch (SocketTimeoutException e) {
+                // As PageCrawler takes a host to be overloaded
+            }
+        }
+    }
+
+    @Test
+    public void truncatesAtMaxBodySize() throws Exception {
+        UrlReader urlReader = new UrlReader(10, 4);
+        StringBuilder content = new StringBuilder();
+
+        urlReader.decode(URL, stream("0123456789abcdef"), content::append);
+
+        assertThat(content.toString(), is("0123456789"));
+    }
+
+    @Test
+    public void extractsLinksSplitAcrossChunks() throws Exception {
+        UrlReader urlReader = new UrlReader(1024, 3);
+        HtmlLinkExtractor extractor = new HtmlLinkExtractor();
+        List<String> links = new ArrayList<>();
+        extractor.begin(new LinkHandler() {
+            @Override
+            public void link(CharSequence href) {
+                links.add(href.toString());
+            }
+
+            @Override
+            public void image(CharSequence src) {
+            }
+
+            @Override
+            public void base(CharSequence href) {
+            }
+        });
+
+        urlReader.decode(URL, stream("<p><a class=\"x\" href=\"first-page\"><A HREF='second'>"), extractor::feed);
+        extractor.end();
+
+        assertThat(links.toString(), is("[first-page, second]"));
+    }
+
+    @Test
+    public void unchangedContentIsNotParsedAgain() throws Exception {
+        Map<String, String> requestHeaders = new HashMap<>();
+        UrlReader urlReader = new UrlReader() {
+            @Override
+            protected FetchResponse open(String url, Map<String, String> headers) {
+                requestHeaders.putAll(headers);
+                return new FetchResponse(200, singletonMap("etag", "\"v2\""), stream("<a href=\"page\">"));
+            }
+        };
+        List<String> chunks = new ArrayList<>();
+        LinkExtractor extractor = new RecordingExtractor(chunks);
+
+        PageVersion first = urlReader.read(URL, null, extractor);
+        PageVersion second = urlReader.read(URL, new PageVersion("\"v1\"", null, first.getContentHash()), extractor);
+
+        assertThat(chunks.toString(), is("[<a href=\"page\">]"));
+        assertThat(requestHeaders.get("If-None-Match"), is("\"v1\""));
+        assertThat(requestHeaders.get("Accept-Encoding"), is("gzip, deflate"));
+        assertThat(requestHeaders.get("User-Agent"), is(RobotsCache.USER_AGENT));
+        assertThat(second, is(new PageVersion("\"v2\"", null, first.getContentHash())));
+    }
+
+    @Test
+    public void changedContentIsHeldWholeUpToMaxBodySize() throws Exception {
+        UrlReader urlReader = new UrlReader(10, 4) {
+            @Override
+            protected FetchResponse open(String url, Map<String, String> headers) {
+                return new FetchResponse(200, emptyMap(), stream("0123456789abcdef"));
+            }
+        };
+        List<String> chunks = new ArrayList<>();
+
+        for (int i = 0; i < 2; i++) {
+            urlReader.read(URL, new PageVersion("\"v1\"", null, 42), new RecordingExtractor(chunks));
+        }
+
+        assertThat(String.join("", chunks), is("01234567890123456789"));
+    }
+
+    @Test
+    public void notModifiedKeepsThePreviousVersion() throws Exception {
+        UrlReader urlReader = new UrlReader() {
+            @Override
+            protected FetchResponse open(String url, Map<String, String> headers) {
+                return new FetchResponse(304, emptyMap(), stream(""));
+            }
+        };
+        List<String> chunks = new ArrayList<>();
+        PageVersion previous = new PageVersion(null, "Sat, 17 Oct 2026 10:00:00 GMT", 42);
+
+        assertThat(urlReader.read(URL, previous, new RecordingExtractor(chunks)), is(previous));
+        assertTrue(chunks.isEmpty());
+    }
+
+    @Test
+    public void leavesBodiesThatArentHtmlUnread() throws Exception {
+        AtomicBoolean aborted = new AtomicBoolean();
+        Map<String, Map<String, String>> headers = new HashMap<>();
+        headers.put("pdf", singletonMap("content-type", "application/pdf"));
+        headers.put("xhtml", singletonMap("content-type", "application/xhtml+xml; charset=utf-8"));
+        headers.put("huge", singletonMap("content-length", "20000000"));
+        UrlReader urlReader = new UrlReader() {
+            @Override
+            protected FetchResponse open(String url, Map<String, String> requestHeaders) {
+                InputStream body = new ByteArrayInputStream("<a href=\"page\">".getBytes(StandardCharsets.UTF_8));
+                return new FetchResponse(200, headers.get(url.substring(url.lastIndexOf('/') + 1)), body, () -> aborted.set(true));
+            }
+        };
+        List<String> chunks = new ArrayList<>();
+
+        for (String unread : asList("pdf", "huge")) {
+            aborted.set(false);
+            try {
+                urlReader.read(URL + "/" + unread, null, new RecordingExtractor(chunks));
+                fail("Read " + unread);
+            } catch (UnsupportedContentException e) {
+                assertTrue(aborted.get());
+            }
+        }
+        assertTrue(chunks.isEmpty());
+        urlReader.read(URL + "/xhtml", null, new RecordingExtractor(chunks));
+        assertThat(chunks.toString(), is("[<a href=\"page\">]"));
+    }
+
+    @Test
+    public void inflatesCompressedBodies() throws Exception {
+        String page = "<a href=\"page\">" + "x".repeat(5000);
+        CrawlMetrics metrics = new CrawlMetrics();
+        byte[] gzip = compress(page, GZIPOutputStream::new);
+        Map<String, byte[]> bodies = new HashMap<>();
+        bodies.put("gzip", gzip);
+        bodies.put("deflate", compress(page, DeflaterOutputStream::new));
+        bodies.put("raw", compress(page, out -> new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true))));
+        UrlReader urlReader = new UrlReader(1024 * 1024, 16, metrics) {
+            @Override
+            protected FetchResponse open(String url, Map<String, String> headers) {
+                String encoding = url.substring(url.lastIndexOf('/') + 1);
+                return new FetchResponse(200, singletonMap("content-encoding", encoding.equals("raw") ? "deflate" : encoding),
+                        new ByteArrayInputStream(bodies.get(encoding)));
+            }
+        };
+
+        for (String encoding : bodies.keySet()) {
+            assertThat(urlReader.read(URL + "/" + encoding), is(page));
+        }
+        assertThat(urlReader.read(URL + "/gzip"), is(page));
+        assertTrue(metrics.getBytesRead() < page.length());
+    }
+
+    @Test
+    public void decodesInTheCharsetOfTheContentTypeOrMeta() throws Exception {
+        String page = "<meta charset=\"iso-8859-1\"><a href=\"caf\u00e9\">";
+        byte[] latin1 = page.getBytes(StandardCharsets.ISO_8859_1);
+        UrlReader urlReader = new UrlReader(1024, 64);
+        StringBuilder content = new StringBuilder();
+
+        urlReader.decode(URL, new ByteArrayInputStream(latin1), content::append);
+
+        assertThat(content.toString(), is(page));
+        assertThat(UrlReader.charsetOf("text/html; charset=\"windows-1252\""), is(Charset.forName("windows-1252")));
+        assertThat(UrlReader.charsetOf("text/html"), is((Charset) null));
+        byte[] httpEquiv = "<META http-equiv=\"Content-Type\" content=\"text/html; charset=ISO-8859-1\">".getBytes(StandardCharsets.US_ASCII);
+        assertThat(UrlReader.sniffCharset(httpEquiv, 0, httpEquiv.length), is(StandardCharsets.ISO_8859_1));
+        assertThat(UrlReader.sniffCharset(new byte[]{'<', 'p', '>'}, 0, 3), is(StandardCharsets.UTF_8));
+    }
+
+    private interface Compressor {
+        OutputStream wrap(OutputStream out) throws IOException;
+    }
+
+    private static byte[] compress(String content, Compressor compressor) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = compressor.wrap(bytes)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static class RecordingExtractor implements LinkExtractor {
+
+        private final List<String> chunks;
+
+        RecordingExtractor(List<String> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public void begin(LinkHandler handler) {
+        }
+
+        @Override
+        public void feed(CharSequence chunk) {
+            chunks.add(chunk.toString());
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,57 @@
+package just.another.webcrawler;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class UrlResolverTest {
+
+    private final UrlResolver resolver = new UrlResolver("http://a.com/b/c/d;p");
+
+    @Test
+    public void resolvesTheNormalExamplesOfRfc3986() throws Exception {
+        assertThat(resolver.resolve("g"), is("http://a.com/b/c/g"));
+        assertThat(resolver.resolve("./g"), is("http://a.com/b/c/g"));
+        assertThat(resolver.resolve("g/"), is("http://a.com/b/c/g"));
+        assertThat(resolver.resolve("/g"), is("http://a.com/g"));
+        assertThat(resolver.resolve("//g"), is("http://g"));
+        assertThat(resolver.resolve("g?y"), is("http://a.com/b/c/g"));
+        assertThat(resolver.resolve("#s"), is("http://a.com/b/c/d;p"));
+        assertThat(resolver.resolve(""), is("http://a.com/b/c/d;p"));
+        assertThat(resolver.resolve("."), is("http://a.com/b/c"));
+        assertThat(resolver.resolve(".."), is("http://a.com/b"));
+        assertThat(resolver.resolve("../g"), is("http://a.com/b/g"));
+        assertThat(resolver.resolve("../.."), is("http://a.com"));
+        assertThat(resolver.resolve("../../../g"), is("http://a.com/g"));
+        assertThat(resolver.resolve("/./g"), is("http://a.com/g"));
+        assertThat(resolver.resolve("g/../h"), is("http://a.com/b/c/h"));
+    }
+
+    @Test
+    public void normalizesSchemeHostAndPort() throws Exception {
+        assertThat(resolver.resolve("HTTP://User@WWW.Example.COM:80/Path/"), is("http://User@www.example.com/Path"));
+        assertThat(resolver.resolve("https://example.com:443"), is("https://example.com"));
+        assertThat(resolver.resolve("http://example.com:8080/a/../b"), is("http://example.com:8080/b"));
+        assertThat(resolver.resolve("http://[::1]:80/"), is("http://[::1]"));
+    }
+
+    @Test
+    public void dropsWhitespaceAndQuotes() throws Exception {
+        assertThat(resolver.resolve("  'g'\n"), is("http://a.com/b/c/g"));
+    }
+
+    @Test
+    public void leavesLinksThatArentHierarchicalAlone() throws Exception {
+        assertThat(resolver.resolve("MAILTO:someone@a.com"), is("mailto:someone@a.com"));
+        assertThat(resolver.resolve("javascript:void(0)"), is("javascript:void(0)"));
+    }
+
+    @Test
+    public void resolvesAgainstABaseHref() throws Exception {
+        UrlResolver base = resolver.resolveBase("../other/");
+
+        assertThat(base.resolve("g"), is("http://a.com/b/other/g"));
+        assertThat(new UrlResolver("http://a.com").resolve("g"), is("http://a.com/g"));
+    }
+}
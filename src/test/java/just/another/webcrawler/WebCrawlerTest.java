@@ -4,8 +4,15 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
-import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
+import static java.util.Collections.emptySet;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -26,22 +33,15 @@ public class WebCrawlerTest {
     public void setUp() throws Exception {
         when(pageCrawlerProvider.newPageCrawler(anyString(), any(PageProcessor.class), any(UrlReader.class))).thenReturn(pageCrawler);
 
-        webCrawler = new WebCrawler(pageProcessor, BASE_URL, new PrintStream(baos), 1, pageCrawlerProvider);
+        webCrawler = new WebCrawler(pageProcessor, BASE_URL, Channels.newChannel(baos), 1, pageCrawlerProvider, new UrlReader(), CrawlOptions.Execution.POOL);
     }
 
     @Test
     public void simpleSiteTest() throws Exception {
-        when(pageProcessor.getSiteMap()).thenReturn(
-                Page.newBuilder(BASE_URL)
-                        .withExternalLinks("external1", "external2")
-                        .withImages("image1", "image2")
-                        .withInternalLinks(
-                                Page.newBuilder("internal1")
-                                        .withImages("image1.1")
-                                        .withExternalLinks("external1.1")
-                                        .build()
-                        )
-                        .build());
+        Map<String, CrawlResult> results = new HashMap<>();
+        results.put(BASE_URL, new CrawlResult(asSet("internal1"), asSet("external1", "external2"), asSet("image1", "image2")));
+        results.put("internal1", new CrawlResult(emptySet(), asSet("external1.1"), asSet("image1.1")));
+        when(pageProcessor.getSiteMap()).thenReturn(LinkGraph.build(BASE_URL, results::get));
 
         webCrawler.crawl();
 
@@ -61,4 +61,22 @@ public class WebCrawlerTest {
 
         assertThat(baos.toString(), is(expected));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void crawlsEachPageOnAVirtualThread() throws Exception {
+        webCrawler = new WebCrawler(pageProcessor, BASE_URL, Channels.newChannel(baos), 2, pageCrawlerProvider, new UrlReader(), CrawlOptions.Execution.VIRTUAL);
+        when(pageProcessor.getNextPage()).thenReturn(BASE_URL, BASE_URL + "/page", null);
+        when(pageProcessor.getSiteMap()).thenReturn(LinkGraph.build(BASE_URL, url -> CrawlResult.EMPTY));
+
+        webCrawler.crawl();
+
+        verify(pageCrawler).crawl(BASE_URL);
+        verify(pageCrawler).crawl(BASE_URL + "/page");
+        verify(pageCrawler, never()).run();
+        assertThat(baos.toString(), is("http://www.someurl.com\n"));
+    }
+
+    private static Set<String> asSet(String... items) {
+        return new HashSet<>(Arrays.asList(items));
+    }
+}
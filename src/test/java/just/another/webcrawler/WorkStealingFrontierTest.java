@@ -0,0 +1,105 @@
+package just.another.webcrawler;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Collections.emptySet;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WorkStealingFrontierTest {
+
+    private static final String BASE_URL = "http://www.someurl.com";
+
+    @Test
+    public void takesItsOwnMostRecentLinkFirst() throws Exception {
+        WorkStealingFrontier frontier = new WorkStealingFrontier();
+        frontier.add("http://one.com");
+        String url = frontier.take();
+        frontier.add("http://one.com/a");
+        frontier.add("http://one.com/b");
+        frontier.done(url);
+
+        assertThat(frontier.take(), is("http://one.com/b"));
+        frontier.done("http://one.com/b");
+        assertThat(frontier.take(), is("http://one.com/a"));
+        frontier.done("http://one.com/a");
+        assertNull(frontier.take());
+        assertThat(frontier.pending(), is(0));
+    }
+
+    @Test
+    public void idleCrawlerStealsTheOldestLink() throws Exception {
+        WorkStealingFrontier frontier = new WorkStealingFrontier();
+        frontier.add("http://one.com");
+        String url = frontier.take();
+        frontier.add("http://one.com/a");
+        frontier.add("http://one.com/b");
+
+        AtomicReference<String> stolen = new AtomicReference<>();
+        Thread thief = new Thread(() -> {
+            try {
+                stolen.set(frontier.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thief.start();
+        thief.join(TimeUnit.SECONDS.toMillis(5));
+
+        assertThat(stolen.get(), is("http://one.com/a"));
+        assertThat(frontier.size(), is(1));
+        assertThat(frontier.pending(), is(3));
+        frontier.done(url);
+    }
+
+    @Test
+    public void crawlFinishesWithEveryPageTakenOnce() throws Exception {
+        int pages = 2000;
+        PageProcessor pageProcessor = PageProcessor.newBuilder(BASE_URL)
+                .withFrontier(new WorkStealingFrontier())
+                .build();
+        Map<String, Boolean> taken = new ConcurrentHashMap<>();
+        ExecutorService crawlers = Executors.newFixedThreadPool(8);
+        CountDownLatch finished = new CountDownLatch(8);
+        for (int i = 0; i < 8; i++) {
+            crawlers.execute(() -> {
+                try {
+                    String url;
+                    while ((url = pageProcessor.getNextPage()) != null) {
+                        assertNull(taken.put(url, true));
+                        pageProcessor.submitResult(url, new CrawlResult(links(url, pages), emptySet(), emptySet()));
+                    }
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        crawlers.shutdown();
+        assertThat(taken.size(), is(pages + 1));
+        assertThat(pageProcessor.getSiteMap().size(), is(pages + 1));
+    }
+
+    // Every page links to the two pages below it in a binary tree
+    private static Set<String> links(String url, int pages) {
+        int page = url.equals(BASE_URL) ? 0 : Integer.parseInt(url.substring(url.lastIndexOf('/') + 1));
+        Set<String> links = new HashSet<>();
+        for (int child = 2 * page + 1; child <= Math.min(2 * page + 2, pages); child++) {
+            links.add(BASE_URL + "/" + child);
+        }
+        return links;
+    }
+}
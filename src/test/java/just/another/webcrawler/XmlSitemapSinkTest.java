@@ -0,0 +1,59 @@
+package just.another.webcrawler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class XmlSitemapSinkTest {
+
+    private static final String BASE_URL = "http://www.someurl.com";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesASingleSitemap() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (XmlSitemapSink sink = new XmlSitemapSink(directory, "sitemap", BASE_URL)) {
+            sink.page(BASE_URL, CrawlResult.EMPTY);
+            sink.page(BASE_URL + "/a&b", CrawlResult.EMPTY);
+        }
+
+        String sitemap = read(directory.resolve("sitemap.xml"));
+        assertTrue(sitemap.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<urlset"));
+        assertTrue(sitemap.contains("<url><loc>" + BASE_URL + "</loc></url>"));
+        assertTrue(sitemap.contains("<url><loc>" + BASE_URL + "/a&amp;b</loc></url>"));
+        assertTrue(sitemap.endsWith("</urlset>\n"));
+        assertFalse(Files.exists(directory.resolve("sitemap-1.xml")));
+    }
+
+    @Test
+    public void splitsIntoFilesListedByAnIndex() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (XmlSitemapSink sink = new XmlSitemapSink(directory, "sitemap", BASE_URL, 2, Long.MAX_VALUE)) {
+            for (int i = 0; i < 5; i++) {
+                sink.page(BASE_URL + "/" + i, CrawlResult.EMPTY);
+            }
+        }
+
+        String index = read(directory.resolve("sitemap.xml"));
+        assertTrue(index.contains("<sitemapindex"));
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(index.contains("<sitemap><loc>" + BASE_URL + "/sitemap-" + i + ".xml</loc></sitemap>"));
+        }
+        assertThat(read(directory.resolve("sitemap-3.xml")).split("<url>").length, is(2));
+    }
+
+    private static String read(Path path) throws Exception {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+}